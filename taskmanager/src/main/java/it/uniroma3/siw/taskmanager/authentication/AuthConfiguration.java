@@ -3,30 +3,63 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Bean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
 import org.springframework.http.HttpMethod;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.password.PasswordEncoder;
-import javax.sql.DataSource;
+import org.springframework.security.web.authentication.AuthenticationFailureHandler;
+import org.springframework.security.web.authentication.DelegatingAuthenticationFailureHandler;
+import org.springframework.security.web.authentication.ForwardAuthenticationFailureHandler;
+import org.springframework.security.web.authentication.SimpleUrlAuthenticationFailureHandler;
+import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
+import org.springframework.security.web.savedrequest.NullRequestCache;
+
+import java.util.LinkedHashMap;
 
 import static it.uniroma3.siw.taskmanager.model.Credentials.ADMIN_ROLE;
 
 /**
  * The AuthConfiguration is a Spring Security Configuration.
  * It extends WebSecurityConfigurerAdapter, meaning that it provides the settings for Web security.
+ * By default the SecurityContext of a logged user is kept in their HttpSession; in stateless mode
+ * ("taskmanager.auth.stateless=true") it is kept in a signed token instead, so that any node can serve any request.
  */
 @Configuration
 @EnableWebSecurity
 public class AuthConfiguration extends WebSecurityConfigurerAdapter {
 
     /**
-     * The datasource is automatically injected into the AuthConfiguration (using its getters and setters)
-     * and it is used to access the DB to get the Credentials to perform authentication and authorization
+     * The userDetailsService is automatically injected into the AuthConfiguration
+     * and it is used to get the (cached) Credentials to perform authentication and authorization
      */
     @Autowired
-    DataSource datasource;
+    CredentialsUserDetailsService userDetailsService;
+
+    /**
+     * The passwordEncoder hashes and checks the passwords on its own threads, see BoundedPasswordEncoder
+     */
+    @Autowired
+    PasswordEncoder passwordEncoder;
+
+    /**
+     * Whether the SecurityContext is kept in a signed token rather than in the HttpSession
+     */
+    @Value("${taskmanager.auth.stateless}")
+    boolean stateless;
+
+    /**
+     * The tokenRepository keeps the SecurityContext in a signed token; it only exists in stateless mode
+     */
+    @Autowired
+    ObjectProvider<TokenSecurityContextRepository> tokenRepository;
 
     /**
      * This method provides the whole authentication and authorization configuration to use.
@@ -40,6 +73,11 @@ public class AuthConfiguration extends WebSecurityConfigurerAdapter {
                 .antMatchers(HttpMethod.GET, "/", "/index", "/login", "/users/register").permitAll()
                 // anyone (authenticated or not) can send POST requests to the login endpoint and the register endpoint
                 .antMatchers(HttpMethod.POST, "/login", "/users/register").permitAll()
+                // anyone can check whether the application is up
+                .antMatchers(HttpMethod.GET, "/actuator/health").permitAll()
+                // only authenticated users with ADMIN authority can access the other actuator endpoints (e.g. metrics);
+                // the Prometheus scrape endpoint has a configuration of its own, see ScrapeConfiguration
+                .antMatchers("/actuator/**").hasAnyAuthority(ADMIN_ROLE)
                 // only authenticated users with ADMIN authority can access the admin pag
                 .antMatchers(HttpMethod.GET, "/admin/**").hasAnyAuthority(ADMIN_ROLE)
                 .antMatchers(HttpMethod.POST, "/admin/**").hasAnyAuthority(ADMIN_ROLE)
@@ -51,6 +89,8 @@ public class AuthConfiguration extends WebSecurityConfigurerAdapter {
                 .and().formLogin()
                 // after login is successful, redirect to the logged user homepage
                 .defaultSuccessUrl("/home")
+                // if login fails, show the login page again, or ask to try again later if passwords cannot be checked now
+                .failureHandler(this.loginFailureHandler())
 
                 // NOTE: using the default configuration, the /login endpoint is mapped to an auto-generated login page.
                 // If we wanted to create a login page of own page, we would need to
@@ -62,29 +102,91 @@ public class AuthConfiguration extends WebSecurityConfigurerAdapter {
                 .and().logout()
                 .logoutUrl("/logout")               // logout is performed when sending a GET to "/logout"
                 .logoutSuccessUrl("/index");        // after logout is successful, redirect to /index page
+
+        // stateless paragraph: no HttpSession at all, the SecurityContext is rebuilt from a signed token at every request
+        if (this.stateless) {
+            http
+                    .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+                    // the token travels in a cookie, that is cleared at logout
+                    .and().securityContext().securityContextRepository(this.tokenRepository.getObject())
+                    // the CSRF token is kept in a cookie too, and checked against the one sent by the forms
+                    .and().csrf().csrfTokenRepository(new CookieCsrfTokenRepository())
+                    // the page requested before login is not remembered, login always leads to the homepage
+                    .and().requestCache().requestCache(new NullRequestCache());
+        }
     }
 
     /**
-     * This method provides the SQL queries to get username and password.
-     * NOTE: field denoted in Java by camelCase convention
-     *       are denoted in Postgres by snake_case convention by default
-     *       (e.g. "userName" field in the Java class results in "user_name" DB column)
+     * This method provides the way to check a username and a password:
+     * the password is matched against the one of the UserPrincipal loaded by the userDetailsService,
+     * and the UserPrincipal stored in the SecurityContext after a successful login no longer carries it.
      */
     @Override
     public void configure(AuthenticationManagerBuilder auth) throws Exception {
-        auth.jdbcAuthentication().dataSource(this.datasource)
-                //retrieve username and role
-                .authoritiesByUsernameQuery("SELECT user_name, role FROM credentials WHERE user_name=?")
-                //retrieve username, password and a boolean flag specifying whether the user is enabled or not (always enabled in our case)
-                .usersByUsernameQuery("SELECT user_name, password, 1 as enabled FROM credentials WHERE user_name=?");
+        auth.authenticationProvider(authenticationProvider(this.userDetailsService, this.passwordEncoder));
     }
 
     /**
-     * This method defines a "passwordEncoder" Bean.
-     * The passwordEncoder Bean is used to encrypt and decrput the Credentials passwords.
+     * This method builds the provider checking a username and a password against the cached UserPrincipals.
      */
-    @Bean
-    PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    static DaoAuthenticationProvider authenticationProvider(CredentialsUserDetailsService userDetailsService,
+                                                            PasswordEncoder passwordEncoder) {
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider() {
+            @Override
+            protected Authentication createSuccessAuthentication(Object principal, Authentication authentication,
+                                                                 UserDetails user) {
+                return super.createSuccessAuthentication(((UserPrincipal) principal).withoutPassword(), authentication, user);
+            }
+        };
+        provider.setUserDetailsService(userDetailsService);
+        provider.setPasswordEncoder(passwordEncoder);
+        // passwords hashed with a cost other than the current one are hashed again after a successful login
+        provider.setUserDetailsPasswordService(userDetailsService);
+        return provider;
+    }
+
+    /**
+     * This method provides what to do when a login fails: the login page is shown again with an error,
+     * unless the password could not be checked at all because too many are being checked,
+     * in which case the request is forwarded to "/busy" to ask to try again later.
+     */
+    private AuthenticationFailureHandler loginFailureHandler() {
+        LinkedHashMap<Class<? extends AuthenticationException>, AuthenticationFailureHandler> handlers = new LinkedHashMap<>();
+        handlers.put(PasswordHashingBusyException.class, new ForwardAuthenticationFailureHandler("/busy"));
+        SimpleUrlAuthenticationFailureHandler loginPage = new SimpleUrlAuthenticationFailureHandler("/login?error");
+        // in stateless mode the error is not remembered in a new HttpSession
+        loginPage.setAllowSessionCreation(!this.stateless);
+        return new DelegatingAuthenticationFailureHandler(handlers, loginPage);
+    }
+
+    /**
+     * The ScrapeConfiguration secures the Prometheus scrape endpoint, that is read by a scraper rather than a browser:
+     * only users with ADMIN authority can read it, authenticating every request with HTTP Basic,
+     * and no HttpSession is ever created for them.
+     * It comes before the AuthConfiguration, that handles every other request.
+     */
+    @Configuration
+    @Order(1)
+    public static class ScrapeConfiguration extends WebSecurityConfigurerAdapter {
+
+        @Autowired
+        CredentialsUserDetailsService userDetailsService;
+
+        @Autowired
+        PasswordEncoder passwordEncoder;
+
+        @Override
+        protected void configure(HttpSecurity http) throws Exception {
+            http
+                    .antMatcher("/actuator/prometheus")
+                    .authorizeRequests().anyRequest().hasAnyAuthority(ADMIN_ROLE)
+                    .and().httpBasic()
+                    .and().sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS);
+        }
+
+        @Override
+        public void configure(AuthenticationManagerBuilder auth) throws Exception {
+            auth.authenticationProvider(authenticationProvider(this.userDetailsService, this.passwordEncoder));
+        }
     }
-}
\ No newline at end of file
+}
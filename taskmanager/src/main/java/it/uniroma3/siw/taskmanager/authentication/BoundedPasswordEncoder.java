@@ -0,0 +1,138 @@
+package it.uniroma3.siw.taskmanager.authentication;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The BoundedPasswordEncoder hashes and checks passwords with BCrypt on a dedicated pool of threads,
+ * so that a burst of logins or registrations cannot take the CPU of all the request threads.
+ * The request threads wait for their hash in a bounded queue: when the queue is full the password is not hashed
+ * at all, and a PasswordHashingBusyException asks to try again later.
+ * Passwords hashed with a cost other than the configured one are reported as needing an upgrade,
+ * so that they are hashed again on the next successful login.
+ */
+@Component
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    /**
+     * Format of a password encoded by BCrypt, whose second group is the cost it has been hashed with
+     */
+    private static final Pattern BCRYPT_PATTERN = Pattern.compile("\\A\\$2(a|y|b)?\\$(\\d\\d)\\$[./0-9A-Za-z]{53}");
+
+    private final int strength;
+
+    private final BCryptPasswordEncoder bcrypt;
+
+    private final ThreadPoolExecutor executor;
+
+    private final Timer encodeTimer;
+
+    private final Timer matchesTimer;
+
+    private final Counter rejectedCounter;
+
+    public BoundedPasswordEncoder(@Value("${taskmanager.password.strength}") int strength,
+                                  @Value("${taskmanager.password.threads}") int threads,
+                                  @Value("${taskmanager.password.queue-capacity}") int queueCapacity,
+                                  MeterRegistry registry) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.strength = strength;
+        this.bcrypt = new BCryptPasswordEncoder(strength);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("password-hashing-"),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("taskmanager.password.queue", this.executor, executor -> executor.getQueue().size())
+                .description("Number of passwords waiting to be hashed or checked")
+                .register(registry);
+        this.encodeTimer = Timer.builder("taskmanager.password.hash")
+                .description("Time spent hashing or checking a password")
+                .tag("operation", "encode")
+                .register(registry);
+        this.matchesTimer = Timer.builder("taskmanager.password.hash")
+                .description("Time spent hashing or checking a password")
+                .tag("operation", "matches")
+                .register(registry);
+        this.rejectedCounter = Counter.builder("taskmanager.password.rejected")
+                .description("Passwords not hashed or checked because the queue was full")
+                .register(registry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return this.hash(this.encodeTimer, () -> this.bcrypt.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return this.hash(this.matchesTimer, () -> this.bcrypt.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * This method tells whether an encoded password has been hashed with a cost other than the configured one,
+     * be it lower (the password is not protected enough) or higher (checking it takes longer than needed).
+     * @param encodedPassword the encoded password
+     * @return true if the password should be hashed again
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null)
+            return false;
+        Matcher matcher = BCRYPT_PATTERN.matcher(encodedPassword);
+        return matcher.matches() && Integer.parseInt(matcher.group(2)) != this.strength;
+    }
+
+    /**
+     * This method stops the threads hashing passwords when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * This method runs a hashing task on the pool of hashing threads and waits for its result.
+     * @param timer the timer recording how long the task runs
+     * @param hashing the hashing task
+     * @return the result of the task
+     * @throws PasswordHashingBusyException if the queue of the hashing threads is full
+     */
+    private <T> T hash(Timer timer, Callable<T> hashing) {
+        Future<T> result;
+        try {
+            result = this.executor.submit(() -> timer.recordCallable(hashing));
+        } catch (RejectedExecutionException e) {
+            this.rejectedCounter.increment();
+            throw new PasswordHashingBusyException();
+        }
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingBusyException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
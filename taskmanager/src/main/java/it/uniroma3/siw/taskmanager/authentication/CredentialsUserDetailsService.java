@@ -0,0 +1,108 @@
+package it.uniroma3.siw.taskmanager.authentication;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import it.uniroma3.siw.taskmanager.index.AfterCommit;
+import it.uniroma3.siw.taskmanager.model.Credentials;
+import it.uniroma3.siw.taskmanager.repository.CredentialsRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+
+/**
+ * The CredentialsUserDetailsService loads the UserPrincipal of a username from its Credentials,
+ * both to authenticate a login and to bootstrap the session data of the logged user.
+ * Principals are kept in a bounded cache for a limited time; CredentialsService evicts the principal of a username
+ * whenever the Credentials it was loaded from are created, changed or deleted.
+ * Eviction only reaches the cache of the node where the change happens: on the other nodes, a changed password or role
+ * is only seen once the cached principal expires, so "taskmanager.auth.cache.ttl" bounds how stale they can be.
+ * It also stores the passwords hashed again after a login, when the cost of the PasswordEncoder has changed.
+ */
+@Service
+public class CredentialsUserDetailsService implements UserDetailsService, UserDetailsPasswordService, MeterBinder {
+
+    @Autowired
+    protected CredentialsRepository credentialsRepository;
+
+    /**
+     * The principals loaded recently, by username
+     */
+    private final Cache<String, UserPrincipal> principals;
+
+    public CredentialsUserDetailsService(@Value("${taskmanager.auth.cache.max-size}") long maxSize,
+                                         @Value("${taskmanager.auth.cache.ttl}") Duration ttl) {
+        this.principals = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * This method retrieves the UserPrincipal of a username, with its encoded password.
+     * It reads from the primary DB rather than from a replica, so that a user can log in right after registering
+     * or changing their password.
+     * @param username the username
+     * @return the UserPrincipal
+     * @throws UsernameNotFoundException if no Credentials have the passed username
+     */
+    @Override
+    @Transactional
+    public UserPrincipal loadUserByUsername(String username) throws UsernameNotFoundException {
+        UserPrincipal principal = this.principals.get(username, this::load);
+        if (principal == null)
+            throw new UsernameNotFoundException(username);
+        return principal;
+    }
+
+    /**
+     * This method replaces the password of the Credentials of a UserPrincipal with the same password hashed again,
+     * unless it has been changed since the UserPrincipal was loaded.
+     * @param user the UserPrincipal that has just logged in
+     * @param newPassword the password, encoded with the current cost
+     * @return the UserPrincipal without any password, since it goes on to build the Authentication of the login
+     */
+    @Override
+    @Transactional
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        UserPrincipal principal = (UserPrincipal) user;
+        Credentials credentials = this.credentialsRepository.findById(principal.getCredentialsId()).orElse(null);
+        if (credentials == null || !credentials.getPassword().equals(principal.getPassword()))
+            return principal.withoutPassword();
+        credentials.setPassword(newPassword);
+        this.evict(credentials.getUserName());
+        return UserPrincipal.of(credentials).withoutPassword();
+    }
+
+    /**
+     * This method evicts the cached UserPrincipal of a username, once the current transaction commits.
+     * @param username the username whose Credentials have been created, changed or deleted
+     */
+    public void evict(String username) {
+        AfterCommit.run(() -> this.principals.invalidate(username));
+    }
+
+    /**
+     * @return the UserPrincipal of the Credentials with the passed username, or null if there are none
+     */
+    private UserPrincipal load(String username) {
+        return this.credentialsRepository.findByUserName(username).map(UserPrincipal::of).orElse(null);
+    }
+
+    // METRICS
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, this.principals, "principals");
+    }
+}
@@ -0,0 +1,17 @@
+package it.uniroma3.siw.taskmanager.authentication;
+
+import org.springframework.security.authentication.AuthenticationServiceException;
+
+/**
+ * A PasswordHashingBusyException is thrown when a password cannot be hashed or checked right now,
+ * because all the threads hashing passwords are busy and their queue is full.
+ * The request should be repeated a bit later.
+ */
+public class PasswordHashingBusyException extends AuthenticationServiceException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PasswordHashingBusyException() {
+        super("Passwords cannot be checked right now, try again in a few seconds");
+    }
+}
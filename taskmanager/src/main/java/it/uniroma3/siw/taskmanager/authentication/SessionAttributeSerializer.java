@@ -0,0 +1,148 @@
+package it.uniroma3.siw.taskmanager.authentication;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.serializer.DefaultDeserializer;
+import org.springframework.core.serializer.DefaultSerializer;
+import org.springframework.core.serializer.Deserializer;
+import org.springframework.core.serializer.Serializer;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.security.web.csrf.DefaultCsrfToken;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The SessionAttributeSerializer turns the attributes of the HTTP sessions into the bytes stored by the session store, and back.
+ * The attributes every logged user has are written in a compact form of their own:
+ * the SecurityContext only keeps the ids, username, names and role of their UserPrincipal,
+ * the CSRF token only keeps its three strings, and a number (e.g. the time of the last write of the user) its eight bytes.
+ * Any other attribute falls back to Java serialization.
+ * The size of the written attributes is published by the "taskmanager.session.attribute.size" metric.
+ */
+@Component
+public class SessionAttributeSerializer implements Serializer<Object>, Deserializer<Object> {
+
+    private static final byte JAVA = 0;
+
+    private static final byte SECURITY_CONTEXT = 1;
+
+    private static final byte CSRF_TOKEN = 2;
+
+    private static final byte LONG = 3;
+
+    private final DefaultSerializer javaSerializer = new DefaultSerializer();
+
+    private final DefaultDeserializer javaDeserializer = new DefaultDeserializer(SessionAttributeSerializer.class.getClassLoader());
+
+    private final DistributionSummary securityContextSize;
+
+    private final DistributionSummary csrfTokenSize;
+
+    private final DistributionSummary longSize;
+
+    private final DistributionSummary javaSize;
+
+    public SessionAttributeSerializer(MeterRegistry registry) {
+        this.securityContextSize = size(registry, "security-context");
+        this.csrfTokenSize = size(registry, "csrf-token");
+        this.longSize = size(registry, "long");
+        this.javaSize = size(registry, "java");
+    }
+
+    /**
+     * This method writes an attribute of a session.
+     * @param value the value of the attribute
+     * @param outputStream the stream to write to
+     * @throws IOException if the stream cannot be written, or the value cannot be serialized
+     */
+    @Override
+    public void serialize(Object value, OutputStream outputStream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        DistributionSummary size;
+        UserPrincipal principal = principalOf(value);
+        if (principal != null) {
+            out.writeByte(SECURITY_CONTEXT);
+            principal.writeTo(out);
+            size = this.securityContextSize;
+        } else if (value instanceof DefaultCsrfToken) {
+            CsrfToken token = (CsrfToken) value;
+            out.writeByte(CSRF_TOKEN);
+            out.writeUTF(token.getHeaderName());
+            out.writeUTF(token.getParameterName());
+            out.writeUTF(token.getToken());
+            size = this.csrfTokenSize;
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+            size = this.longSize;
+        } else {
+            out.writeByte(JAVA);
+            this.javaSerializer.serialize(value, out);
+            size = this.javaSize;
+        }
+        out.flush();
+        size.record(bytes.size());
+        bytes.writeTo(outputStream);
+    }
+
+    /**
+     * This method reads an attribute of a session written by serialize.
+     * @param inputStream the stream to read from
+     * @return the value of the attribute
+     * @throws IOException if the stream cannot be read, or the value cannot be deserialized
+     */
+    @Override
+    public Object deserialize(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        byte type = in.readByte();
+        switch (type) {
+            case SECURITY_CONTEXT:
+                UserPrincipal principal = UserPrincipal.readFrom(in);
+                return new SecurityContextImpl(
+                        new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+            case CSRF_TOKEN:
+                return new DefaultCsrfToken(in.readUTF(), in.readUTF(), in.readUTF());
+            case LONG:
+                return in.readLong();
+            case JAVA:
+                return this.javaDeserializer.deserialize(in);
+            default:
+                throw new IOException("Unknown type of session attribute: " + type);
+        }
+    }
+
+    /**
+     * @return the UserPrincipal of the passed value, if it is the SecurityContext of a logged user, or else null
+     */
+    private static UserPrincipal principalOf(Object value) {
+        if (!(value instanceof SecurityContextImpl))
+            return null;
+        Authentication authentication = ((SecurityContext) value).getAuthentication();
+        if (!(authentication instanceof UsernamePasswordAuthenticationToken) || !authentication.isAuthenticated()
+                || !(authentication.getPrincipal() instanceof UserPrincipal))
+            return null;
+        return (UserPrincipal) authentication.getPrincipal();
+    }
+
+    /**
+     * @return the summary of the sizes of the attributes of the passed type
+     */
+    private static DistributionSummary size(MeterRegistry registry, String type) {
+        return DistributionSummary.builder("taskmanager.session.attribute.size")
+                .description("Size of a session attribute, as written to the session store")
+                .baseUnit("bytes")
+                .tag("type", type)
+                .register(registry);
+    }
+}
@@ -0,0 +1,50 @@
+package it.uniroma3.siw.taskmanager.authentication;
+
+import it.uniroma3.siw.taskmanager.configuration.LastWriteStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpSession;
+import java.time.Instant;
+
+/**
+ * The SessionLastWriteStore keeps the time of the last write of a user in their HttpSession,
+ * that is shared by all the nodes through the session store; it is used unless in stateless mode.
+ * Requests without a session (e.g. a registration) have no last write.
+ */
+@Component
+@ConditionalOnProperty(name = "taskmanager.auth.stateless", havingValue = "false", matchIfMissing = true)
+public class SessionLastWriteStore implements LastWriteStore {
+
+    /**
+     * Name of the session attribute holding the time of the last write, in milliseconds since the epoch
+     */
+    static final String ATTRIBUTE = SessionLastWriteStore.class.getName() + ".LAST_WRITE";
+
+    @Override
+    public Instant getLastWrite() {
+        HttpSession session = currentSession();
+        Object lastWrite = session == null ? null : session.getAttribute(ATTRIBUTE);
+        return lastWrite instanceof Long ? Instant.ofEpochMilli((Long) lastWrite) : null;
+    }
+
+    @Override
+    public void setLastWrite(Instant instant) {
+        HttpSession session = currentSession();
+        if (session != null)
+            session.setAttribute(ATTRIBUTE, instant.toEpochMilli());
+    }
+
+    /**
+     * @return the HttpSession of the current request, or null if there is no request or no session (none is created)
+     */
+    private static HttpSession currentSession() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes))
+            return null;
+        return ((ServletRequestAttributes) attributes).getRequest().getSession(false);
+    }
+}
@@ -0,0 +1,222 @@
+package it.uniroma3.siw.taskmanager.authentication;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+
+/**
+ * The SessionTokenCodec issues and verifies the signed session tokens used in stateless mode.
+ * A token carries the UserPrincipal of a logged user (ids, username, names and role) with the instant of their login,
+ * its issue and expiry instants and the time of the last write of the user, if any (see TokenLastWriteStore),
+ * signed with HMAC-SHA256: any node sharing the "taskmanager.auth.token.secret" key can verify it
+ * without looking up the DB or a session, so it is refused only if it has been tampered with, has expired,
+ * or descends from a login whose tokens have been revoked (see TokenRevocationList).
+ * The tokens renewing it never outlive the "taskmanager.auth.token.max-lifetime" after the login,
+ * so a stolen token cannot be renewed forever.
+ */
+@Component
+@ConditionalOnProperty(name = "taskmanager.auth.stateless", havingValue = "true")
+public class SessionTokenCodec {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    /**
+     * Format of the payload of the tokens, changed whenever the payload is
+     */
+    private static final byte FORMAT = 3;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+
+    private final Duration ttl;
+
+    private final Duration maxLifetime;
+
+    private final TokenRevocationList revocationList;
+
+    public SessionTokenCodec(@Value("${taskmanager.auth.token.secret}") String secret,
+                             @Value("${taskmanager.auth.token.ttl}") Duration ttl,
+                             @Value("${taskmanager.auth.token.max-lifetime}") Duration maxLifetime,
+                             TokenRevocationList revocationList) {
+        if (secret.isBlank())
+            throw new IllegalStateException("taskmanager.auth.token.secret must be set in stateless mode");
+        this.key = new SecretKeySpec(Base64.getDecoder().decode(secret), ALGORITHM);
+        this.ttl = ttl;
+        this.maxLifetime = maxLifetime;
+        this.revocationList = revocationList;
+    }
+
+    /**
+     * This method issues a token for the passed UserPrincipal, that has just logged in,
+     * valid from now on for the configured time to live.
+     * @param principal the UserPrincipal of the logged user
+     * @return the token
+     */
+    public SessionToken issue(UserPrincipal principal) {
+        return this.issue(principal, Instant.now(), null);
+    }
+
+    /**
+     * This method issues a token for the passed UserPrincipal, valid from now on for the configured time to live,
+     * but no longer than the configured maximum lifetime after the login.
+     * @param principal the UserPrincipal of the logged user
+     * @param authenticatedAt when the logged user logged in (it is kept to the millisecond)
+     * @param lastWrite when the logged user last committed a write, or null if it is not known
+     * @return the token
+     */
+    public SessionToken issue(UserPrincipal principal, Instant authenticatedAt, Instant lastWrite) {
+        authenticatedAt = authenticatedAt.truncatedTo(ChronoUnit.MILLIS);
+        Instant issuedAt = Instant.now();
+        Instant expiresAt = issuedAt.plus(this.ttl);
+        if (expiresAt.isAfter(authenticatedAt.plus(this.maxLifetime)))
+            expiresAt = authenticatedAt.plus(this.maxLifetime);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT);
+            principal.writeTo(out);
+            out.writeLong(authenticatedAt.toEpochMilli());
+            out.writeLong(issuedAt.getEpochSecond());
+            out.writeLong(expiresAt.getEpochSecond());
+            out.writeLong(lastWrite == null ? 0 : lastWrite.toEpochMilli());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] payload = bytes.toByteArray();
+        String value = ENCODER.encodeToString(payload) + "." + ENCODER.encodeToString(this.sign(payload));
+        return new SessionToken(value, principal, authenticatedAt, issuedAt, expiresAt, lastWrite);
+    }
+
+    /**
+     * This method verifies a token and extracts its UserPrincipal.
+     * @param value the token, as issued by any node sharing the same key
+     * @return the verified token, or null if it is malformed, forged, expired or revoked
+     */
+    public SessionToken verify(String value) {
+        int dot = value.indexOf('.');
+        if (dot < 0)
+            return null;
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = DECODER.decode(value.substring(0, dot));
+            signature = DECODER.decode(value.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(this.sign(payload), signature))
+            return null;
+
+        SessionToken token;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            if (in.readByte() != FORMAT)
+                return null;
+            UserPrincipal principal = UserPrincipal.readFrom(in);
+            Instant authenticatedAt = Instant.ofEpochMilli(in.readLong());
+            Instant issuedAt = Instant.ofEpochSecond(in.readLong());
+            Instant expiresAt = Instant.ofEpochSecond(in.readLong());
+            long lastWrite = in.readLong();
+            token = new SessionToken(value, principal, authenticatedAt, issuedAt, expiresAt, lastWrite == 0 ? null : Instant.ofEpochMilli(lastWrite));
+        } catch (IOException e) {
+            return null;
+        }
+        if (!token.getExpiresAt().isAfter(Instant.now())
+                || this.revocationList.isRevoked(token.getPrincipal().getUserId(), token.getAuthenticatedAt()))
+            return null;
+        return token;
+    }
+
+    /**
+     * This method tells whether a token should be renewed: half of its lifetime has passed,
+     * and the maximum lifetime after its login still leaves room for a later expiry.
+     * @param token a verified token
+     * @return true if a new token should be issued in place of the passed one
+     */
+    public boolean isDueForRenewal(SessionToken token) {
+        Duration lifetime = Duration.between(token.getIssuedAt(), token.getExpiresAt());
+        Instant cap = token.getAuthenticatedAt().plus(this.maxLifetime).truncatedTo(ChronoUnit.SECONDS);
+        return Instant.now().isAfter(token.getIssuedAt().plus(lifetime.dividedBy(2))) && token.getExpiresAt().isBefore(cap);
+    }
+
+    /**
+     * @return the HMAC of the passed payload
+     */
+    private byte[] sign(byte[] payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(this.key);
+            return mac.doFinal(payload);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A signed session token, together with what it carries
+     */
+    public static final class SessionToken {
+
+        private final String value;
+
+        private final UserPrincipal principal;
+
+        private final Instant authenticatedAt;
+
+        private final Instant issuedAt;
+
+        private final Instant expiresAt;
+
+        private final Instant lastWrite;
+
+        private SessionToken(String value, UserPrincipal principal, Instant authenticatedAt, Instant issuedAt,
+                             Instant expiresAt, Instant lastWrite) {
+            this.value = value;
+            this.principal = principal;
+            this.authenticatedAt = authenticatedAt;
+            this.issuedAt = issuedAt;
+            this.expiresAt = expiresAt;
+            this.lastWrite = lastWrite;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public UserPrincipal getPrincipal() {
+            return principal;
+        }
+
+        public Instant getAuthenticatedAt() {
+            return authenticatedAt;
+        }
+
+        public Instant getIssuedAt() {
+            return issuedAt;
+        }
+
+        public Instant getExpiresAt() {
+            return expiresAt;
+        }
+
+        public Instant getLastWrite() {
+            return lastWrite;
+        }
+    }
+}
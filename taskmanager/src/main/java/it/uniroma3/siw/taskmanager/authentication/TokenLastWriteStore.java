@@ -0,0 +1,45 @@
+package it.uniroma3.siw.taskmanager.authentication;
+
+import it.uniroma3.siw.taskmanager.authentication.SessionTokenCodec.SessionToken;
+import it.uniroma3.siw.taskmanager.configuration.LastWriteStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.time.Instant;
+
+/**
+ * The TokenLastWriteStore keeps the time of the last write of a user in their signed session token,
+ * in stateless mode: a write is noted in the current request, and the TokenSecurityContextRepository
+ * issues a new token carrying it before the response is committed.
+ */
+@Component
+@ConditionalOnProperty(name = "taskmanager.auth.stateless", havingValue = "true")
+public class TokenLastWriteStore implements LastWriteStore {
+
+    /**
+     * Request attribute holding the time of a write committed by the current request
+     */
+    static final String ATTRIBUTE = TokenLastWriteStore.class.getName() + ".LAST_WRITE";
+
+    @Override
+    public Instant getLastWrite() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null)
+            return null;
+        Instant written = (Instant) attributes.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (written != null)
+            return written;
+        SessionToken token = (SessionToken) attributes.getAttribute(TokenSecurityContextRepository.TOKEN_ATTRIBUTE,
+                RequestAttributes.SCOPE_REQUEST);
+        return token == null ? null : token.getLastWrite();
+    }
+
+    @Override
+    public void setLastWrite(Instant instant) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null)
+            attributes.setAttribute(ATTRIBUTE, instant, RequestAttributes.SCOPE_REQUEST);
+    }
+}
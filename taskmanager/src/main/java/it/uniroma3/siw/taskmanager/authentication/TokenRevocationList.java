@@ -0,0 +1,106 @@
+package it.uniroma3.siw.taskmanager.authentication;
+
+import it.uniroma3.siw.taskmanager.index.AfterCommit;
+import it.uniroma3.siw.taskmanager.model.RevokedUser;
+import it.uniroma3.siw.taskmanager.repository.RevokedUserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The TokenRevocationList keeps the ids of the Users whose signed session tokens must be refused,
+ * because they have been deleted or have changed their password, each with the instant of the revocation:
+ * the tokens of the logins before it are refused, the ones of later logins are not.
+ * A token cannot be taken back once issued, so the revocation is recorded in the DB for as long as such a token
+ * may still be valid (at most the "taskmanager.auth.token.max-lifetime" after its login), and every node reads
+ * the list back periodically, according to the "taskmanager.auth.token.revocation-refresh" property
+ * (the node revoking the tokens knows it at once).
+ * Checking a token against the list never reads the DB.
+ * It only exists in stateless mode, where there are tokens to revoke.
+ */
+@Component
+@ConditionalOnProperty(name = "taskmanager.auth.stateless", havingValue = "true")
+public class TokenRevocationList {
+
+    @Autowired
+    protected RevokedUserRepository revokedUserRepository;
+
+    /**
+     * How long a token can be renewed after the login it descends from
+     */
+    private final Duration maxLifetime;
+
+    /**
+     * The ids of the revoked Users, as read from the DB or revoked by this node, each with the instant of its revocation
+     */
+    private final Map<Long, Instant> revoked = new ConcurrentHashMap<>();
+
+    public TokenRevocationList(@Value("${taskmanager.auth.token.max-lifetime}") Duration maxLifetime) {
+        this.maxLifetime = maxLifetime;
+    }
+
+    /**
+     * This method tells whether a token of a User is revoked.
+     * @param userId the id of the User
+     * @param authenticatedAt the instant of the login the token descends from
+     * @return true if the token must be refused
+     */
+    public boolean isRevoked(long userId, Instant authenticatedAt) {
+        Instant notBefore = this.revoked.get(userId);
+        return notBefore != null && authenticatedAt.isBefore(notBefore);
+    }
+
+    /**
+     * This method revokes the tokens of all the logins of a User up to now, once the current transaction commits:
+     * it is called when the User is deleted or changes their password.
+     * It is precise to the millisecond, like the login instants carried by the tokens,
+     * so that a token issued to the User right after the revocation is accepted.
+     * @param userId the id of the User
+     */
+    @Transactional
+    public void revoke(long userId) {
+        Instant notBefore = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        this.revokedUserRepository.save(new RevokedUser(userId, toLocal(notBefore), toLocal(notBefore.plus(this.maxLifetime))));
+        AfterCommit.run(() -> this.revoked.merge(userId, notBefore, TokenRevocationList::later));
+    }
+
+    /**
+     * This method merges the list read from the DB into the one of this node, and forgets the Users whose revoked tokens
+     * have all expired, both in the DB and here.
+     * A User is never forgotten just because the DB read misses them: this node may have revoked them
+     * after the read, in a transaction that had not committed yet.
+     */
+    @Scheduled(fixedDelayString = "${taskmanager.auth.token.revocation-refresh}")
+    @Transactional
+    public void refresh() {
+        LocalDateTime now = LocalDateTime.now();
+        this.revokedUserRepository.deleteExpiredAt(now);
+        for (RevokedUser revokedUser : this.revokedUserRepository.findRevokedAt(now))
+            this.revoked.merge(revokedUser.getUserId(), toInstant(revokedUser.getNotBefore()), TokenRevocationList::later);
+        Instant expired = Instant.now().minus(this.maxLifetime);
+        this.revoked.values().removeIf(notBefore -> !notBefore.isAfter(expired));
+    }
+
+    private static Instant later(Instant one, Instant other) {
+        return one.isAfter(other) ? one : other;
+    }
+
+    private static LocalDateTime toLocal(Instant instant) {
+        return LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+    }
+
+    private static Instant toInstant(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant();
+    }
+}
@@ -0,0 +1,147 @@
+package it.uniroma3.siw.taskmanager.authentication;
+
+import it.uniroma3.siw.taskmanager.authentication.SessionTokenCodec.SessionToken;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.context.HttpRequestResponseHolder;
+import org.springframework.security.web.context.SaveContextOnUpdateOrErrorResponseWrapper;
+import org.springframework.security.web.context.SecurityContextRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * The TokenSecurityContextRepository keeps the SecurityContext in a signed session token, stored in a cookie,
+ * instead of the HttpSession: it is used in stateless mode, see AuthConfiguration.
+ * The SecurityContextPersistenceFilter asks it for the SecurityContext at the beginning of every request,
+ * that is rebuilt from the token alone, and hands it back before the response is committed:
+ * a new token is issued when the logged user has changed (login, profile update), has committed a write
+ * (see TokenLastWriteStore) or half of the token lifetime has passed,
+ * and the cookie is cleared when nobody is logged any more (logout, invalid or expired token).
+ * A new token keeps the login instant of the one the request came with, so that renewals stop at the maximum
+ * lifetime after the login; it starts a new login only for a different user, or for the same user if the request
+ * revoked the tokens of their earlier logins by changing their password.
+ */
+@Component
+@ConditionalOnProperty(name = "taskmanager.auth.stateless", havingValue = "true")
+public class TokenSecurityContextRepository implements SecurityContextRepository {
+
+    /**
+     * Name of the cookie holding the token
+     */
+    public static final String COOKIE_NAME = "TASKMANAGER_TOKEN";
+
+    /**
+     * Request attribute holding the valid token the request came with, if any
+     */
+    static final String TOKEN_ATTRIBUTE = TokenSecurityContextRepository.class.getName() + ".TOKEN";
+
+    @Autowired
+    protected SessionTokenCodec sessionTokenCodec;
+
+    @Autowired
+    protected TokenRevocationList tokenRevocationList;
+
+    @Override
+    public SecurityContext loadContext(HttpRequestResponseHolder requestResponseHolder) {
+        HttpServletRequest request = requestResponseHolder.getRequest();
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        Cookie cookie = WebUtils.getCookie(request, COOKIE_NAME);
+        SessionToken token = cookie == null ? null : this.sessionTokenCodec.verify(cookie.getValue());
+        if (token != null) {
+            UserPrincipal principal = token.getPrincipal();
+            context.setAuthentication(new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+            request.setAttribute(TOKEN_ATTRIBUTE, token);
+        }
+        requestResponseHolder.setResponse(new SaveToCookieResponseWrapper(requestResponseHolder.getResponse(), request,
+                cookie != null, token, context.getAuthentication()));
+        return context;
+    }
+
+    @Override
+    public void saveContext(SecurityContext context, HttpServletRequest request, HttpServletResponse response) {
+        SaveToCookieResponseWrapper wrapper = WebUtils.getNativeResponse(response, SaveToCookieResponseWrapper.class);
+        if (wrapper == null)
+            throw new IllegalStateException("The response was not wrapped by loadContext: " + response.getClass().getName());
+        if (!wrapper.isContextSaved())
+            wrapper.saveContext(context);
+    }
+
+    @Override
+    public boolean containsContext(HttpServletRequest request) {
+        return request.getAttribute(TOKEN_ATTRIBUTE) != null;
+    }
+
+    /**
+     * The response of a request, that stores the SecurityContext in the cookie before it is committed
+     */
+    private final class SaveToCookieResponseWrapper extends SaveContextOnUpdateOrErrorResponseWrapper {
+
+        private final HttpServletRequest request;
+
+        private final boolean cookiePresent;
+
+        private final SessionToken loadedToken;
+
+        private final Authentication loadedAuthentication;
+
+        SaveToCookieResponseWrapper(HttpServletResponse response, HttpServletRequest request, boolean cookiePresent,
+                                    SessionToken loadedToken, Authentication loadedAuthentication) {
+            super(response, true);
+            this.request = request;
+            this.cookiePresent = cookiePresent;
+            this.loadedToken = loadedToken;
+            this.loadedAuthentication = loadedAuthentication;
+        }
+
+        @Override
+        protected void saveContext(SecurityContext context) {
+            Authentication authentication = context.getAuthentication();
+            if (authentication == null || !(authentication.getPrincipal() instanceof UserPrincipal)) {
+                if (this.cookiePresent)
+                    this.addCookie(this.cookie("", 0));
+                return;
+            }
+            Instant written = (Instant) this.request.getAttribute(TokenLastWriteStore.ATTRIBUTE);
+            if (authentication == this.loadedAuthentication && written == null
+                    && !sessionTokenCodec.isDueForRenewal(this.loadedToken))
+                return;
+            UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+            Instant lastWrite = written != null ? written : this.loadedToken == null ? null : this.loadedToken.getLastWrite();
+            SessionToken token = sessionTokenCodec.issue(principal, this.authenticatedAt(principal), lastWrite);
+            this.addCookie(this.cookie(token.getValue(), Duration.between(token.getIssuedAt(), token.getExpiresAt()).getSeconds()));
+        }
+
+        /**
+         * @return the login instant of the token the request came with, if it was issued to the passed user
+         * and has not been revoked meanwhile, or else now
+         */
+        private Instant authenticatedAt(UserPrincipal principal) {
+            if (this.loadedToken == null || this.loadedToken.getPrincipal().getUserId() != principal.getUserId()
+                    || tokenRevocationList.isRevoked(principal.getUserId(), this.loadedToken.getAuthenticatedAt()))
+                return Instant.now();
+            return this.loadedToken.getAuthenticatedAt();
+        }
+
+        /**
+         * @return the cookie holding the passed token, that the browser keeps for the passed number of seconds
+         */
+        private Cookie cookie(String value, long maxAge) {
+            Cookie cookie = new Cookie(COOKIE_NAME, value);
+            cookie.setPath(this.request.getContextPath().isEmpty() ? "/" : this.request.getContextPath());
+            cookie.setHttpOnly(true);
+            cookie.setSecure(this.request.isSecure());
+            cookie.setMaxAge((int) maxAge);
+            return cookie;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package it.uniroma3.siw.taskmanager.authentication;
+
+import it.uniroma3.siw.taskmanager.model.Credentials;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A UserPrincipal is the immutable identity of an authenticated user, as kept in the SecurityContext:
+ * the ids of their Credentials and of their User, their username, their names and their role.
+ * It is all their session holds about them: the entities are loaded from the DB only when they are needed.
+ * The one loaded to authenticate them also carries their (encoded) password,
+ * that is dropped from the one stored in the SecurityContext once they are authenticated.
+ */
+public final class UserPrincipal implements UserDetails {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long credentialsId;
+
+    private final long userId;
+
+    private final String username;
+
+    private final String password;
+
+    private final String firstName;
+
+    private final String lastName;
+
+    private final String role;
+
+    public UserPrincipal(long credentialsId, long userId, String username, String password,
+                         String firstName, String lastName, String role) {
+        this.credentialsId = credentialsId;
+        this.userId = userId;
+        this.username = username;
+        this.password = password;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.role = role;
+    }
+
+    /**
+     * This method builds the UserPrincipal of the passed Credentials, including their encoded password.
+     * @param credentials the Credentials, together with their User
+     * @return the UserPrincipal
+     */
+    public static UserPrincipal of(Credentials credentials) {
+        return new UserPrincipal(credentials.getId(), credentials.getUser().getId(), credentials.getUserName(),
+                credentials.getPassword(), credentials.getUser().getFirstName(), credentials.getUser().getLastName(),
+                credentials.getRole());
+    }
+
+    /**
+     * This method returns a copy of this UserPrincipal without the password, to be kept once authentication is over.
+     * @return the copy of this UserPrincipal
+     */
+    public UserPrincipal withoutPassword() {
+        return new UserPrincipal(this.credentialsId, this.userId, this.username, null,
+                this.firstName, this.lastName, this.role);
+    }
+
+    /**
+     * This method writes this UserPrincipal, without its password, in a compact binary form.
+     * @param out the output to write to
+     * @throws IOException if the output cannot be written
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(this.credentialsId);
+        out.writeLong(this.userId);
+        out.writeUTF(this.username);
+        out.writeUTF(Objects.toString(this.firstName, ""));
+        out.writeUTF(Objects.toString(this.lastName, ""));
+        out.writeUTF(this.role);
+    }
+
+    /**
+     * This method reads a UserPrincipal written by writeTo; it has no password.
+     * @param in the input to read from
+     * @return the UserPrincipal
+     * @throws IOException if the input cannot be read
+     */
+    public static UserPrincipal readFrom(DataInput in) throws IOException {
+        return new UserPrincipal(in.readLong(), in.readLong(), in.readUTF(), null, in.readUTF(), in.readUTF(), in.readUTF());
+    }
+
+    public long getCredentialsId() {
+        return credentialsId;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return List.of(new SimpleGrantedAuthority(this.role));
+    }
+
+    @Override
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public boolean isAccountNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isAccountNonLocked() {
+        return true;
+    }
+
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "UserPrincipal{" +
+                "userId=" + userId +
+                ", username='" + username + '\'' +
+                ", role='" + role + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,24 @@
+package it.uniroma3.siw.taskmanager.configuration;
+
+import java.time.Instant;
+
+/**
+ * A LastWriteStore remembers when the user of the current request last committed a write,
+ * so that the ReplicaRouter can keep their reads on the primary while the replicas catch up.
+ * It is kept with the user (in their HttpSession, or in their signed token in stateless mode)
+ * rather than in the node, so that it holds whichever node serves their next request.
+ */
+public interface LastWriteStore {
+
+    /**
+     * @return when the user of the current request last committed a write, or null if it is not known
+     */
+    Instant getLastWrite();
+
+    /**
+     * Remember that the user of the current request has just committed a write;
+     * it does nothing outside of a request.
+     * @param instant when the write was committed
+     */
+    void setLastWrite(Instant instant);
+}
@@ -0,0 +1,154 @@
+package it.uniroma3.siw.taskmanager.configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The MethodTimingAspect times every call to the handlers of the controllers, to the methods of the services
+ * and to the Spring Data repositories, as the "taskmanager.method" timer.
+ * Each call is tagged with its layer, its class (the repository interface, for repositories), its method,
+ * and the simple name of the exception it threw, or "none": the count of the calls with an exception is the error count.
+ * It is the outermost advice, so the time of a service method includes its transaction and its retries.
+ * Only the controllers publish a latency histogram, from which Prometheus computes the percentiles of the requests:
+ * the services and the repositories, which are many more, only publish their count, total and maximum.
+ * The timer of each (class, method, exception) is built once, and then looked up at every call.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class MethodTimingAspect {
+
+    /**
+     * Name of the timer of the calls
+     */
+    public static final String TIMER = "taskmanager.method";
+
+    /**
+     * Bounds of the latency histogram of the controllers, which only has buckets in between
+     */
+    private static final Duration MIN_EXPECTED = Duration.ofMillis(1);
+    private static final Duration MAX_EXPECTED = Duration.ofSeconds(10);
+
+    private final MeterRegistry registry;
+
+    private final Map<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+
+    public MethodTimingAspect(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Pointcut("within(it.uniroma3.siw.taskmanager.controller..*) && " +
+            "(@within(org.springframework.stereotype.Controller) || " +
+            "@within(org.springframework.web.bind.annotation.ControllerAdvice))")
+    void controller() {
+    }
+
+    @Pointcut("execution(public * it.uniroma3.siw.taskmanager..*Service.*(..))")
+    void service() {
+    }
+
+    @Pointcut("execution(public * org.springframework.data.repository.Repository+.*(..))")
+    void repository() {
+    }
+
+    @Around("controller() && execution(public * *(..))")
+    public Object timeController(ProceedingJoinPoint joinPoint) throws Throwable {
+        return this.time(joinPoint, "controller", ClassUtils.getUserClass(joinPoint.getTarget()));
+    }
+
+    @Around("service()")
+    public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+        return this.time(joinPoint, "service", ClassUtils.getUserClass(joinPoint.getTarget()));
+    }
+
+    @Around("repository()")
+    public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        return this.time(joinPoint, "repository", repositoryInterface(joinPoint.getThis()));
+    }
+
+    /**
+     * This method runs a call and records its duration, whether it returns or throws.
+     */
+    private Object time(ProceedingJoinPoint joinPoint, String layer, Class<?> type) throws Throwable {
+        Timer.Sample sample = Timer.start(this.registry);
+        String exception = "none";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            String method = joinPoint.getSignature().getName();
+            sample.stop(this.timers.computeIfAbsent(new TimerKey(type, method, exception),
+                    key -> this.register(layer, type, method, key.exception)));
+        }
+    }
+
+    private Timer register(String layer, Class<?> type, String method, String exception) {
+        boolean controller = layer.equals("controller");
+        return Timer.builder(TIMER)
+                .description("Time spent in the controllers, the services and the repositories, by method")
+                .tag("layer", layer)
+                .tag("class", type.getSimpleName())
+                .tag("method", method)
+                .tag("exception", exception)
+                .publishPercentileHistogram(controller)
+                .minimumExpectedValue(controller ? MIN_EXPECTED : null)
+                .maximumExpectedValue(controller ? MAX_EXPECTED : null)
+                .register(this.registry);
+    }
+
+    /**
+     * @return the repository interface implemented by a Spring Data proxy, e.g. TaskRepository
+     */
+    private static Class<?> repositoryInterface(Object proxy) {
+        for (Class<?> type : AopProxyUtils.proxiedUserInterfaces(proxy))
+            if (Repository.class.isAssignableFrom(type))
+                return type;
+        return ClassUtils.getUserClass(proxy);
+    }
+
+    /**
+     * Key of the timer of the calls of a method that ended with an exception (or "none")
+     */
+    private static final class TimerKey {
+
+        private final Class<?> type;
+        private final String method;
+        private final String exception;
+
+        private TimerKey(Class<?> type, String method, String exception) {
+            this.type = type;
+            this.method = method;
+            this.exception = exception;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TimerKey)) return false;
+            TimerKey key = (TimerKey) o;
+            return type == key.type && method.equals(key.method) && exception.equals(key.exception);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, method, exception);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package it.uniroma3.siw.taskmanager.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.retry.annotation.EnableRetry;
+import org.springframework.retry.backoff.ExponentialRandomBackOffPolicy;
+import org.springframework.retry.interceptor.RetryInterceptorBuilder;
+import org.springframework.retry.interceptor.RetryOperationsInterceptor;
+import org.springframework.retry.policy.SimpleRetryPolicy;
+
+import java.util.Map;
+
+/**
+ * The OptimisticLockRetryConfiguration provides the policy to retry the writes that lost an optimistic locking race.
+ * Service methods opt in with @Retryable(interceptor = OptimisticLockRetryConfiguration.INTERCEPTOR):
+ * they must be idempotent and load what they change in their own transaction, so that a new attempt
+ * works on the state left by the concurrent update.
+ * The retry advice is applied outside of the transactional one, so every attempt runs in a new transaction.
+ */
+@Configuration
+@EnableRetry
+public class OptimisticLockRetryConfiguration {
+
+    /**
+     * Name of the interceptor that retries on optimistic locking failures
+     */
+    public static final String INTERCEPTOR = "optimisticLockRetryInterceptor";
+
+    @Value("${taskmanager.retry.max-attempts}")
+    private int maxAttempts;
+
+    @Value("${taskmanager.retry.initial-delay}")
+    private long initialDelay;
+
+    @Value("${taskmanager.retry.max-delay}")
+    private long maxDelay;
+
+    /**
+     * This method builds the interceptor retrying a method when it fails with an OptimisticLockingFailureException.
+     * Attempts are spaced by a randomized exponential back off, so that the contenders do not collide again.
+     * @return the RetryOperationsInterceptor
+     */
+    @Bean(INTERCEPTOR)
+    public RetryOperationsInterceptor optimisticLockRetryInterceptor() {
+        ExponentialRandomBackOffPolicy backOff = new ExponentialRandomBackOffPolicy();
+        backOff.setInitialInterval(this.initialDelay);
+        backOff.setMaxInterval(this.maxDelay);
+        return RetryInterceptorBuilder.stateless()
+                .retryPolicy(new SimpleRetryPolicy(this.maxAttempts,
+                        Map.of(OptimisticLockingFailureException.class, true), true))
+                .backOffPolicy(backOff)
+                .build();
+    }
+}
@@ -0,0 +1,199 @@
+package it.uniroma3.siw.taskmanager.configuration;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.session.jdbc.config.annotation.SpringSessionDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ReadReplicaConfiguration provides the DataSource of the application: the read-only transactions
+ * (e.g. the getters of the services, marked "@Transactional(readOnly = true)") read from the replicas
+ * listed under "taskmanager.datasource.replicas", and everything else goes to the primary ("spring.datasource.*").
+ * With no replicas, everything goes to the primary.
+ * Flyway and the session store always use the primary.
+ *
+ * @see ReplicaRouter
+ */
+@Configuration
+@ConfigurationProperties(prefix = "taskmanager.datasource")
+public class ReadReplicaConfiguration {
+
+    /**
+     * The read replicas, e.g. streaming replicas of the primary (or, locally, a second instance standing in for one)
+     */
+    private List<Replica> replicas = new ArrayList<>();
+
+    /**
+     * How a replica is chosen for a read-only transaction
+     */
+    private ReplicaRouter.Selection selection = ReplicaRouter.Selection.ROUND_ROBIN;
+
+    /**
+     * How long a user keeps reading from the primary after committing a write of their own
+     */
+    private Duration readYourWrites = Duration.ofSeconds(5);
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    public void setReplicas(List<Replica> replicas) {
+        this.replicas = replicas;
+    }
+
+    public ReplicaRouter.Selection getSelection() {
+        return selection;
+    }
+
+    public void setSelection(ReplicaRouter.Selection selection) {
+        this.selection = selection;
+    }
+
+    public Duration getReadYourWrites() {
+        return readYourWrites;
+    }
+
+    public void setReadYourWrites(Duration readYourWrites) {
+        this.readYourWrites = readYourWrites;
+    }
+
+    /**
+     * This method builds the connection pool of the primary, configured by the "spring.datasource.*" properties.
+     * @param properties the properties of the primary
+     * @return the DataSource of the primary
+     */
+    @Bean
+    @FlywayDataSource
+    @SpringSessionDataSource
+    @ConfigurationProperties(prefix = "spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    /**
+     * This method builds the router between the primary and the connection pools of the replicas;
+     * the replicas without their own username or password use the ones of the primary.
+     * The primary is created first: it is a DataSource bean of its own, and Spring Boot looks up the DataSource
+     * of the application as soon as any DataSource bean is ready, which must not happen halfway through this one.
+     * @param primaryDataSource the DataSource of the primary
+     * @param properties the properties of the primary
+     * @param lastWriteStore where the time of the last write of a user is kept
+     * @param registry the registry of the metrics
+     * @return the ReplicaRouter
+     */
+    @Bean
+    @DependsOn("primaryDataSource")
+    public ReplicaRouter replicaRouter(HikariDataSource primaryDataSource, DataSourceProperties properties,
+                                       LastWriteStore lastWriteStore, MeterRegistry registry) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < this.replicas.size(); i++) {
+            Replica replica = this.replicas.get(i);
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("replica-" + i);
+            dataSource.setDriverClassName(properties.determineDriverClassName());
+            dataSource.setJdbcUrl(replica.getUrl());
+            dataSource.setUsername(replica.getUsername() != null ? replica.getUsername() : properties.determineUsername());
+            dataSource.setPassword(replica.getPassword() != null ? replica.getPassword() : properties.determinePassword());
+            dataSource.setMaximumPoolSize(replica.getMaximumPoolSize());
+            dataSource.setReadOnly(true);
+            // the pools of the replicas are not beans, so they are not measured unless told to
+            dataSource.setMetricRegistry(registry);
+            replicas.put(dataSource.getPoolName(), dataSource);
+        }
+        return new ReplicaRouter(primaryDataSource, replicas, this.selection, this.readYourWrites, lastWriteStore, registry);
+    }
+
+    /**
+     * This method provides the DataSource used by JPA and JDBC: it only picks a connection at the first statement
+     * of a transaction, when it is known whether the transaction is read-only.
+     * The default settings of the connections are the ones of PostgreSQL, so that they need not be read from a connection.
+     * Like the router, it waits for the primary to be created.
+     * @param replicaRouter the router between the primary and the replicas
+     * @return the DataSource
+     */
+    @Bean
+    @Primary
+    @DependsOn("primaryDataSource")
+    public DataSource dataSource(ReplicaRouter replicaRouter) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy();
+        dataSource.setTargetDataSource(new ReplicaRoutingDataSource(replicaRouter));
+        dataSource.setDefaultAutoCommit(true);
+        dataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        return dataSource;
+    }
+
+    /**
+     * A read replica
+     */
+    public static class Replica {
+
+        /**
+         * JDBC url of the replica
+         */
+        private String url;
+
+        /**
+         * Username for the replica, the one of the primary if not set
+         */
+        private String username;
+
+        /**
+         * Password for the replica, the one of the primary if not set
+         */
+        private String password;
+
+        /**
+         * Maximum number of connections to the replica
+         */
+        private int maximumPoolSize = 10;
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+        public int getMaximumPoolSize() {
+            return maximumPoolSize;
+        }
+
+        public void setMaximumPoolSize(int maximumPoolSize) {
+            this.maximumPoolSize = maximumPoolSize;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package it.uniroma3.siw.taskmanager.configuration;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.uniroma3.siw.taskmanager.index.AfterCommit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The ReplicaRouter chooses the DataSource each connection of the ReplicaRoutingDataSource comes from:
+ * the connections of the read-only transactions come from the read replicas, and all the others from the primary.
+ * A user who has just committed a write of their own keeps reading from the primary for the read-your-writes window,
+ * so that they never miss their own changes while the replicas catch up: when a read-write transaction actually
+ * runs a statement that writes, the time it commits at is kept in the LastWriteStore, that travels with the user.
+ * Replicas are chosen in turn (round robin) or by the lowest latency; both are measured by probing them periodically,
+ * and a replica is only chosen once it has answered its last probe.
+ */
+public class ReplicaRouter {
+
+    /**
+     * How a replica is chosen for a read-only transaction
+     */
+    public enum Selection {
+        ROUND_ROBIN, LEAST_LATENCY
+    }
+
+    private final DataSource primary;
+
+    /**
+     * The primary, telling when a connection of a read-write transaction writes
+     */
+    private final DataSource trackedPrimary;
+
+    private final List<Replica> replicas = new ArrayList<>();
+
+    private final Selection selection;
+
+    /**
+     * When the user of the current request last committed a write
+     */
+    private final LastWriteStore lastWrites;
+
+    private final Duration readYourWrites;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final Counter primaryCounter;
+
+    public ReplicaRouter(DataSource primary, Map<String, DataSource> replicas, Selection selection,
+                         Duration readYourWrites, LastWriteStore lastWrites, MeterRegistry registry) {
+        this.primary = primary;
+        this.trackedPrimary = new WriteTrackingDataSource(primary,
+                () -> AfterCommit.run(() -> lastWrites.setLastWrite(Instant.now())));
+        this.selection = selection;
+        this.lastWrites = lastWrites;
+        this.readYourWrites = readYourWrites;
+        this.primaryCounter = routed(registry, "primary");
+        replicas.forEach((name, dataSource) -> {
+            Replica replica = new Replica(dataSource, routed(registry, name));
+            Gauge.builder("taskmanager.datasource.replica.latency", replica, r -> r.latencyMillis)
+                    .description("Round-trip time of the last probe of a read replica, negative if it failed or has not run yet")
+                    .baseUnit("milliseconds")
+                    .tag("target", name)
+                    .register(registry);
+            this.replicas.add(replica);
+        });
+    }
+
+    /**
+     * This method checks the latency of each replica by running a trivial query on it.
+     * It runs periodically, according to the "taskmanager.datasource.probe-interval" property.
+     */
+    @Scheduled(fixedDelayString = "${taskmanager.datasource.probe-interval}")
+    public void probe() {
+        for (Replica replica : this.replicas) {
+            long start = System.nanoTime();
+            try (Connection connection = replica.dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("select 1");
+                replica.latencyMillis = (System.nanoTime() - start) / 1_000_000.0;
+            } catch (SQLException e) {
+                replica.latencyMillis = -1;
+            }
+        }
+    }
+
+    /**
+     * This method closes the connection pools of the replicas; the primary is closed on its own.
+     * @throws Exception if a pool cannot be closed
+     */
+    public void close() throws Exception {
+        for (Replica replica : this.replicas)
+            if (replica.dataSource instanceof AutoCloseable)
+                ((AutoCloseable) replica.dataSource).close();
+    }
+
+    /**
+     * This method chooses the DataSource a connection must come from, according to the current transaction and user.
+     * @return the DataSource
+     */
+    public DataSource determineTarget() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            // with no replicas, nobody can miss their own writes
+            if (!this.replicas.isEmpty() && TransactionSynchronizationManager.isActualTransactionActive())
+                return this.primary(this.trackedPrimary);
+            return this.primary(this.primary);
+        }
+        Instant lastWrite = this.replicas.isEmpty() ? null : this.lastWrites.getLastWrite();
+        if (lastWrite != null && Instant.now().isBefore(lastWrite.plus(this.readYourWrites)))
+            return this.primary(this.primary);
+        Replica replica = this.selectReplica();
+        if (replica == null)
+            return this.primary(this.primary);
+        replica.routedCounter.increment();
+        return replica.dataSource;
+    }
+
+    /**
+     * @return the replica a read-only transaction must read from, or null if none is available
+     */
+    private Replica selectReplica() {
+        List<Replica> available = new ArrayList<>(this.replicas.size());
+        for (Replica replica : this.replicas)
+            if (replica.latencyMillis >= 0)
+                available.add(replica);
+        if (available.isEmpty())
+            return null;
+        if (this.selection == Selection.LEAST_LATENCY)
+            return available.stream().min(Comparator.comparingDouble(replica -> replica.latencyMillis)).get();
+        return available.get(Math.floorMod(this.next.getAndIncrement(), available.size()));
+    }
+
+    private DataSource primary(DataSource primary) {
+        this.primaryCounter.increment();
+        return primary;
+    }
+
+    private static Counter routed(MeterRegistry registry, String target) {
+        return Counter.builder("taskmanager.datasource.routed")
+                .description("Connections handed out, by the DataSource they come from")
+                .tag("target", target)
+                .register(registry);
+    }
+
+    /**
+     * A read replica, with the latency of its last probe (negative if it failed, or if it has not been probed yet)
+     */
+    private static final class Replica {
+
+        private final DataSource dataSource;
+
+        private final Counter routedCounter;
+
+        private volatile double latencyMillis = -1;
+
+        private Replica(DataSource dataSource, Counter routedCounter) {
+            this.dataSource = dataSource;
+            this.routedCounter = routedCounter;
+        }
+    }
+}
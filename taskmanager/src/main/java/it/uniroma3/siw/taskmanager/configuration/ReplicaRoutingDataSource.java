@@ -0,0 +1,30 @@
+package it.uniroma3.siw.taskmanager.configuration;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * The ReplicaRoutingDataSource hands out the connections of the primary or of a read replica, as chosen by a ReplicaRouter.
+ * It must be wrapped by a LazyConnectionDataSourceProxy, so that the connection of a transaction
+ * is only chosen once the transaction has been declared read-only or not.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    private final ReplicaRouter router;
+
+    public ReplicaRoutingDataSource(ReplicaRouter router) {
+        this.router = router;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return this.router.determineTarget().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return this.router.determineTarget().getConnection(username, password);
+    }
+}
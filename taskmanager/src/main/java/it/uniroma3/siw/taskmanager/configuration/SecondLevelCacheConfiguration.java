@@ -0,0 +1,155 @@
+package it.uniroma3.siw.taskmanager.configuration;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.persistence.EntityManagerFactory;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * The SecondLevelCacheConfiguration provides the in-process cache that Hibernate uses as its second-level cache.
+ * Every region (entity, collection or query results region) must be listed under "taskmanager.cache.regions",
+ * with its maximum number of entries and its time to live: Hibernate refuses to start if a region is missing.
+ * The only exception is the region of the update timestamps, that is always created and never bounded.
+ * Hits, misses and puts of each configured region are published by the "taskmanager.cache.*" metrics.
+ * The cache is kept by each node, and is not told of the writes of the other nodes (nor are the update timestamps):
+ * there, an entry is only refreshed once it expires, so the time to live of a region bounds how stale it can be.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "taskmanager.cache")
+public class SecondLevelCacheConfiguration {
+
+    /**
+     * The size and time to live of the regions, by region name
+     */
+    private Map<String, Region> regions = new HashMap<>();
+
+    public Map<String, Region> getRegions() {
+        return regions;
+    }
+
+    public void setRegions(Map<String, Region> regions) {
+        this.regions = regions;
+    }
+
+    /**
+     * This method builds the Caffeine CacheManager holding the regions of the second-level cache,
+     * creating one cache for each configured region.
+     * Entries are stored by reference, as Hibernate only caches the immutable disassembled state of its entities.
+     * The update timestamps record when each table was last written, and a cached query result is only used
+     * if none of its tables was written since: losing one of them could serve stale results,
+     * so their region (that has just one entry per table) is never bounded.
+     * @return the CacheManager
+     */
+    @Bean(destroyMethod = "close")
+    public CacheManager secondLevelCacheManager() {
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName()).getCacheManager();
+        this.regions.forEach((name, region) -> {
+            CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+            configuration.setStoreByValue(false);
+            if (region.getMaxSize() != null)
+                configuration.setMaximumSize(OptionalLong.of(region.getMaxSize()));
+            if (region.getTtl() != null)
+                configuration.setExpireAfterWrite(OptionalLong.of(region.getTtl().toNanos()));
+            cacheManager.createCache(name, configuration);
+        });
+        CaffeineConfiguration<Object, Object> timestamps = new CaffeineConfiguration<>();
+        timestamps.setStoreByValue(false);
+        cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME, timestamps);
+        return cacheManager;
+    }
+
+    /**
+     * This method hands the CacheManager of the second-level cache over to Hibernate.
+     * @param secondLevelCacheManager the CacheManager holding the regions
+     * @return the HibernatePropertiesCustomizer
+     */
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer(CacheManager secondLevelCacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, secondLevelCacheManager);
+    }
+
+    /**
+     * This method publishes the hits, misses and puts of each configured region of the second-level cache,
+     * as collected by the Hibernate statistics.
+     * @param entityManagerFactory the factory of the sessions using the second-level cache
+     * @return the MeterBinder
+     */
+    @Bean
+    public MeterBinder secondLevelCacheMetrics(EntityManagerFactory entityManagerFactory) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        return registry -> this.regions.keySet().forEach(name -> {
+            FunctionCounter.builder("taskmanager.cache.requests", statistics, regionCount(name, CacheRegionStatistics::getHitCount))
+                    .description("Lookups in a region of the second-level cache")
+                    .tags("region", name, "result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("taskmanager.cache.requests", statistics, regionCount(name, CacheRegionStatistics::getMissCount))
+                    .description("Lookups in a region of the second-level cache")
+                    .tags("region", name, "result", "miss")
+                    .register(registry);
+            FunctionCounter.builder("taskmanager.cache.puts", statistics, regionCount(name, CacheRegionStatistics::getPutCount))
+                    .description("Entries written to a region of the second-level cache")
+                    .tags("region", name)
+                    .register(registry);
+        });
+    }
+
+    /**
+     * @return a function reading a count of the passed region from the Hibernate statistics (0 if the region is unknown)
+     */
+    private static ToDoubleFunction<Statistics> regionCount(String name, ToDoubleFunction<CacheRegionStatistics> count) {
+        return statistics -> {
+            CacheRegionStatistics region = statistics.getCacheRegionStatistics(name);
+            return region == null ? 0 : count.applyAsDouble(region);
+        };
+    }
+
+    /**
+     * The bounds of a region of the second-level cache; a bound that is not set is not enforced
+     */
+    public static class Region {
+
+        /**
+         * Maximum number of entries of the region
+         */
+        private Long maxSize;
+
+        /**
+         * Time after which an entry of the region is evicted, counted from when it was written
+         */
+        private Duration ttl;
+
+        public Long getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(Long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package it.uniroma3.siw.taskmanager.configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.uniroma3.siw.taskmanager.authentication.SessionAttributeSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.GenericConversionService;
+import org.springframework.core.serializer.support.DeserializingConverter;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.session.config.SessionRepositoryCustomizer;
+import org.springframework.session.jdbc.JdbcIndexedSessionRepository;
+import org.springframework.session.jdbc.config.annotation.SpringSessionDataSource;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * The SessionStoreConfiguration tunes the store of the HTTP sessions, that Spring Session keeps in the DB
+ * (see the "spring.session.*" properties), so that they survive restarts and are shared by all the nodes.
+ * Session attributes are written by the SessionAttributeSerializer, and only when a request has changed them.
+ * The time each operation on the store takes is published by the "taskmanager.session.store" metric.
+ */
+@Configuration
+public class SessionStoreConfiguration {
+
+    /**
+     * The update of a session run at the end of a request: the values passed for its row are only written
+     * if one of them other than the last access time has changed, or if the last access time written before
+     * is older than the touch interval (the "%d" placeholder, in milliseconds); "%s" is the table of the sessions.
+     * Each parameter is bound once, in the order of the statement it replaces, and read back through V.
+     */
+    private static final String COALESCED_UPDATE_SESSION_QUERY =
+            "UPDATE %s S SET SESSION_ID = V.SESSION_ID, LAST_ACCESS_TIME = V.LAST_ACCESS_TIME, " +
+            "MAX_INACTIVE_INTERVAL = V.MAX_INACTIVE_INTERVAL, EXPIRY_TIME = V.EXPIRY_TIME, PRINCIPAL_NAME = V.PRINCIPAL_NAME " +
+            "FROM (SELECT CAST(? AS CHAR(36)) AS SESSION_ID, CAST(? AS BIGINT) AS LAST_ACCESS_TIME, " +
+            "CAST(? AS INT) AS MAX_INACTIVE_INTERVAL, CAST(? AS BIGINT) AS EXPIRY_TIME, " +
+            "CAST(? AS VARCHAR(100)) AS PRINCIPAL_NAME, CAST(? AS CHAR(36)) AS PRIMARY_ID) V " +
+            "WHERE S.PRIMARY_ID = V.PRIMARY_ID AND (S.SESSION_ID <> V.SESSION_ID " +
+            "OR S.MAX_INACTIVE_INTERVAL <> V.MAX_INACTIVE_INTERVAL " +
+            "OR S.PRINCIPAL_NAME IS DISTINCT FROM V.PRINCIPAL_NAME " +
+            "OR V.LAST_ACCESS_TIME - S.LAST_ACCESS_TIME >= %d)";
+
+    /**
+     * This method provides the conversion of the session attributes to the bytes stored in the DB, and back.
+     * @param serializer the serializer of the session attributes
+     * @return the ConversionService used by Spring Session
+     */
+    @Bean
+    public ConversionService springSessionConversionService(SessionAttributeSerializer serializer) {
+        GenericConversionService conversionService = new GenericConversionService();
+        conversionService.addConverter(Object.class, byte[].class, new SerializingConverter(serializer));
+        conversionService.addConverter(byte[].class, Object.class, new DeserializingConverter(serializer));
+        return conversionService;
+    }
+
+    /**
+     * This method provides the transactions the session store runs each of its operations in,
+     * independent of any transaction of the request, and times them.
+     * They are run on the DataSource of the session store, that is always the primary (see ReadReplicaConfiguration).
+     * @param dataSource the DataSource of the session store
+     * @param registry the registry of the metrics
+     * @return the TransactionOperations used by Spring Session
+     */
+    @Bean
+    public TransactionOperations springSessionTransactionOperations(@SpringSessionDataSource DataSource dataSource,
+                                                                    MeterRegistry registry) {
+        Timer timer = Timer.builder("taskmanager.session.store")
+                .description("Time spent reading, writing or deleting sessions in the session store")
+                .register(registry);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource)) {
+            @Override
+            public <T> T execute(TransactionCallback<T> action) {
+                return timer.record(() -> super.execute(action));
+            }
+        };
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return transactionTemplate;
+    }
+
+    /**
+     * This method coalesces the writes of the sessions: a request that changes nothing in its session
+     * but its last access time only writes it once in a while, according to "taskmanager.session.touch-interval".
+     * Sessions may then expire up to that interval earlier than their timeout.
+     * @param tableName the table of the sessions
+     * @param touchInterval how old the written last access time of a session can get before it is written again
+     * @return the customizer of the session store
+     */
+    @Bean
+    public SessionRepositoryCustomizer<JdbcIndexedSessionRepository> sessionWriteCoalescing(
+            @Value("${spring.session.jdbc.table-name:SPRING_SESSION}") String tableName,
+            @Value("${taskmanager.session.touch-interval}") Duration touchInterval) {
+        return repository -> repository.setUpdateSessionQuery(
+                String.format(COALESCED_UPDATE_SESSION_QUERY, tableName, touchInterval.toMillis()));
+    }
+}
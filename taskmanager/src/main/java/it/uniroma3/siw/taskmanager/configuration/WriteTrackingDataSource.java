@@ -0,0 +1,122 @@
+package it.uniroma3.siw.taskmanager.configuration;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The WriteTrackingDataSource hands out the connections of another DataSource, and tells when one of them
+ * is first asked to run a statement that writes: anything but a SELECT (or a SHOW, or a SET of a setting).
+ * Statements are only recognized by their text, as they are prepared, so no extra round-trip is ever made.
+ */
+class WriteTrackingDataSource extends DelegatingDataSource {
+
+    /**
+     * Statements that never write
+     */
+    private static final Set<String> READS = Set.of("select", "show", "set");
+
+    /**
+     * What to do the first time a connection runs a statement that writes
+     */
+    private final Runnable onFirstWrite;
+
+    WriteTrackingDataSource(DataSource target, Runnable onFirstWrite) {
+        super(target);
+        this.onFirstWrite = onFirstWrite;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return this.track(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return this.track(super.getConnection(username, password));
+    }
+
+    private Connection track(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(WriteTrackingDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new TrackingHandler(connection));
+    }
+
+    /**
+     * @return true if the passed SQL statement may write
+     */
+    static boolean isWrite(String sql) {
+        int start = 0;
+        while (start < sql.length() && (Character.isWhitespace(sql.charAt(start)) || sql.charAt(start) == '('))
+            start++;
+        int end = start;
+        while (end < sql.length() && Character.isLetter(sql.charAt(end)))
+            end++;
+        return !READS.contains(sql.substring(start, end).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Looks at the SQL passed to a connection, and to the statements it creates, until it finds a write
+     */
+    private final class TrackingHandler implements InvocationHandler {
+
+        private final Connection connection;
+
+        private boolean written = false;
+
+        private TrackingHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "prepareStatement":
+                case "prepareCall":
+                    this.check(args[0]);
+                    break;
+                default:
+                    break;
+            }
+            Object result = invokeOn(this.connection, method, args);
+            if (result instanceof Statement && method.getName().equals("createStatement"))
+                return Proxy.newProxyInstance(WriteTrackingDataSource.class.getClassLoader(),
+                        new Class<?>[]{Statement.class}, (statement, statementMethod, statementArgs) -> {
+                            if (statementArgs != null && statementArgs.length > 0 && (statementMethod.getName().startsWith("execute")
+                                    || statementMethod.getName().equals("addBatch")))
+                                this.check(statementArgs[0]);
+                            if (statementMethod.getName().equals("getConnection"))
+                                return proxy;
+                            return invokeOn(result, statementMethod, statementArgs);
+                        });
+            return result;
+        }
+
+        private void check(Object sql) {
+            if (!this.written && sql instanceof String && isWrite((String) sql)) {
+                this.written = true;
+                onFirstWrite.run();
+            }
+        }
+    }
+
+    private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
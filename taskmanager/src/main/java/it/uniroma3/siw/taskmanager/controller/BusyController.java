@@ -0,0 +1,38 @@
+package it.uniroma3.siw.taskmanager.controller;
+
+import it.uniroma3.siw.taskmanager.authentication.PasswordHashingBusyException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * The BusyController handles the requests of any of the other controllers
+ * that could not be served because passwords cannot be hashed right now, e.g. registrations during a login storm.
+ */
+@ControllerAdvice
+public class BusyController {
+
+	/**
+	 * Number of seconds after which a request rejected as busy should be repeated
+	 */
+	public static final String RETRY_AFTER_SECONDS = "5";
+
+	/**
+	 * This method is called when a request fails because all the threads hashing passwords are busy.
+	 * It answers with "503 Service Unavailable", tells when to retry, and dispatches the busy view.
+	 *
+	 * @param exception the failure to hash a password
+	 * @param response the response to send
+	 * @return the name of the target view, that in this case is "busy"
+	 */
+	@ExceptionHandler(PasswordHashingBusyException.class)
+	@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+	public String busy(PasswordHashingBusyException exception, HttpServletResponse response) {
+		response.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+		return "busy";
+	}
+}
@@ -0,0 +1,29 @@
+package it.uniroma3.siw.taskmanager.controller;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * The ConflictController handles the writes that have been rejected because of a concurrent update,
+ * by any of the other controllers.
+ */
+@ControllerAdvice
+public class ConflictController {
+
+	/**
+	 * This method is called when a request fails because the item it changes has been updated concurrently,
+	 * and retrying it (if it could be retried at all) did not help.
+	 * It answers with "409 Conflict" and dispatches the conflict view.
+	 *
+	 * @param exception the optimistic locking failure
+	 * @return the name of the target view, that in this case is "conflict"
+	 */
+	@ExceptionHandler(OptimisticLockingFailureException.class)
+	@ResponseStatus(HttpStatus.CONFLICT)
+	public String conflict(OptimisticLockingFailureException exception) {
+		return "conflict";
+	}
+}
@@ -1,10 +1,14 @@
 package it.uniroma3.siw.taskmanager.controller;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 
+import javax.servlet.http.HttpServletResponse;
+
 /**
  * The MainController is a Spring Boot Controller to handle
  * the generic interactions with the home pages (e.g. index page), that do not refer to specific entities
@@ -26,4 +30,19 @@ public class MainController {
     public String index(Model model) {
         return "index";
     }
+
+    /**
+     * This method is called when a login is forwarded to URL "/busy", because its password could not be checked
+     * as all the threads hashing passwords are busy.
+     * This method answers with "503 Service Unavailable", tells when to retry, and dispatches the busy view.
+     *
+     * @param response the response to send
+     * @return the name of the target view, that in this case is "busy"
+     */
+    @RequestMapping(value = { "/busy" })
+    public String busy(HttpServletResponse response) {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, BusyController.RETRY_AFTER_SECONDS);
+        return "busy";
+    }
 }
\ No newline at end of file
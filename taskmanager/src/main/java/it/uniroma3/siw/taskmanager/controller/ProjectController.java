@@ -1,10 +1,14 @@
 package it.uniroma3.siw.taskmanager.controller;
 
+import java.io.IOException;
 import java.util.List;
 
 import javax.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
@@ -12,7 +16,11 @@ import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import it.uniroma3.siw.taskmanager.authentication.UserPrincipal;
 import it.uniroma3.siw.taskmanager.controller.session.SessionData;
 import it.uniroma3.siw.taskmanager.controller.validation.ProjectValidator;
 import it.uniroma3.siw.taskmanager.model.Credentials;
@@ -20,11 +28,21 @@ import it.uniroma3.siw.taskmanager.model.Project;
 import it.uniroma3.siw.taskmanager.model.Tag;
 import it.uniroma3.siw.taskmanager.model.Task;
 import it.uniroma3.siw.taskmanager.model.User;
+import it.uniroma3.siw.taskmanager.model.view.ProjectSummary;
+import it.uniroma3.siw.taskmanager.model.view.TaskSummary;
 import it.uniroma3.siw.taskmanager.service.CredentialsService;
+import it.uniroma3.siw.taskmanager.service.KeysetPage;
+import it.uniroma3.siw.taskmanager.service.ProjectAccessService;
+import it.uniroma3.siw.taskmanager.service.ProjectCountersService;
 import it.uniroma3.siw.taskmanager.service.ProjectService;
 import it.uniroma3.siw.taskmanager.service.TagService;
+import it.uniroma3.siw.taskmanager.service.TaskExportService;
+import it.uniroma3.siw.taskmanager.service.TaskImportService;
 import it.uniroma3.siw.taskmanager.service.TaskService;
 import it.uniroma3.siw.taskmanager.service.UserService;
+import it.uniroma3.siw.taskmanager.service.exports.ExportFormat;
+import it.uniroma3.siw.taskmanager.service.imports.ImportFormat;
+import it.uniroma3.siw.taskmanager.service.imports.ImportProgress;
 
 /**
  * Controller for handling all interactions that involve operations on projects.
@@ -53,21 +71,35 @@ public class ProjectController {
 	@Autowired
 	TagService tagService;
 
+	@Autowired
+	ProjectAccessService projectAccessService;
+	
+	@Autowired
+	ProjectCountersService projectCountersService;
+
+	@Autowired
+	TaskImportService taskImportService;
+
+	@Autowired
+	TaskExportService taskExportService;
+
 
 	/**
 	 * This method is called when a GET request is sent by the user to URL "/projects".
-	 * This method prepares and dispatches the owned projects view.
+	 * This method prepares and dispatches the owned projects view, one page at a time.
 	 *
 	 * @param model the Request model
+	 * @param after the cursor of the page to show, absent for the first page
 	 * @return the name of the target view, that in this case is "myOwnedProjects"
 	 */
 	@RequestMapping(value = "/projects", method = RequestMethod.GET)
-	public String myOwnedProjects(Model model) {
-		User loggedUser = this.sessionData.getLoggedUser();
-		List<Project> projectsList = this.projectService.retrieveProjectsOwnedBy(loggedUser);
+	public String myOwnedProjects(Model model, @RequestParam(value = "after", required = false) String after) {
+		UserPrincipal loggedUser = this.sessionData.getLoggedUser();
+		KeysetPage<ProjectSummary> projectsPage = this.projectService.retrieveProjectsOwnedBy(loggedUser.getUserId(), after);
 
 		model.addAttribute("loggedUser", loggedUser);
-		model.addAttribute("projectList", projectsList);
+		model.addAttribute("projectList", projectsPage.getContent());
+		model.addAttribute("nextCursor", projectsPage.getNextCursor());
 
 		return "myOwnedProjects";
 
@@ -83,26 +115,27 @@ public class ProjectController {
 	 */
 	@RequestMapping(value = {"/projects/{projectId}"}, method = RequestMethod.GET)
 	public String project(Model model, @PathVariable Long projectId) {
-		Project project = this.projectService.getProject(projectId);
-		//if doesn't exist such project
-		if(project==null) {
+		UserPrincipal loggedUser = this.sessionData.getLoggedUser();
+		//if such project doesn't exist, or the logged user isn't owner or member of it
+		if(!this.projectAccessService.canView(loggedUser.getUserId(), projectId)) {
 			return "redirect:/projects";
 		}
 
-		User loggedUser = this.sessionData.getLoggedUser();
-		List<User> members = this.userService.getMembers(project);
-		//if the logged user isn't owner or member of the project
-		if(!project.getOwner().equals(loggedUser) && !members.contains(loggedUser)) {
+		Project project = this.projectService.getProject(projectId);
+		//if the project has been deleted in the meantime
+		if(project==null) {
 			return "redirect:/projects";
 		}
-		List<Task> tasks = project.getTasks();
-		List<Tag> tags = project.getTags();
+		List<User> members = this.userService.getMembers(project);
+		List<TaskSummary> tasks = this.taskService.getProjectTasks(projectId);
+		List<Tag> tags = this.tagService.getProjectTags(projectId);
 
 		model.addAttribute("loggedUser", loggedUser);
 		model.addAttribute("project", project);
 		model.addAttribute("members", members);
 		model.addAttribute("tasks", tasks);
 		model.addAttribute("tags", tags);
+		model.addAttribute("counters", this.projectCountersService.getCounters(projectId));
 
 		return "project";		
 	}
@@ -110,18 +143,20 @@ public class ProjectController {
 
 	/**
 	 * This method is called when a GET request is sent by the user to URL "/projects/shared".
-	 * This method prepares and dispatches the shared projects view.
+	 * This method prepares and dispatches the shared projects view, one page at a time.
 	 *
 	 * @param model the Request model 
+	 * @param after the cursor of the page to show, absent for the first page
 	 * @return the name of the target view, that in this case is "sharedProjects"
 	 */
 	@RequestMapping(value = "/projects/shared", method = RequestMethod.GET)
-	public String sharedProjects(Model model) {
-		User loggedUser = this.sessionData.getLoggedUser();
-		List<Project> projects = this.projectService.retrieveProjectsSharedWith(loggedUser);
+	public String sharedProjects(Model model, @RequestParam(value = "after", required = false) String after) {
+		UserPrincipal loggedUser = this.sessionData.getLoggedUser();
+		KeysetPage<ProjectSummary> projectsPage = this.projectService.retrieveProjectsSharedWith(loggedUser.getUserId(), after);
 
 		model.addAttribute("loggedUser", loggedUser);
-		model.addAttribute("projectList", projects);
+		model.addAttribute("projectList", projectsPage.getContent());
+		model.addAttribute("nextCursor", projectsPage.getNextCursor());
 
 		return "sharedProjects";
 	}
@@ -143,9 +178,9 @@ public class ProjectController {
 			return "redirect:/projects";
 		}
 
-		User loggedUser = this.sessionData.getLoggedUser();
+		UserPrincipal loggedUser = this.sessionData.getLoggedUser();
 		//if the logged user isnt't the owner of the project
-		if(!project.getOwner().equals(loggedUser)) {
+		if(project.getOwner().getId() != loggedUser.getUserId()) {
 			return "redirect:/projects";
 		}
 
@@ -170,18 +205,14 @@ public class ProjectController {
 	public String saveProjectUpdate(@Valid @ModelAttribute("projectForm") Project project, BindingResult
 			projectBindingresult, @PathVariable Long id, Model model) {
 
-		User loggedUser = this.sessionData.getLoggedUser();
+		UserPrincipal loggedUser = this.sessionData.getLoggedUser();
 		//validates project
 		projectValidator.validate(project, projectBindingresult);
 		//if no detected errors
 		if(!projectBindingresult.hasErrors()) {
-			Project oldOne = this.projectService.getProject(id);
-			project.setMembers(oldOne.getMembers());
-			project.setTasks(oldOne.getTasks());
-			project.setId(id);
-			project.setOwner(loggedUser);
-			this.projectService.saveProject(project);
-			return "redirect:/projects/" + project.getId();
+			// the form carries the version of the project that has been edited, so concurrent edits are not overwritten
+			this.projectService.updateProject(id, project.getVersion(), project.getName(), project.getDescription());
+			return "redirect:/projects/" + id;
 		}
 
 		model.addAttribute("loggedUser", loggedUser);
@@ -205,9 +236,9 @@ public class ProjectController {
 			return "redirect:/projects";
 		}
 
-		User loggedUser = this.sessionData.getLoggedUser();
+		UserPrincipal loggedUser = this.sessionData.getLoggedUser();
 		//if the logged user isn't the owner of the project
-		if(!project.getOwner().equals(loggedUser)) {
+		if(project.getOwner().getId() != loggedUser.getUserId()) {
 			return "redirect:/projects";
 		}
 
@@ -252,9 +283,9 @@ public class ProjectController {
 			return "redirect:/projects";
 		}
 
-		User loggedUser = this.sessionData.getLoggedUser();
+		UserPrincipal loggedUser = this.sessionData.getLoggedUser();
 		//if the logged user isn't the owner of the project
-		if(!project.getOwner().equals(loggedUser)) {
+		if(project.getOwner().getId() != loggedUser.getUserId()) {
 			return "redirect:/projects";
 		}
 
@@ -278,11 +309,9 @@ public class ProjectController {
 	@RequestMapping(value = {"/projects/{projectId}/share"}, method = RequestMethod.POST)
 	public String attemptProjectShare(@Valid @ModelAttribute("username") String username,
 			Model model, @PathVariable Long projectId) {
-		Project project = this.projectService.getProject(projectId);
 		Credentials credential = this.credentialsService.getCredentials(username);
 		//if project or credential is null
-		if(!(project==null) && !(credential==null)) {
-			this.projectService.shareProjectWithUser(project, credential.getUser());
+		if(!(credential==null) && this.projectService.shareProjectWithUser(projectId, credential.getUser().getId())!=null) {
 			return "redirect:/projects";
 		}
 		return "redirect:/home";		
@@ -304,9 +333,9 @@ public class ProjectController {
 			return "redirect:/projects";
 		}
 
-		User loggedUser = this.sessionData.getLoggedUser();
+		UserPrincipal loggedUser = this.sessionData.getLoggedUser();
 		//if the logged user isn't the owner of the project
-		if(!project.getOwner().equals(loggedUser)) {
+		if(project.getOwner().getId() != loggedUser.getUserId()) {
 			return "redirect:/projects";
 		}
 
@@ -330,20 +359,207 @@ public class ProjectController {
 	public String confirmAddTaskToProject(@Valid @ModelAttribute("taskForm") Task task ,
 			Model model, @PathVariable Long projectId) {
 
-		Project project = this.projectService.getProject(projectId);
-		//if project or task is null
-		if(project==null || task==null) {
+		UserPrincipal loggedUser = this.sessionData.getLoggedUser();
+		//if such project doesn't exist, or the logged user isn't its owner, or task is null
+		if(!this.projectAccessService.isOwner(loggedUser.getUserId(), projectId) || task==null) {
 			return "redirect:/projects";
 		}
 
 		task.setCompleted(false); //just created, by default not yet completed
-		List<Task> lista = project.getTasks();
-		lista.add(task);
-		this.projectService.saveProject(project); 
+		this.taskService.createTask(projectId, task);
 
 		return "redirect:/projects";
 	}
+
+	/**
+	 * This method is called when a POST request is sent by the user to URL "/projects/{projectId}/tasks/complete".
+	 * This method sets as completed all the selected tasks of the project at once.
+	 *
+	 * @param projectId the project identificator
+	 * @param taskIds the identificators of the selected tasks
+	 * @return the name of the target view, that in this case is "/projects/{projectId}", or "/projects"
+	 */
+	@RequestMapping(value = {"/projects/{projectId}/tasks/complete"}, method = RequestMethod.POST)
+	public String completeTasks(@PathVariable Long projectId,
+			@RequestParam(value = "taskIds", required = false) List<Long> taskIds) {
+		//authorization is checked once for all the selected tasks
+		if(!this.projectAccessService.isOwner(this.sessionData.getLoggedUser().getUserId(), projectId)) {
+			return "redirect:/projects";
+		}
+
+		this.taskService.completeTasks(projectId, taskIds);
+		return "redirect:/projects/" + projectId;
+	}
+
+	/**
+	 * This method is called when a POST request is sent by the user to URL "/projects/{projectId}/tasks/assign".
+	 * This method assigns all the selected tasks of the project to the same member at once.
+	 *
+	 * @param projectId the project identificator
+	 * @param taskIds the identificators of the selected tasks
+	 * @param userId the identificator of the member to assign the tasks to
+	 * @return the name of the target view, that in this case is "/projects/{projectId}", or "/projects"
+	 */
+	@RequestMapping(value = {"/projects/{projectId}/tasks/assign"}, method = RequestMethod.POST)
+	public String assignTasks(@PathVariable Long projectId,
+			@RequestParam(value = "taskIds", required = false) List<Long> taskIds,
+			@RequestParam("userId") Long userId) {
+		//authorization is checked once for all the selected tasks, and tasks can only go to who can see the project
+		if(!this.projectAccessService.isOwner(this.sessionData.getLoggedUser().getUserId(), projectId)
+				|| this.projectAccessService.getRole(userId, projectId) == ProjectAccessService.Role.NONE) {
+			return "redirect:/projects";
+		}
+
+		this.taskService.assignTasks(projectId, taskIds, userId);
+		return "redirect:/projects/" + projectId;
+	}
+
+	/**
+	 * This method is called when a POST request is sent by the user to URL "/projects/{projectId}/tasks/tag".
+	 * This method assigns a tag of the project to all the selected tasks of the project at once.
+	 *
+	 * @param projectId the project identificator
+	 * @param taskIds the identificators of the selected tasks
+	 * @param tagId the identificator of the tag
+	 * @return the name of the target view, that in this case is "/projects/{projectId}", or "/projects"
+	 */
+	@RequestMapping(value = {"/projects/{projectId}/tasks/tag"}, method = RequestMethod.POST)
+	public String tagTasks(@PathVariable Long projectId,
+			@RequestParam(value = "taskIds", required = false) List<Long> taskIds,
+			@RequestParam("tagId") Long tagId) {
+		//authorization is checked once for all the selected tasks
+		if(!this.projectAccessService.isOwner(this.sessionData.getLoggedUser().getUserId(), projectId)) {
+			return "redirect:/projects";
+		}
+
+		this.taskService.tagTasks(projectId, taskIds, tagId);
+		return "redirect:/projects/" + projectId;
+	}
+
+	/**
+	 * This method is called when a POST request is sent by the user to URL "/projects/{projectId}/tasks/delete".
+	 * This method deletes all the selected tasks of the project at once.
+	 *
+	 * @param projectId the project identificator
+	 * @param taskIds the identificators of the selected tasks
+	 * @return the name of the target view, that in this case is "/projects/{projectId}", or "/projects"
+	 */
+	@RequestMapping(value = {"/projects/{projectId}/tasks/delete"}, method = RequestMethod.POST)
+	public String deleteTasks(@PathVariable Long projectId,
+			@RequestParam(value = "taskIds", required = false) List<Long> taskIds) {
+		//authorization is checked once for all the selected tasks
+		if(!this.projectAccessService.isOwner(this.sessionData.getLoggedUser().getUserId(), projectId)) {
+			return "redirect:/projects";
+		}
+
+		this.taskService.deleteTasks(projectId, taskIds);
+		return "redirect:/projects/" + projectId;
+	}
+
+	/**
+	 * This method is called when a GET request is sent by the user to URL "/projects/{projectId}/import".
+	 * This method prepares and dispatches the import tasks view, with the progress of the running import if any.
+	 *
+	 * @param model the Request model 
+	 * @param projectId the project identificator
+	 * @return the name of the target view, that in this case is "importTasks", or redirects to "/projects"
+	 */
+	@RequestMapping(value = {"/projects/{projectId}/import"}, method = RequestMethod.GET)
+	public String importTasks(Model model, @PathVariable Long projectId) {
+		UserPrincipal loggedUser = this.sessionData.getLoggedUser();
+		//if such project doesn't exist, or the logged user isn't its owner
+		if(!this.projectAccessService.isOwner(loggedUser.getUserId(), projectId)) {
+			return "redirect:/projects";
+		}
+
+		model.addAttribute("project", this.projectService.getProject(projectId));
+		model.addAttribute("running", this.taskImportService.getRunningImport(projectId));
+		return "importTasks";
+	}
+
+	/**
+	 * This method is called when a POST request is sent by the user to URL "/projects/{projectId}/import".
+	 * This method imports into the project the tasks of the uploaded CSV or NDJSON file, and reports the outcome.
+	 *
+	 * @param model the Request model 
+	 * @param projectId the project identificator
+	 * @param file the uploaded file
+	 * @return the name of the target view, that in this case is "importTasks", or redirects to "/projects"
+	 */
+	@RequestMapping(value = {"/projects/{projectId}/import"}, method = RequestMethod.POST)
+	public String confirmImportTasks(Model model, @PathVariable Long projectId,
+			@RequestParam("file") MultipartFile file) throws IOException {
+		UserPrincipal loggedUser = this.sessionData.getLoggedUser();
+		//if such project doesn't exist, or the logged user isn't its owner
+		if(!this.projectAccessService.isOwner(loggedUser.getUserId(), projectId)) {
+			return "redirect:/projects";
+		}
+
+		model.addAttribute("project", this.projectService.getProject(projectId));
+		ImportFormat format = ImportFormat.of(file.getOriginalFilename(), file.getContentType());
+		if(format == null) {
+			model.addAttribute("formatError", true);
+			return "importTasks";
+		}
+		ImportProgress result = this.taskImportService.importTasks(projectId, format.open(file.getInputStream()));
+		if(result == null) {
+			model.addAttribute("running", this.taskImportService.getRunningImport(projectId));
+			return "importTasks";
+		}
+		model.addAttribute("result", result);
+		return "importTasks";
+	}
 	
+	/**
+	 * This method is called when a GET request is sent by the user to URL "/projects/{projectId}/export".
+	 * This method streams the tasks of the project, with their tags and comments, as a CSV or NDJSON file.
+	 *
+	 * @param projectId the project identificator
+	 * @param format the format of the file, "csv" (the default) or "ndjson"
+	 * @return the streamed file, or "404 Not Found" if the logged user can't see the project
+	 */
+	@RequestMapping(value = {"/projects/{projectId}/export"}, method = RequestMethod.GET)
+	public ResponseEntity<StreamingResponseBody> exportProject(@PathVariable Long projectId,
+			@RequestParam(value = "format", defaultValue = "csv") String format) {
+		//if such project doesn't exist, or the logged user isn't owner or member of it
+		if(!this.projectAccessService.canView(this.sessionData.getLoggedUser().getUserId(), projectId)) {
+			return ResponseEntity.notFound().build();
+		}
+		return this.export(List.of(projectId), "project-" + projectId, format);
+	}
+
+	/**
+	 * This method is called when a GET request is sent by the user to URL "/projects/export".
+	 * This method streams the tasks of all the projects the logged user can see, with their tags and comments,
+	 * as a CSV or NDJSON file.
+	 *
+	 * @param format the format of the file, "csv" (the default) or "ndjson"
+	 * @return the streamed file
+	 */
+	@RequestMapping(value = {"/projects/export"}, method = RequestMethod.GET)
+	public ResponseEntity<StreamingResponseBody> exportProjects(
+			@RequestParam(value = "format", defaultValue = "csv") String format) {
+		List<Long> projectIds = this.projectAccessService.visibleProjectIds(this.sessionData.getLoggedUser().getUserId());
+		return this.export(projectIds, "projects", format);
+	}
+
+	/**
+	 * Stream the export of the tasks of some projects: the file is written by another thread while it is sent,
+	 * so the request thread is released at once.
+	 */
+	private ResponseEntity<StreamingResponseBody> export(List<Long> projectIds, String fileName, String formatName) {
+		ExportFormat format = ExportFormat.of(formatName);
+		if(format == null) {
+			return ResponseEntity.badRequest().build();
+		}
+		StreamingResponseBody body = output -> this.taskExportService.exportTasks(projectIds, format, output);
+		return ResponseEntity.ok()
+				.contentType(MediaType.parseMediaType(format.getContentType() + ";charset=UTF-8"))
+				.header(HttpHeaders.CONTENT_DISPOSITION,
+						"attachment; filename=\"" + fileName + "." + format.getExtension() + "\"")
+				.body(body);
+	}
+
 	/**
 	 * This method is called when a GET request is sent by the user to URL "/projects/add".
 	 * This method prepares and dispatches the add project view.
@@ -353,7 +569,7 @@ public class ProjectController {
 	 */
     @RequestMapping(value = "/projects/add", method = RequestMethod.GET)
     public String createProjectForm(Model model) {
-		User loggedUser = this.sessionData.getLoggedUser();
+		UserPrincipal loggedUser = this.sessionData.getLoggedUser();
 		model.addAttribute("loggedUser", loggedUser);
 		model.addAttribute("projectForm", new Project());
     	
@@ -372,11 +588,10 @@ public class ProjectController {
     public String createProject(@Valid @ModelAttribute("projectForm") Project project, BindingResult
     		projectBindingresult, Model model) {
     	
-    	User loggedUser = this.sessionData.getLoggedUser();
+    	UserPrincipal loggedUser = this.sessionData.getLoggedUser();
     	projectValidator.validate(project, projectBindingresult);
     	if(!projectBindingresult.hasErrors()) {
-    		project.setOwner(loggedUser);
-    		this.projectService.saveProject(project);
+    		this.projectService.createProject(loggedUser.getUserId(), project);
     		return "redirect:/projects/" + project.getId();
     	}
     	
@@ -401,9 +616,9 @@ public class ProjectController {
 			return "redirect:/projects";
 		}
 
-		User loggedUser = this.sessionData.getLoggedUser();
+		UserPrincipal loggedUser = this.sessionData.getLoggedUser();
 		//if the logged user isn't the owner of the project
-		if(!project.getOwner().equals(loggedUser)) {
+		if(project.getOwner().getId() != loggedUser.getUserId()) {
 			return "redirect:/projects";
 		}
 
@@ -418,14 +633,13 @@ public class ProjectController {
 	public String confirmAddTagToProject(@Valid @ModelAttribute("tagForm") Tag tag ,
 			Model model, @PathVariable Long projectId) {
 
-		Project project = this.projectService.getProject(projectId);
-		//if project or task is null
-		if(project==null || tag==null) {
+		UserPrincipal loggedUser = this.sessionData.getLoggedUser();
+		//if such project doesn't exist, or the logged user isn't its owner, or tag is null
+		if(!this.projectAccessService.isOwner(loggedUser.getUserId(), projectId) || tag==null) {
 			return "redirect:/projects";
 		}
 		
-		project.getTags().add(tag);
-		this.projectService.saveProject(project); //new tag persisted into the db by cascade
+		this.tagService.createTag(projectId, tag);
 
 		return "redirect:/projects";
 	}
@@ -0,0 +1,144 @@
+package it.uniroma3.siw.taskmanager.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import it.uniroma3.siw.taskmanager.authentication.UserPrincipal;
+import it.uniroma3.siw.taskmanager.controller.session.SessionData;
+import it.uniroma3.siw.taskmanager.model.Task;
+import it.uniroma3.siw.taskmanager.model.Project;
+import it.uniroma3.siw.taskmanager.service.ProjectAccessService;
+import it.uniroma3.siw.taskmanager.service.ProjectService;
+import it.uniroma3.siw.taskmanager.service.TagService;
+import it.uniroma3.siw.taskmanager.service.TaskSearchService;
+
+/**
+ * Controller for handling the search of tasks, by text or by tags.
+ */
+@Controller
+public class SearchController {
+	
+	@Autowired
+	TaskSearchService taskSearchService;
+	
+	@Autowired
+	ProjectService projectService;
+	
+	@Autowired
+	TagService tagService;
+	
+	@Autowired
+	ProjectAccessService projectAccessService;
+	
+	@Autowired
+	SessionData sessionData;
+	
+	/**
+	 * This method is called when a GET request is sent by the user to URL "/search".
+	 * This method searches the query among the tasks of the projects the logged user can see,
+	 * and dispatches the search view.
+	 *
+	 * @param model the Request model
+	 * @param query the text to search, if any
+	 * @return the name of the target view, that in this case is "search"
+	 */
+	@RequestMapping(value = {"/search"}, method = RequestMethod.GET)
+	public String search(Model model, @RequestParam(value = "q", required = false) String query) {
+		UserPrincipal loggedUser = this.sessionData.getLoggedUser();
+		List<Task> results = new ArrayList<>();
+		if(query!=null && !query.isBlank()) {
+			results = this.taskSearchService.search(loggedUser.getUserId(), query);
+		}
+		
+		model.addAttribute("query", query);
+		model.addAttribute("results", results);
+		model.addAttribute("incomplete", !this.taskSearchService.isComplete());
+		return "search";
+	}
+	
+	/**
+	 * This method is called when a GET request is sent by the user to URL "/projects/{projectId}/tasks/tagged".
+	 * This method retrieves the tasks of the project that have all the chosen tags and none of the excluded ones,
+	 * and dispatches the tagged tasks view.
+	 *
+	 * @param model the Request model
+	 * @param projectId the project identificator
+	 * @param withTags the ids of the tags the tasks must have
+	 * @param withoutTags the ids of the tags the tasks must not have
+	 * @return the name of the target view, that in this case is "taggedTasks", or redirects to "/projects"
+	 */
+	@RequestMapping(value = {"/projects/{projectId}/tasks/tagged"}, method = RequestMethod.GET)
+	public String projectTaggedTasks(Model model, @PathVariable Long projectId,
+			@RequestParam(value = "with", required = false) List<Long> withTags,
+			@RequestParam(value = "without", required = false) List<Long> withoutTags) {
+		UserPrincipal loggedUser = this.sessionData.getLoggedUser();
+		//if such project doesn't exist, or the logged user isn't owner or member of it
+		if(!this.projectAccessService.canView(loggedUser.getUserId(), projectId)) {
+			return "redirect:/projects";
+		}
+		Project project = this.projectService.getProject(projectId);
+		if(project==null) {
+			return "redirect:/projects";
+		}
+		
+		model.addAttribute("project", project);
+		model.addAttribute("tags", this.tagService.getProjectTags(projectId));
+		model.addAttribute("withTags", withTags == null ? new ArrayList<Long>() : withTags);
+		model.addAttribute("withoutTags", withoutTags == null ? new ArrayList<Long>() : withoutTags);
+		model.addAttribute("results", this.taskSearchService.findTaggedInProject(projectId, withTags, withoutTags));
+		model.addAttribute("incomplete", !this.taskSearchService.isComplete());
+		return "taggedTasks";
+	}
+	
+	/**
+	 * This method is called when a GET request is sent by the user to URL "/tasks/tagged".
+	 * This method retrieves the tasks of all the projects the logged user can see that have a tag with each
+	 * of the chosen names and no tag with the excluded ones, and dispatches the tagged tasks view.
+	 *
+	 * @param model the Request model
+	 * @param withTags the names of the tags the tasks must have, comma separated
+	 * @param withoutTags the names of the tags the tasks must not have, comma separated
+	 * @return the name of the target view, that in this case is "taggedTasks"
+	 */
+	@RequestMapping(value = {"/tasks/tagged"}, method = RequestMethod.GET)
+	public String taggedTasks(Model model,
+			@RequestParam(value = "with", required = false) List<String> withTags,
+			@RequestParam(value = "without", required = false) List<String> withoutTags) {
+		UserPrincipal loggedUser = this.sessionData.getLoggedUser();
+		withTags = nonBlank(withTags);
+		withoutTags = nonBlank(withoutTags);
+		
+		List<Task> results = new ArrayList<>();
+		if(!withTags.isEmpty() || !withoutTags.isEmpty()) {
+			results = this.taskSearchService.findTagged(loggedUser.getUserId(), withTags, withoutTags);
+		}
+		model.addAttribute("withTags", String.join(", ", withTags));
+		model.addAttribute("withoutTags", String.join(", ", withoutTags));
+		model.addAttribute("results", results);
+		model.addAttribute("incomplete", !this.taskSearchService.isComplete());
+		return "taggedTasks";
+	}
+	
+	/**
+	 * Drop the empty entries of a list of tag names.
+	 */
+	private static List<String> nonBlank(List<String> names) {
+		List<String> result = new ArrayList<>();
+		if(names != null) {
+			for(String name : names) {
+				if(!name.isBlank()) {
+					result.add(name.trim());
+				}
+			}
+		}
+		return result;
+	}
+}
@@ -11,12 +11,18 @@ import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 
+import it.uniroma3.siw.taskmanager.authentication.UserPrincipal;
 import it.uniroma3.siw.taskmanager.controller.session.SessionData;
+import it.uniroma3.siw.taskmanager.model.Comment;
 import it.uniroma3.siw.taskmanager.model.Project;
 import it.uniroma3.siw.taskmanager.model.Tag;
 import it.uniroma3.siw.taskmanager.model.Task;
 import it.uniroma3.siw.taskmanager.model.User;
+import it.uniroma3.siw.taskmanager.model.view.CommentView;
+import it.uniroma3.siw.taskmanager.service.KeysetPage;
+import it.uniroma3.siw.taskmanager.service.ProjectAccessService;
 import it.uniroma3.siw.taskmanager.service.ProjectService;
 import it.uniroma3.siw.taskmanager.service.TagService;
 import it.uniroma3.siw.taskmanager.service.TaskService;
@@ -43,6 +49,9 @@ public class TaskController {
 	@Autowired
 	SessionData sessionData;
 	
+	@Autowired
+	ProjectAccessService projectAccessService;
+	
 	
 	/**
 	 * This method is called when a GET request is sent by the user to URL "/task/{taskId}/update".
@@ -77,12 +86,8 @@ public class TaskController {
 	public String confirmTaskUpdate(@Valid @ModelAttribute("taskForm") Task task ,
 			Model model, @PathVariable Long taskId) {
 		
-		if(task.equals(null)) {
-			return "redirect:/projects";
-		}
-		
-		task.setId(taskId);
-		this.taskService.saveTask(task);
+		// the form carries the version of the task that has been edited, so concurrent edits are not overwritten
+		this.taskService.updateTask(taskId, task.getVersion(), task.getName(), task.getDescription(), task.isCompleted());
 		
 		return "redirect:/projects";
 	}
@@ -137,7 +142,7 @@ public class TaskController {
 	@RequestMapping(value = {"task/{taskId}/assignTo/{projectId}"}, method = RequestMethod.GET)
 	public String assignTaskTo(Model model, @PathVariable Long taskId, @PathVariable Long projectId) {
 		Task task = this.taskService.getTask(taskId);
-		Project project = this.projectService.getProject(projectId);
+		Project project = this.projectService.getProjectWithMembers(projectId);
 		
 		if(task!=null && project!=null) {
 			List<User> members = project.getMembers();
@@ -159,15 +164,10 @@ public class TaskController {
 	 */
 	@RequestMapping(value = {"task/{taskId}/assignTo/{userId}"}, method = RequestMethod.POST)
 	public String confirmAssignTaskTo(Model model, @PathVariable Long taskId, @PathVariable Long userId) {
-		Task task = this.taskService.getTask(taskId);
 		User user = this.userService.getUser(userId);
 		
-		if(task!=null && user!=null) {
-			task.setAssignedUser(user);
-			user.getTasksToDo().add(task);
-			
-			this.taskService.saveTask(task);
-			this.userService.saveUser(user); 
+		if(user!=null) {
+			this.taskService.assignTask(taskId, userId);
 		}
 		return "redirect:/projects";
 	}
@@ -178,16 +178,21 @@ public class TaskController {
 	 *
 	 * @param model the Request model 
 	 * @param taskId the identificative of the task
+	 * @param after the cursor of the page of comments to show, absent for the newest ones
 	 * @return the name of the target view, that in this case is "task".
 	 */
 	@RequestMapping(value = {"task/{taskId}"}, method = RequestMethod.GET)
-	public String task(Model model, @PathVariable Long taskId) {
-		Task task = this.taskService.getTask(taskId);
+	public String task(Model model, @PathVariable Long taskId,
+			@RequestParam(value = "after", required = false) String after) {
+		Task task = this.taskService.getTaskDetail(taskId);
 		
-		if(task.equals(null)) {
+		if(task == null) {
 			return "redirect:/projects";
 		}
+		KeysetPage<CommentView> commentsPage = this.taskService.getComments(taskId, after);
 		model.addAttribute("task", task);
+		model.addAttribute("comments", commentsPage.getContent());
+		model.addAttribute("nextCursor", commentsPage.getNextCursor());
 		
 		return "task";
 	}
@@ -204,7 +209,7 @@ public class TaskController {
 	@RequestMapping(value = {"task/{taskId}/assignTag/{projectId}"}, method = RequestMethod.GET)
 	public String assignTagTo(Model model, @PathVariable Long taskId, @PathVariable Long projectId) {
 		Task task = this.taskService.getTask(taskId);
-		Project project = this.projectService.getProject(projectId);
+		Project project = this.projectService.getProjectWithTags(projectId);
 		
 		if(task!=null && project!=null) {
 			List<Tag> tags = project.getTags();
@@ -226,12 +231,10 @@ public class TaskController {
 	 */
 	@RequestMapping(value = {"task/{taskId}/assignTag/{tagId}"}, method = RequestMethod.POST)
 	public String confirmAssignTagTo(Model model, @PathVariable Long taskId, @PathVariable Long tagId) {
-		Task task = this.taskService.getTask(taskId);
 		Tag tag = this.tagService.getTag(tagId);
 		
-		if(task!=null && tag!=null) {
-			task.getTags().add(tag);
-			this.taskService.saveTask(task);
+		if(tag!=null) {
+			this.taskService.addTag(taskId, tagId);
 		}
 		return "redirect:/projects/";
 	}
@@ -248,16 +251,13 @@ public class TaskController {
 	@RequestMapping(value = {"task/{taskId}/addComment/{projectId}"}, method = RequestMethod.GET)
 	public String addcommentTo(Model model, @PathVariable Long taskId, @PathVariable Long projectId) {
 		Task task = this.taskService.getTask(taskId);
-		Project project = this.projectService.getProject(projectId);
+		UserPrincipal loggedUser = this.sessionData.getLoggedUser();
 		
-		if(task!=null && project!=null) {
-			User loggedUser = this.sessionData.getLoggedUser();
-			//if the logged user is the owner of the project or has visibility of it
-			if(loggedUser.equals(project.getOwner()) || project.getMembers().contains(loggedUser)) {
+		//if the logged user is the owner of the project or has visibility of it
+		if(task!=null && this.projectAccessService.canView(loggedUser.getUserId(), projectId)) {
 			model.addAttribute("task", task);
 			model.addAttribute("comment", new String());
 			return "addComment";
-			}
 		}
 		return "redirect:/project/" + projectId.toString();
 	}
@@ -274,11 +274,13 @@ public class TaskController {
 	@RequestMapping(value = {"task/{taskId}/addcomment"}, method = RequestMethod.POST)
 	public String confirmAddcommentTo(Model model, @PathVariable Long taskId, 
 			@Valid @ModelAttribute("comment") String comment) {
-		Task task = this.taskService.getTask(taskId);
+		UserPrincipal loggedUser = this.sessionData.getLoggedUser();
 		
-		if(task!=null && comment!=null) {
-			task.getComments().add(comment);
-			this.taskService.saveTask(task);
+		//if the task exists and the logged user is the owner of its project or has visibility of it
+		if(comment!=null && !comment.isBlank() && comment.length() <= Comment.TEXT_MAX_LENGTH
+				&& this.projectAccessService.canViewTask(loggedUser.getUserId(), taskId)) {
+			this.taskService.addComment(taskId, loggedUser.getUserId(), comment);
+			return "redirect:/task/" + taskId;
 		}
 		return "redirect:/projects/";
 	}
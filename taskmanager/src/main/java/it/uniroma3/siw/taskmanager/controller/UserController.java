@@ -1,14 +1,20 @@
 package it.uniroma3.siw.taskmanager.controller;
 
+import it.uniroma3.siw.taskmanager.authentication.UserPrincipal;
 import it.uniroma3.siw.taskmanager.controller.session.SessionData;
 import it.uniroma3.siw.taskmanager.controller.validation.CredentialsValidator;
 import it.uniroma3.siw.taskmanager.controller.validation.ProjectValidator;
 import it.uniroma3.siw.taskmanager.controller.validation.UserValidator;
 import it.uniroma3.siw.taskmanager.model.Credentials;
 import it.uniroma3.siw.taskmanager.model.User;
+import it.uniroma3.siw.taskmanager.model.view.AssignedTask;
+import it.uniroma3.siw.taskmanager.model.view.CredentialsSummary;
 import it.uniroma3.siw.taskmanager.repository.UserRepository;
 import it.uniroma3.siw.taskmanager.service.CredentialsService;
+import it.uniroma3.siw.taskmanager.service.KeysetPage;
+import it.uniroma3.siw.taskmanager.service.ProjectAccessService;
 import it.uniroma3.siw.taskmanager.service.ProjectService;
+import it.uniroma3.siw.taskmanager.service.TaskService;
 
 import java.util.List;
 
@@ -23,6 +29,7 @@ import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 
 /**
  * The UserController handles all interactions involving User data.
@@ -54,6 +61,12 @@ public class UserController {
     @Autowired
     SessionData sessionData;
 
+    @Autowired
+    ProjectAccessService projectAccessService;
+
+    @Autowired
+    TaskService taskService;
+
     /**
      * This method is called when a GET request is sent by the user to URL "/users/user_id".
      * This method prepares and dispatches the User registration view.
@@ -63,8 +76,9 @@ public class UserController {
      */
     @RequestMapping(value = { "/home" }, method = RequestMethod.GET)
     public String home(Model model) {
-        User loggedUser = sessionData.getLoggedUser();
+        UserPrincipal loggedUser = sessionData.getLoggedUser();
         model.addAttribute("user", loggedUser);
+        model.addAttribute("sharedProjectsCount", this.projectAccessService.countProjectsSharedWith(loggedUser.getUserId()));
         return "home";
     }
 
@@ -77,15 +91,37 @@ public class UserController {
      */
     @RequestMapping(value = { "/users/me" }, method = RequestMethod.GET)
     public String me(Model model) {
-        User loggedUser = sessionData.getLoggedUser();
-        Credentials credentials = sessionData.getLoggedCredentials();
-        System.out.println(credentials.getPassword());
-        model.addAttribute("user", loggedUser);
+        Credentials credentials = sessionData.loadLoggedCredentials();
+        model.addAttribute("user", credentials.getUser());
         model.addAttribute("credentials", credentials);
 
         return "userProfile";
     }
 
+    /**
+     * This method is called when a GET request is sent by the user to URL "/users/me/tasks".
+     * This method prepares and dispatches the inbox of the tasks assigned to the logged user, one page at a time.
+     *
+     * @param model the Request model
+     * @param completed if present, only the tasks with this completion state are shown
+     * @param projectId if present, only the tasks of this project are shown
+     * @param after the cursor of the page to show, absent for the first page
+     * @return the name of the target view, that in this case is "myTasks"
+     */
+    @RequestMapping(value = { "/users/me/tasks" }, method = RequestMethod.GET)
+    public String myTasks(Model model,
+            @RequestParam(value = "completed", required = false) Boolean completed,
+            @RequestParam(value = "project", required = false) Long projectId,
+            @RequestParam(value = "after", required = false) String after) {
+        UserPrincipal loggedUser = sessionData.getLoggedUser();
+        KeysetPage<AssignedTask> tasksPage = this.taskService.retrieveTasksAssignedTo(loggedUser.getUserId(), completed, projectId, after);
+        model.addAttribute("taskList", tasksPage.getContent());
+        model.addAttribute("nextCursor", tasksPage.getNextCursor());
+        model.addAttribute("completed", completed);
+        model.addAttribute("project", projectId);
+        return "myTasks";
+    }
+
     /**
      * This method is called when a GET request is sent by the user to URL "/users/user_id".
      * This method prepares and dispatches the User registration view.
@@ -95,7 +131,7 @@ public class UserController {
      */
     @RequestMapping(value = { "/admin" }, method = RequestMethod.GET)
     public String admin(Model model) {
-        User loggedUser = sessionData.getLoggedUser();
+        UserPrincipal loggedUser = sessionData.getLoggedUser();
         model.addAttribute("user", loggedUser);
         return "admin";
     }
@@ -109,8 +145,8 @@ public class UserController {
 	 */
     @RequestMapping(value = {"/admin/users"}, method = RequestMethod.GET)
     public String allUsers(Model model) {
-    	User loggedUser = this.sessionData.getLoggedUser();
-    	List<Credentials> allCredentials = this.credentialsService.getAllCredentials();
+    	UserPrincipal loggedUser = this.sessionData.getLoggedUser();
+    	List<CredentialsSummary> allCredentials = this.credentialsService.getAllCredentials();
     	
     	model.addAttribute("loggedUser", loggedUser);
     	model.addAttribute("credentialsList", allCredentials);
@@ -143,10 +179,9 @@ public class UserController {
 	 */
     @RequestMapping(value = "/users/me/updateProfile", method = RequestMethod.GET)
     public String updateProfile(Model model) {
-    	User user = this.sessionData.getLoggedUser();
-    	Credentials credentials = this.sessionData.getLoggedCredentials();
+    	Credentials credentials = this.sessionData.loadLoggedCredentials();
     	
-    	model.addAttribute("userForm", user);
+    	model.addAttribute("userForm", credentials.getUser());
     	model.addAttribute("credentialsForm", credentials);
     	    	
     	return "updateProfile";
@@ -160,27 +195,34 @@ public class UserController {
 	 * @param user the user
 	 * @return the name of the target view, that in this case is "/users/me"
 	 */
-    @RequestMapping(value = "{/users/me/updateProfile}", method = RequestMethod.POST)
+    @RequestMapping(value = "/users/me/updateProfile", method = RequestMethod.POST)
     public String confirmUpdateProfile(@Valid @ModelAttribute("userForm") User user,
             BindingResult userBindingResult,
             @Valid @ModelAttribute("credentialsForm") Credentials credentials,
             BindingResult credentialsBindingResult,
             Model model) {
     	
+    	// the username of the logged user is not a duplicate of itself
+    	credentials.setId(this.sessionData.getLoggedUser().getCredentialsId());
+    	if(SessionData.PROTECTED_PASSWORD.equals(credentials.getPassword()))
+    		credentials.setPassword("");
+    	
     	// validate user and credentials fields
     	this.userValidator.validate(user, userBindingResult);
         this.credentialsValidator.validate(credentials, credentialsBindingResult);
         
         // if neither of them had invalid contents, update the User and the Credentials into the DB
         if(!userBindingResult.hasErrors() && ! credentialsBindingResult.hasErrors()) {
-        	user.setId(this.sessionData.getLoggedUser().getId());
-        	credentials.setId(this.sessionData.getLoggedCredentials().getId());
-            credentials.setUser(user);
-            
-            credentialsService.saveCredentials(credentials);
+        	// hashed before the update begins, so that no DB connection waits for the hashing threads
+        	String encodedPassword = credentials.getPassword().trim().isEmpty() ? null
+        			: this.passwordEncoder.encode(credentials.getPassword());
+        	Credentials updated = this.credentialsService.updateProfile(credentials.getId(), user.getVersion(),
+        			credentials.getUserName().trim(), encodedPassword, user.getFirstName(), user.getLastName());
+        	this.sessionData.refresh(updated);
+        	return "redirect:/users/me";
         }
     	    	
-    	return "redirect:/users/me";
+    	return "updateProfile";
     }
     
 
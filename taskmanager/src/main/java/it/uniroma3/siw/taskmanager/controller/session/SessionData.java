@@ -1,68 +1,62 @@
 package it.uniroma3.siw.taskmanager.controller.session;
 
+import it.uniroma3.siw.taskmanager.authentication.UserPrincipal;
 import it.uniroma3.siw.taskmanager.model.Credentials;
-import it.uniroma3.siw.taskmanager.model.User;
 import it.uniroma3.siw.taskmanager.repository.CredentialsRepository;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Scope;
-import org.springframework.context.annotation.ScopedProxyMode;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 /**
- * SessionData is an interface to save and retrieve specific objects from the current Session.
- * It is mainly used to store the currently logged User and her Credentials
+ * SessionData is an interface to retrieve the currently logged user from the current Session.
+ * The Session only holds their UserPrincipal, a small immutable snapshot of their ids, names and role
+ * stored in the SecurityContext: their Credentials and User entities are loaded on demand, by the views that need them.
+ * In stateless mode there is no Session at all, and the UserPrincipal is the one carried by their signed token.
  */
 @Component
-@Scope(value = "session", proxyMode = ScopedProxyMode.TARGET_CLASS)
 public class SessionData {
 
     /**
-     * Currently logged User
+     * Placeholder for the password of the Credentials shown in the views
      */
-    private User user;
-
-    /**
-     * Credentials for the currently logged User
-     */
-    private Credentials credentials;
+    public static final String PROTECTED_PASSWORD = "[PROTECTED]";
 
     @Autowired
     private CredentialsRepository credentialsRepository;
 
     /**
-     * Retrieve from Session the credentials for the currently logged user.
-     * If they are not stored in Session already, retrieve them from the SecurityContext and from the DB
-     * and store them in session.
+     * Retrieve from Session the UserPrincipal of the currently logged user.
      *
-     * @return the retrieved Credentials for the currently logged user
+     * @return the UserPrincipal of the currently logged user
      */
-    public Credentials getLoggedCredentials() {
-        if (this.credentials == null)
-            this.update();
-        return this.credentials;
+    public UserPrincipal getLoggedUser() {
+        return (UserPrincipal) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
     }
 
     /**
-     * Retrieve from Session the currently logged User.
-     * If it is not stored in Session already, retrieve it from the DB and store it in session.
+     * Load from the DB the Credentials of the currently logged user, together with their User.
+     * They are retrieved by the id kept in their UserPrincipal, so they usually come from the second-level cache.
+     * The password of the returned Credentials is replaced with a placeholder.
      *
-     * @return the retrieved Credentials for the currently logged user
+     * @return the Credentials of the currently logged user
      */
-    public User getLoggedUser() {
-        if (this.user == null)
-            this.update();
-        return this.user;
+    public Credentials loadLoggedCredentials() {
+        Credentials credentials = this.credentialsRepository.findById(this.getLoggedUser().getCredentialsId()).get(); // can never be absent
+        credentials.setPassword(PROTECTED_PASSWORD);
+        return credentials;
     }
 
     /**
-     * Store the Credentials and User objects for the currently logged user in Session
+     * Replace the UserPrincipal stored in Session after the Credentials or the User it was taken from
+     * have been updated in the DB, as the username and the names may have changed
+     * (in stateless mode, a new token is issued for it).
+     *
+     * @param credentials the updated Credentials for the currently logged user, together with their User
      */
-    private void update() {
-        UserDetails loggedUserDetails = (UserDetails) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-        this.credentials = this.credentialsRepository.findByUserName(loggedUserDetails.getUsername()).get(); // can never be absent
-        this.credentials.setPassword("[PROTECTED]");
-        this.user = this.credentials.getUser();
+    public void refresh(Credentials credentials) {
+        UserPrincipal principal = UserPrincipal.of(credentials).withoutPassword();
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
     }
-}
\ No newline at end of file
+}
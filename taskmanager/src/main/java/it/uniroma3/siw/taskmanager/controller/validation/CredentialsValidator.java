@@ -32,15 +32,26 @@ public class CredentialsValidator implements Validator {
             errors.rejectValue("userName", "required");
         else if (userName.length() < MIN_USERNAME_LENGTH || userName.length() > MAX_USERNAME_LENGTH)
             errors.rejectValue("userName", "size");
-        else if (this.credentialsService.getCredentials(userName) != null)
+        else if (this.isTakenByOthers(userName, credentials.getId()))
             errors.rejectValue("userName", "duplicate");
 
-        if (password.isEmpty())
-            errors.rejectValue("password", "required");
+        // existing Credentials keep their password when no new one is given
+        if (password.isEmpty()) {
+            if (credentials.getId() == null)
+                errors.rejectValue("password", "required");
+        }
         else if (password.length() < MIN_PASSWORD_LENGTH || password.length() > MAX_PASSWORD_LENGTH)
             errors.rejectValue("password", "size");
     }
 
+    /**
+     * Check whether a username is used by Credentials other than the ones with the passed id.
+     */
+    private boolean isTakenByOthers(String userName, Long credentialsId) {
+        Credentials existing = this.credentialsService.getCredentials(userName);
+        return existing != null && !existing.getId().equals(credentialsId);
+    }
+
     @Override
     public boolean supports(Class<?> clazz) {
         return User.class.equals(clazz);
@@ -0,0 +1,31 @@
+package it.uniroma3.siw.taskmanager.index;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * AfterCommit defers the updates of the in-memory indexes to the commit of the current transaction,
+ * so that an index never exposes a change that is later rolled back.
+ */
+public final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    /**
+     * Run the passed action after the current transaction commits, or immediately if there is no transaction.
+     * @param action the action to run
+     */
+    public static void run(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package it.uniroma3.siw.taskmanager.index;
+
+import it.uniroma3.siw.taskmanager.repository.TaskRepository;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * The ProjectTaskIndex keeps in memory which Project each Task belongs to,
+ * and a compressed bitmap with the ids of the Tasks of each Project.
+ * The other task indexes use it to restrict their results to the Projects a User can see.
+ * If it cannot be built at startup, it stays cold and the build is retried periodically;
+ * meanwhile the ProjectAccessService looks up on the DB the Project of the Tasks it does not know of.
+ */
+@Component
+public class ProjectTaskIndex {
+
+    @Autowired
+    protected TaskRepository taskRepository;
+
+    @Autowired
+    protected PlatformTransactionManager transactionManager;
+
+    private final Map<Long, Long> projectByTask = new HashMap<>();
+    private final Map<Long, Roaring64NavigableMap> tasksByProject = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Whether the index holds all the Tasks in the DB, i.e. its last build succeeded
+     */
+    private volatile boolean warm = false;
+
+    /**
+     * This method builds the index at startup, and builds it again periodically until a build succeeds,
+     * according to the "taskmanager.index.tasks.retry-interval" property.
+     */
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${taskmanager.index.tasks.retry-interval}")
+    public void warmUp() {
+        if (this.warm)
+            return;
+        try {
+            this.rebuild();
+        } catch (DataAccessException | TransactionException e) {
+            // the index stays cold until the next attempt
+        }
+    }
+
+    /**
+     * This method builds the index from the (task, project) pairs in the DB.
+     */
+    public void rebuild() {
+        TransactionTemplate transaction = new TransactionTemplate(this.transactionManager);
+        transaction.setReadOnly(true);
+        this.lock.writeLock().lock();
+        try {
+            this.warm = false;
+            this.projectByTask.clear();
+            this.tasksByProject.clear();
+            transaction.executeWithoutResult(status -> {
+                try (Stream<Object[]> pairs = this.taskRepository.streamAllProjectIds()) {
+                    pairs.forEach(row -> this.put((Long) row[0], (Long) row[1]));
+                }
+            });
+            this.tasksByProject.values().forEach(Roaring64NavigableMap::runOptimize);
+            this.warm = true;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    // QUERIES
+
+    /**
+     * @return true if the index holds all the Tasks in the DB, false if it has not been built yet
+     */
+    public boolean isWarm() {
+        return this.warm;
+    }
+
+    /**
+     * @return the id of the Project the Task with the passed id belongs to, or null if the Task is unknown
+     */
+    public Long projectOf(long taskId) {
+        this.lock.readLock().lock();
+        try {
+            return this.projectByTask.get(taskId);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return a new bitmap with the ids of the Tasks of the Project with the passed id
+     */
+    public Roaring64NavigableMap tasksOf(long projectId) {
+        this.lock.readLock().lock();
+        try {
+            Roaring64NavigableMap tasks = new Roaring64NavigableMap();
+            Roaring64NavigableMap projectTasks = this.tasksByProject.get(projectId);
+            if (projectTasks != null)
+                tasks.or(projectTasks);
+            return tasks;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return a new bitmap with the ids of the Tasks of all the Projects in the passed bitmap
+     */
+    public Roaring64NavigableMap tasksOf(Roaring64NavigableMap projectIds) {
+        this.lock.readLock().lock();
+        try {
+            Roaring64NavigableMap tasks = new Roaring64NavigableMap();
+            projectIds.forEach(projectId -> {
+                Roaring64NavigableMap projectTasks = this.tasksByProject.get(projectId);
+                if (projectTasks != null)
+                    tasks.or(projectTasks);
+            });
+            return tasks;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    // UPDATES: all of them are applied once the current transaction commits
+
+    /**
+     * Register that a Task belongs to a Project.
+     */
+    public void taskAdded(long taskId, long projectId) {
+        AfterCommit.run(() -> this.write(() -> this.put(taskId, projectId)));
+    }
+
+    /**
+     * Forget a deleted Task.
+     */
+    public void taskRemoved(long taskId) {
+        AfterCommit.run(() -> this.write(() -> this.remove(taskId)));
+    }
+
+    /**
+     * Forget a set of deleted Tasks.
+     */
+    public void tasksRemoved(Roaring64NavigableMap taskIds) {
+        AfterCommit.run(() -> this.write(() -> taskIds.forEach(this::remove)));
+    }
+
+    /**
+     * Forget a deleted Project, together with its Tasks.
+     */
+    public void projectRemoved(long projectId) {
+        AfterCommit.run(() -> this.write(() -> {
+            Roaring64NavigableMap tasks = this.tasksByProject.remove(projectId);
+            if (tasks != null)
+                tasks.forEach(this.projectByTask::remove);
+        }));
+    }
+
+    // HELPERS: callers must hold the write lock
+
+    private void write(Runnable update) {
+        this.lock.writeLock().lock();
+        try {
+            update.run();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void put(long taskId, long projectId) {
+        this.projectByTask.put(taskId, projectId);
+        this.tasksByProject.computeIfAbsent(projectId, id -> new Roaring64NavigableMap()).addLong(taskId);
+    }
+
+    private void remove(long taskId) {
+        Long projectId = this.projectByTask.remove(taskId);
+        if (projectId != null) {
+            Roaring64NavigableMap tasks = this.tasksByProject.get(projectId);
+            tasks.removeLong(taskId);
+            if (tasks.isEmpty())
+                this.tasksByProject.remove(projectId);
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package it.uniroma3.siw.taskmanager.index;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import it.uniroma3.siw.taskmanager.repository.ProjectRepository;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * The ProjectVisibilityIndex keeps in memory which Projects each User can see.
+ * For every User it holds a compressed bitmap of the ids of the Projects they own
+ * and one of the ids of the Projects shared with them; for every Project it holds its owner
+ * and a bitmap of the ids of its members.
+ * It is built from the DB at startup and then kept up to date by the ProjectService,
+ * so that authorization checks never need a DB round-trip.
+ * Each node keeps its own index, that only sees the changes made by that node: it is built again periodically
+ * to take in the changes of the other nodes, and meanwhile the ProjectAccessService checks on the DB
+ * the roles it does not find.
+ * If it cannot be built, it stays cold and the build is retried periodically; meanwhile
+ * the ProjectAccessService resolves the roles from the DB.
+ */
+@Component
+public class ProjectVisibilityIndex implements MeterBinder {
+
+    /**
+     * Estimated heap cost of a map entry: entry, boxed key and reference to the value
+     */
+    private static final long MAP_ENTRY_BYTES = 64;
+
+    @Autowired
+    protected ProjectRepository projectRepository;
+
+    @Autowired
+    protected PlatformTransactionManager transactionManager;
+
+    /**
+     * The bitmaps of the index, replaced as a whole by each rebuild; guarded by the lock
+     */
+    private Bitmaps bitmaps = new Bitmaps();
+
+    /**
+     * The updates applied while a rebuild reads the DB, to be applied again to the bitmaps it builds,
+     * or null if no rebuild is running; guarded by the lock
+     */
+    private List<Consumer<Bitmaps>> pending = null;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Whether the index holds all the Projects in the DB, i.e. a build succeeded
+     */
+    private volatile boolean warm = false;
+
+    /**
+     * This method builds the index at startup, and builds it again periodically until a build succeeds,
+     * according to the "taskmanager.index.visibility.retry-interval" property.
+     */
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${taskmanager.index.visibility.retry-interval}")
+    public void warmUp() {
+        if (this.warm)
+            return;
+        try {
+            this.rebuild();
+        } catch (DataAccessException | TransactionException e) {
+            // the index stays cold: roles are resolved from the DB until the next attempt
+        }
+    }
+
+    /**
+     * This method builds the warm index again, according to the "taskmanager.index.visibility.refresh-interval" property,
+     * so that it takes in the Projects created, shared and deleted by the other nodes.
+     * If the build fails, the index keeps serving its current content until the next one.
+     */
+    @Scheduled(initialDelayString = "${taskmanager.index.visibility.refresh-interval}",
+            fixedDelayString = "${taskmanager.index.visibility.refresh-interval}")
+    public void refresh() {
+        if (!this.warm)
+            return;
+        try {
+            this.rebuild();
+        } catch (DataAccessException | TransactionException e) {
+            // the current content is kept until the next refresh
+        }
+    }
+
+    /**
+     * This method builds the index from the owners and the members of all the Projects in the DB.
+     * The current content keeps being served while the DB is read, and the updates made meanwhile are
+     * applied to both, so none of them is lost when the new content replaces it.
+     */
+    public synchronized void rebuild() {
+        TransactionTemplate transaction = new TransactionTemplate(this.transactionManager);
+        transaction.setReadOnly(true);
+        this.setPending(new ArrayList<>());
+        Bitmaps built = new Bitmaps();
+        try {
+            transaction.executeWithoutResult(status -> {
+                try (Stream<Object[]> ownerships = this.projectRepository.streamAllOwnerships()) {
+                    ownerships.forEach(row -> built.putOwner((Long) row[0], (Long) row[1]));
+                }
+                try (Stream<Object[]> memberships = this.projectRepository.streamAllMemberships()) {
+                    memberships.forEach(row -> built.putMember((Long) row[0], (Long) row[1]));
+                }
+            });
+            built.ownedByUser.values().forEach(Roaring64NavigableMap::runOptimize);
+            built.sharedWithUser.values().forEach(Roaring64NavigableMap::runOptimize);
+        } catch (RuntimeException e) {
+            this.setPending(null);
+            throw e;
+        }
+        this.lock.writeLock().lock();
+        try {
+            this.pending.forEach(update -> update.accept(built));
+            this.pending = null;
+            this.bitmaps = built;
+            this.warm = true;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    // QUERIES
+
+    /**
+     * @return true if the index holds all the Projects in the DB, false if it has not been built yet
+     */
+    public boolean isWarm() {
+        return this.warm;
+    }
+
+    /**
+     * @return true if the Project with the passed id is owned by the User with the passed id
+     */
+    public boolean isOwner(long userId, long projectId) {
+        this.lock.readLock().lock();
+        try {
+            Long ownerId = this.bitmaps.ownerByProject.get(projectId);
+            return ownerId != null && ownerId == userId;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return true if the Project with the passed id is shared with the User with the passed id
+     */
+    public boolean isMember(long userId, long projectId) {
+        this.lock.readLock().lock();
+        try {
+            Roaring64NavigableMap members = this.bitmaps.membersByProject.get(projectId);
+            return members != null && members.contains(userId);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of Projects shared with the User with the passed id
+     */
+    public long countSharedWith(long userId) {
+        this.lock.readLock().lock();
+        try {
+            Roaring64NavigableMap shared = this.bitmaps.sharedWithUser.get(userId);
+            return shared == null ? 0 : shared.getLongCardinality();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return a new bitmap with the ids of all the Projects the User with the passed id owns or is a member of
+     */
+    public Roaring64NavigableMap visibleProjects(long userId) {
+        this.lock.readLock().lock();
+        try {
+            Roaring64NavigableMap visible = new Roaring64NavigableMap();
+            Roaring64NavigableMap owned = this.bitmaps.ownedByUser.get(userId);
+            Roaring64NavigableMap shared = this.bitmaps.sharedWithUser.get(userId);
+            if (owned != null)
+                visible.or(owned);
+            if (shared != null)
+                visible.or(shared);
+            return visible;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    // UPDATES: all of them are applied once the current transaction commits
+
+    /**
+     * Register the owner of a new (or updated) Project.
+     */
+    public void projectSaved(long projectId, long ownerId) {
+        AfterCommit.run(() -> this.write(bitmaps -> {
+            Long previousOwner = bitmaps.ownerByProject.get(projectId);
+            if (previousOwner != null && previousOwner != ownerId)
+                removeFrom(bitmaps.ownedByUser, previousOwner, projectId);
+            bitmaps.putOwner(projectId, ownerId);
+        }));
+    }
+
+    /**
+     * Register that a Project has been shared with a User.
+     */
+    public void memberAdded(long projectId, long userId) {
+        AfterCommit.run(() -> this.write(bitmaps -> bitmaps.putMember(projectId, userId)));
+    }
+
+    /**
+     * Forget a deleted Project.
+     */
+    public void projectDeleted(long projectId) {
+        AfterCommit.run(() -> this.write(bitmaps -> bitmaps.removeProject(projectId)));
+    }
+
+    /**
+     * Forget a deleted User, together with the Projects they owned.
+     */
+    public void userDeleted(long userId) {
+        AfterCommit.run(() -> this.write(bitmaps -> {
+            // detached first: removeProject would otherwise shrink the bitmap it is iterating on
+            Roaring64NavigableMap owned = bitmaps.ownedByUser.remove(userId);
+            if (owned != null)
+                owned.forEach(bitmaps::removeProject);
+            Roaring64NavigableMap shared = bitmaps.sharedWithUser.remove(userId);
+            if (shared != null)
+                shared.forEach(projectId -> removeFrom(bitmaps.membersByProject, projectId, userId));
+        }));
+    }
+
+    // METRICS
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("taskmanager.index.visibility.memory", this, ProjectVisibilityIndex::estimatedSizeInBytes)
+                .description("Estimated heap used by the project visibility index")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("taskmanager.index.visibility.projects", this, index -> index.size())
+                .description("Number of projects in the project visibility index")
+                .register(registry);
+    }
+
+    /**
+     * @return an estimate of the heap used by the bitmaps and the maps of this index
+     */
+    public long estimatedSizeInBytes() {
+        this.lock.readLock().lock();
+        try {
+            long bytes = MAP_ENTRY_BYTES * (this.bitmaps.ownerByProject.size() + this.bitmaps.membersByProject.size()
+                    + this.bitmaps.ownedByUser.size() + this.bitmaps.sharedWithUser.size());
+            bytes += bitmapsSize(this.bitmaps.membersByProject) + bitmapsSize(this.bitmaps.ownedByUser)
+                    + bitmapsSize(this.bitmaps.sharedWithUser);
+            return bytes;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    private int size() {
+        this.lock.readLock().lock();
+        try {
+            return this.bitmaps.ownerByProject.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    // HELPERS
+
+    /**
+     * Apply an update to the bitmaps, and remember it if a rebuild is reading the DB
+     */
+    private void write(Consumer<Bitmaps> update) {
+        this.lock.writeLock().lock();
+        try {
+            update.accept(this.bitmaps);
+            if (this.pending != null)
+                this.pending.add(update);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void setPending(List<Consumer<Bitmaps>> pending) {
+        this.lock.writeLock().lock();
+        try {
+            this.pending = pending;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private static void removeFrom(Map<Long, Roaring64NavigableMap> bitmaps, long key, long value) {
+        Roaring64NavigableMap bitmap = bitmaps.get(key);
+        if (bitmap != null) {
+            bitmap.removeLong(value);
+            if (bitmap.isEmpty())
+                bitmaps.remove(key);
+        }
+    }
+
+    private static long bitmapsSize(Map<Long, Roaring64NavigableMap> bitmaps) {
+        long bytes = 0;
+        for (Roaring64NavigableMap bitmap : bitmaps.values())
+            bytes += bitmap.getLongSizeInBytes();
+        return bytes;
+    }
+
+    /**
+     * The maps of the index: for every Project its owner and its members, for every User the Projects
+     * they own and the ones shared with them
+     */
+    private static final class Bitmaps {
+
+        private final Map<Long, Long> ownerByProject = new HashMap<>();
+        private final Map<Long, Roaring64NavigableMap> membersByProject = new HashMap<>();
+        private final Map<Long, Roaring64NavigableMap> ownedByUser = new HashMap<>();
+        private final Map<Long, Roaring64NavigableMap> sharedWithUser = new HashMap<>();
+
+        private void putOwner(long projectId, long ownerId) {
+            this.ownerByProject.put(projectId, ownerId);
+            this.ownedByUser.computeIfAbsent(ownerId, id -> new Roaring64NavigableMap()).addLong(projectId);
+        }
+
+        private void putMember(long projectId, long userId) {
+            this.membersByProject.computeIfAbsent(projectId, id -> new Roaring64NavigableMap()).addLong(userId);
+            this.sharedWithUser.computeIfAbsent(userId, id -> new Roaring64NavigableMap()).addLong(projectId);
+        }
+
+        private void removeProject(long projectId) {
+            Long ownerId = this.ownerByProject.remove(projectId);
+            if (ownerId != null)
+                removeFrom(this.ownedByUser, ownerId, projectId);
+            Roaring64NavigableMap members = this.membersByProject.remove(projectId);
+            if (members != null)
+                members.forEach(userId -> removeFrom(this.sharedWithUser, userId, projectId));
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package it.uniroma3.siw.taskmanager.index;
+
+import it.uniroma3.siw.taskmanager.repository.TagRepository;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * The TaskTagIndex keeps in memory, for every Tag, a compressed bitmap of the ids of the Tasks it is assigned to.
+ * Tag filters ("tags A and B but not C") are then answered with bitwise operations on these bitmaps.
+ * The index also remembers the Tags of each Task, the Tags of each Project and the names of the Tags,
+ * so that it can be kept up to date when Tasks, Tags and Projects change.
+ * If it cannot be built at startup, it stays cold and the build is retried periodically.
+ */
+@Component
+public class TaskTagIndex {
+
+    private static final long[] NO_TAGS = new long[0];
+
+    @Autowired
+    protected TagRepository tagRepository;
+
+    @Autowired
+    protected PlatformTransactionManager transactionManager;
+
+    private final Map<Long, Roaring64NavigableMap> tasksByTag = new HashMap<>();
+    private final Map<Long, long[]> tagsByTask = new HashMap<>();
+    private final Map<Long, Roaring64NavigableMap> tagsByProject = new HashMap<>();
+    private final Map<Long, String> nameByTag = new HashMap<>();
+    private final Map<String, Roaring64NavigableMap> tagsByName = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Whether the index holds all the Tags in the DB, i.e. its last build succeeded
+     */
+    private volatile boolean warm = false;
+
+    /**
+     * This method builds the index at startup, and builds it again periodically until a build succeeds,
+     * according to the "taskmanager.index.tasks.retry-interval" property.
+     */
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${taskmanager.index.tasks.retry-interval}")
+    public void warmUp() {
+        if (this.warm)
+            return;
+        try {
+            this.rebuild();
+        } catch (DataAccessException | TransactionException e) {
+            // the index stays cold until the next attempt
+        }
+    }
+
+    /**
+     * This method builds the index from the Tags and their assignments in the DB.
+     */
+    public void rebuild() {
+        TransactionTemplate transaction = new TransactionTemplate(this.transactionManager);
+        transaction.setReadOnly(true);
+        this.lock.writeLock().lock();
+        try {
+            this.warm = false;
+            this.tasksByTag.clear();
+            this.tagsByTask.clear();
+            this.tagsByProject.clear();
+            this.nameByTag.clear();
+            this.tagsByName.clear();
+            transaction.executeWithoutResult(status -> {
+                try (Stream<Object[]> tags = this.tagRepository.streamAllNames()) {
+                    tags.forEach(row -> this.putTag((Long) row[0], (String) row[1], (Long) row[2]));
+                }
+                try (Stream<Object[]> assignments = this.tagRepository.streamAllAssignments()) {
+                    assignments.forEach(row -> this.putAssignment((Long) row[0], (Long) row[1]));
+                }
+            });
+            this.tasksByTag.values().forEach(Roaring64NavigableMap::runOptimize);
+            this.warm = true;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    // QUERIES
+
+    /**
+     * @return true if the index holds all the Tags in the DB, false if it has not been built yet
+     */
+    public boolean isWarm() {
+        return this.warm;
+    }
+
+    /**
+     * @return a new bitmap with the ids of the Tags with the passed name, ignoring case
+     */
+    public Roaring64NavigableMap tagsNamed(String name) {
+        this.lock.readLock().lock();
+        try {
+            Roaring64NavigableMap tags = new Roaring64NavigableMap();
+            Roaring64NavigableMap named = this.tagsByName.get(normalize(name));
+            if (named != null)
+                tags.or(named);
+            return tags;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This method finds the Tasks, among the passed ones, that satisfy a tag filter.
+     * Each element of the filter lists is a set of Tag ids, and a Task satisfies it if it has any of them.
+     * @param scope the ids of the Tasks to filter
+     * @param allOf the sets of Tags a Task must have every one of
+     * @param noneOf the sets of Tags a Task must have none of
+     * @return a new bitmap with the ids of the Tasks in the scope satisfying the filter
+     */
+    public Roaring64NavigableMap filter(Roaring64NavigableMap scope, List<Roaring64NavigableMap> allOf,
+                                        List<Roaring64NavigableMap> noneOf) {
+        Roaring64NavigableMap result = new Roaring64NavigableMap();
+        result.or(scope);
+        this.lock.readLock().lock();
+        try {
+            for (Roaring64NavigableMap tags : allOf) {
+                if (result.isEmpty())
+                    return result;
+                result.and(this.tasksOfAny(tags));
+            }
+            for (Roaring64NavigableMap tags : noneOf) {
+                if (result.isEmpty())
+                    return result;
+                result.andNot(this.tasksOfAny(tags));
+            }
+            return result;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    // UPDATES: all of them are applied once the current transaction commits
+
+    /**
+     * Register a new Tag of a Project.
+     */
+    public void tagCreated(long tagId, String name, long projectId) {
+        AfterCommit.run(() -> this.write(() -> this.putTag(tagId, name, projectId)));
+    }
+
+    /**
+     * Register that a Tag has been assigned to a Task.
+     */
+    public void tagAssigned(long taskId, long tagId) {
+        AfterCommit.run(() -> this.write(() -> this.putAssignment(taskId, tagId)));
+    }
+
+    /**
+     * Register that a Tag has been assigned to a set of Tasks.
+     */
+    public void tagAssigned(Roaring64NavigableMap taskIds, long tagId) {
+        AfterCommit.run(() -> this.write(() -> taskIds.forEach(taskId -> this.putAssignment(taskId, tagId))));
+    }
+
+    /**
+     * Replace the Tags assigned to a Task.
+     */
+    public void tagsSet(long taskId, long[] tagIds) {
+        AfterCommit.run(() -> this.write(() -> {
+            this.removeTask(taskId);
+            for (long tagId : tagIds)
+                this.putAssignment(taskId, tagId);
+        }));
+    }
+
+    /**
+     * Forget a deleted Task.
+     */
+    public void taskRemoved(long taskId) {
+        AfterCommit.run(() -> this.write(() -> this.removeTask(taskId)));
+    }
+
+    /**
+     * Forget a set of deleted Tasks.
+     */
+    public void tasksRemoved(Roaring64NavigableMap taskIds) {
+        AfterCommit.run(() -> this.write(() -> taskIds.forEach(this::removeTask)));
+    }
+
+    /**
+     * Forget a deleted Project: its Tasks and its Tags.
+     */
+    public void projectRemoved(long projectId, Roaring64NavigableMap taskIds) {
+        AfterCommit.run(() -> this.write(() -> {
+            taskIds.forEach(this::removeTask);
+            Roaring64NavigableMap tags = this.tagsByProject.remove(projectId);
+            if (tags != null)
+                tags.forEach(this::removeTag);
+        }));
+    }
+
+    // HELPERS: callers must hold the lock
+
+    private Roaring64NavigableMap tasksOfAny(Roaring64NavigableMap tagIds) {
+        Roaring64NavigableMap tasks = new Roaring64NavigableMap();
+        tagIds.forEach(tagId -> {
+            Roaring64NavigableMap tagTasks = this.tasksByTag.get(tagId);
+            if (tagTasks != null)
+                tasks.or(tagTasks);
+        });
+        return tasks;
+    }
+
+    private void write(Runnable update) {
+        this.lock.writeLock().lock();
+        try {
+            update.run();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void putTag(long tagId, String name, long projectId) {
+        this.nameByTag.put(tagId, normalize(name));
+        this.tagsByName.computeIfAbsent(normalize(name), n -> new Roaring64NavigableMap()).addLong(tagId);
+        this.tagsByProject.computeIfAbsent(projectId, id -> new Roaring64NavigableMap()).addLong(tagId);
+    }
+
+    private void putAssignment(long taskId, long tagId) {
+        long[] tags = this.tagsByTask.getOrDefault(taskId, NO_TAGS);
+        for (long tag : tags)
+            if (tag == tagId)
+                return;
+        long[] updated = Arrays.copyOf(tags, tags.length + 1);
+        updated[tags.length] = tagId;
+        this.tagsByTask.put(taskId, updated);
+        this.tasksByTag.computeIfAbsent(tagId, id -> new Roaring64NavigableMap()).addLong(taskId);
+    }
+
+    private void removeTask(long taskId) {
+        long[] tags = this.tagsByTask.remove(taskId);
+        if (tags == null)
+            return;
+        for (long tagId : tags) {
+            Roaring64NavigableMap tasks = this.tasksByTag.get(tagId);
+            if (tasks != null) {
+                tasks.removeLong(taskId);
+                if (tasks.isEmpty())
+                    this.tasksByTag.remove(tagId);
+            }
+        }
+    }
+
+    private void removeTag(long tagId) {
+        this.tasksByTag.remove(tagId);
+        String name = this.nameByTag.remove(tagId);
+        Roaring64NavigableMap named = name == null ? null : this.tagsByName.get(name);
+        if (named != null) {
+            named.removeLong(tagId);
+            if (named.isEmpty())
+                this.tagsByName.remove(name);
+        }
+    }
+
+    private static String normalize(String name) {
+        return name == null ? "" : name.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,300 @@
+package it.uniroma3.siw.taskmanager.index;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import it.uniroma3.siw.taskmanager.repository.CommentRepository;
+import it.uniroma3.siw.taskmanager.repository.TaskRepository;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntSupplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * The TaskTextIndex is an in-memory inverted index over the name, the description and the comments of the Tasks.
+ * Text is split into lower-case terms, and each term points to a compressed bitmap (posting list) of Task ids.
+ * For every Task the index also remembers its terms, so that they can be removed when the Task changes.
+ * If it cannot be built at startup, it stays cold and the build is retried periodically.
+ */
+@Component
+public class TaskTextIndex implements MeterBinder {
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int MIN_TERM_LENGTH = 2;
+    private static final int MAX_TERM_LENGTH = 40;
+    private static final String[] NO_TERMS = new String[0];
+
+    @Autowired
+    protected TaskRepository taskRepository;
+
+    @Autowired
+    protected CommentRepository commentRepository;
+
+    @Autowired
+    protected PlatformTransactionManager transactionManager;
+
+    /**
+     * Posting lists, sorted by term so that query terms can match as prefixes
+     */
+    private final NavigableMap<String, Roaring64NavigableMap> postings = new TreeMap<>();
+
+    /**
+     * Terms of the name and the description of each Task
+     */
+    private final Map<Long, String[]> textTerms = new HashMap<>();
+
+    /**
+     * Terms of the comments of each Task
+     */
+    private final Map<Long, String[]> commentTerms = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Whether the index holds all the Tasks in the DB, i.e. its last build succeeded
+     */
+    private volatile boolean warm = false;
+
+    /**
+     * This method builds the index at startup, and builds it again periodically until a build succeeds,
+     * according to the "taskmanager.index.tasks.retry-interval" property.
+     */
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${taskmanager.index.tasks.retry-interval}")
+    public void warmUp() {
+        if (this.warm)
+            return;
+        try {
+            this.rebuild();
+        } catch (DataAccessException | TransactionException e) {
+            // the index stays cold until the next attempt
+        }
+    }
+
+    /**
+     * This method builds the index from the Tasks and the comments in the DB.
+     */
+    public void rebuild() {
+        TransactionTemplate transaction = new TransactionTemplate(this.transactionManager);
+        transaction.setReadOnly(true);
+        this.lock.writeLock().lock();
+        try {
+            this.warm = false;
+            this.postings.clear();
+            this.textTerms.clear();
+            this.commentTerms.clear();
+            transaction.executeWithoutResult(status -> {
+                try (Stream<Object[]> texts = this.taskRepository.streamAllTexts()) {
+                    texts.forEach(row -> this.putText((Long) row[0], (String) row[1], (String) row[2]));
+                }
+                try (Stream<Object[]> comments = this.commentRepository.streamAllTexts()) {
+                    comments.forEach(row -> this.putComment((Long) row[0], (String) row[1]));
+                }
+            });
+            this.postings.values().forEach(Roaring64NavigableMap::runOptimize);
+            this.warm = true;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true if the index holds all the Tasks in the DB, false if it has not been built yet
+     */
+    public boolean isWarm() {
+        return this.warm;
+    }
+
+    /**
+     * This method finds the Tasks matching all the terms of a query.
+     * Each query term matches any indexed term it is a prefix of.
+     * @param query the query text
+     * @return a new bitmap with the ids of the matching Tasks (empty if the query has no terms)
+     */
+    public Roaring64NavigableMap search(String query) {
+        String[] queryTerms = tokenize(query);
+        Roaring64NavigableMap result = new Roaring64NavigableMap();
+        if (queryTerms.length == 0)
+            return result;
+        this.lock.readLock().lock();
+        try {
+            for (int i = 0; i < queryTerms.length; i++) {
+                Roaring64NavigableMap matches = new Roaring64NavigableMap();
+                for (Roaring64NavigableMap posting : this.postings.subMap(queryTerms[i], true,
+                        queryTerms[i] + Character.MAX_VALUE, false).values())
+                    matches.or(posting);
+                if (i == 0)
+                    result.or(matches);
+                else
+                    result.and(matches);
+                if (result.isEmpty())
+                    break;
+            }
+            return result;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    // UPDATES: all of them are applied once the current transaction commits
+
+    /**
+     * Index (again) the name and the description of a Task; its comments are left untouched.
+     */
+    public void taskSaved(long taskId, String name, String description) {
+        AfterCommit.run(() -> this.write(() -> this.putText(taskId, name, description)));
+    }
+
+    /**
+     * Index a new comment of a Task.
+     */
+    public void commentAdded(long taskId, String comment) {
+        AfterCommit.run(() -> this.write(() -> this.putComment(taskId, comment)));
+    }
+
+    /**
+     * Forget a deleted Task.
+     */
+    public void taskRemoved(long taskId) {
+        AfterCommit.run(() -> this.write(() -> this.removeTask(taskId)));
+    }
+
+    /**
+     * Forget a set of deleted Tasks, e.g. the ones of a deleted Project.
+     */
+    public void tasksRemoved(Roaring64NavigableMap taskIds) {
+        AfterCommit.run(() -> this.write(() -> taskIds.forEach(this::removeTask)));
+    }
+
+    // METRICS
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("taskmanager.index.text.terms", this, index -> index.read(index.postings::size))
+                .description("Number of distinct terms in the task text index")
+                .register(registry);
+        Gauge.builder("taskmanager.index.text.tasks", this, index -> index.read(index.textTerms::size))
+                .description("Number of tasks in the task text index")
+                .register(registry);
+    }
+
+    /**
+     * This method splits a text into distinct, lower-case terms.
+     * @param text the text to split, possibly null
+     * @return the terms of the text
+     */
+    public static String[] tokenize(String text) {
+        if (text == null || text.isEmpty())
+            return NO_TERMS;
+        Set<String> terms = new LinkedHashSet<>();
+        for (String token : SEPARATORS.split(text.toLowerCase(Locale.ROOT)))
+            if (token.length() >= MIN_TERM_LENGTH)
+                terms.add(token.length() > MAX_TERM_LENGTH ? token.substring(0, MAX_TERM_LENGTH) : token);
+        return terms.toArray(NO_TERMS);
+    }
+
+    // HELPERS: callers must hold the write lock
+
+    private int read(IntSupplier supplier) {
+        this.lock.readLock().lock();
+        try {
+            return supplier.getAsInt();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    private void write(Runnable update) {
+        this.lock.writeLock().lock();
+        try {
+            update.run();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void putText(long taskId, String name, String description) {
+        String[] previous = this.textTerms.remove(taskId);
+        if (previous != null)
+            this.unpost(taskId, previous, this.commentTerms.get(taskId));
+        String[] terms = merge(tokenize(name), tokenize(description));
+        this.textTerms.put(taskId, this.post(taskId, terms));
+    }
+
+    private void putComment(long taskId, String comment) {
+        String[] terms = merge(this.commentTerms.getOrDefault(taskId, NO_TERMS), tokenize(comment));
+        this.commentTerms.put(taskId, this.post(taskId, terms));
+    }
+
+    private void removeTask(long taskId) {
+        String[] text = this.textTerms.remove(taskId);
+        String[] comments = this.commentTerms.remove(taskId);
+        if (text != null)
+            this.unpost(taskId, text, null);
+        if (comments != null)
+            this.unpost(taskId, comments, null);
+    }
+
+    /**
+     * Add the Task to the posting list of each term; return the terms replaced by the instances used as keys,
+     * so that each distinct term is stored only once.
+     */
+    private String[] post(long taskId, String[] terms) {
+        for (int i = 0; i < terms.length; i++) {
+            Map.Entry<String, Roaring64NavigableMap> entry = this.postings.ceilingEntry(terms[i]);
+            if (entry != null && entry.getKey().equals(terms[i])) {
+                terms[i] = entry.getKey();
+                entry.getValue().addLong(taskId);
+            } else {
+                Roaring64NavigableMap posting = new Roaring64NavigableMap();
+                posting.addLong(taskId);
+                this.postings.put(terms[i], posting);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Remove the Task from the posting list of each term, except the terms it still has elsewhere.
+     */
+    private void unpost(long taskId, String[] terms, String[] keptTerms) {
+        Set<String> kept = keptTerms == null ? Set.of() : Set.of(keptTerms);
+        for (String term : terms) {
+            if (kept.contains(term))
+                continue;
+            Roaring64NavigableMap posting = this.postings.get(term);
+            if (posting != null) {
+                posting.removeLong(taskId);
+                if (posting.isEmpty())
+                    this.postings.remove(term);
+            }
+        }
+    }
+
+    private static String[] merge(String[] first, String[] second) {
+        if (second.length == 0)
+            return first;
+        Set<String> terms = new LinkedHashSet<>(Arrays.asList(first));
+        terms.addAll(Arrays.asList(second));
+        return terms.toArray(NO_TERMS);
+    }
+}
@@ -0,0 +1,120 @@
+package it.uniroma3.siw.taskmanager.model;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A Comment is a message a User leaves on a Task.
+ * Comments are append-only: each one is a row of its own, so adding a Comment never rewrites the others,
+ * and they are always read one page at a time, newest first.
+ */
+@Entity
+public class Comment {
+
+    public static final int TEXT_MAX_LENGTH = 1000;
+
+    /**
+     * Unique identifier for this Comment
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private Long id;
+
+    /**
+     * Task this Comment refers to; the Comment is deleted together with it
+     */
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "task_id", nullable = false, updatable = false)
+    private Task task;
+
+    /**
+     * User who wrote this Comment, or null if they have been deleted
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "author_id", updatable = false)
+    private User author;
+
+    /**
+     * Text of this Comment
+     */
+    @Column(nullable = false, length = TEXT_MAX_LENGTH)
+    private String text;
+
+    /**
+     * Timestamp for the instant this Comment was created
+     */
+    @Column(name = "creation_timestamp", updatable = false, nullable = false)
+    private LocalDateTime creationTimestamp;
+
+    //CONSTRUCTORS
+
+    public Comment() {
+    }
+
+    public Comment(Task task, User author, String text) {
+        this();
+        this.task = task;
+        this.author = author;
+        this.text = text;
+    }
+
+    /**
+     * This method initializes the creationTimestamp of this Comment to the current instant.
+     * This method is called automatically just before the Comment is persisted thanks to the @PrePersist annotation.
+     */
+    @PrePersist
+    protected void onPersist() {
+        this.creationTimestamp = LocalDateTime.now();
+    }
+
+    // GETTERS AND SETTERS
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Task getTask() {
+        return task;
+    }
+
+    public void setTask(Task task) {
+        this.task = task;
+    }
+
+    public User getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(User author) {
+        this.author = author;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public LocalDateTime getCreationTimestamp() {
+        return creationTimestamp;
+    }
+
+    public void setCreationTimestamp(LocalDateTime creationTimestamp) {
+        this.creationTimestamp = creationTimestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "Comment{" +
+                "id=" + id +
+                ", text='" + text + '\'' +
+                ", creationTimestamp=" + creationTimestamp +
+                '}';
+    }
+}
@@ -1,5 +1,8 @@
 package it.uniroma3.siw.taskmanager.model;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -11,8 +14,17 @@ import java.util.Objects;
  * It can contain one or multiple individual Tasks.
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "project")
+@NamedEntityGraphs({
+        // sharing: the project together with the users it is already shared with
+        @NamedEntityGraph(name = Project.MEMBERS_GRAPH,
+                attributeNodes = { @NamedAttributeNode("owner"), @NamedAttributeNode("members") })
+})
 public class Project {
 
+    public static final String MEMBERS_GRAPH = "Project.members";
+
     /**
      * Unique identifier for this Project
      */
@@ -20,6 +32,12 @@ public class Project {
     @GeneratedValue(strategy = GenerationType.AUTO)
     private Long id;
 
+    /**
+     * Version of this Project, checked on every update to detect concurrent changes
+     */
+    @Version
+    private Long version;
+
     /**
      * Name for this Project
      */
@@ -42,21 +60,26 @@ public class Project {
      * Name for this Project
      */
     @ManyToMany(fetch = FetchType.LAZY)                                // fetch is LAZY by default
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "project-members")
     private List<User> members;
 
     /**
-     * Tasks that this project contains
+     * Tasks that this project contains.
+     * The Task owns the association: new Tasks are added by setting their project, never through this list
      */
-    @OneToMany(fetch = FetchType.EAGER,        // whenever a Project is retrieved, always retrieve its tasks too
-            cascade = CascadeType.ALL)   
-    @JoinColumn(name="project_id")
+    @OneToMany(fetch = FetchType.LAZY,         // tasks are only retrieved by the views that need them
+            cascade = CascadeType.ALL,
+            mappedBy = "project")
     private List<Task> tasks;
     
     /**
-     * Tags related to this project
+     * Tags related to this project.
+     * The Tag owns the association: new Tags are added by setting their project, never through this list,
+     * and the cached list of a Project is evicted whenever one of its Tags is created or deleted
      */
-    @OneToMany(cascade = CascadeType.ALL)
-    @JoinColumn(name="project_id")
+    @OneToMany(cascade = CascadeType.ALL,
+            mappedBy = "project")
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "project-tags")
     private List<Tag> tags;
 
     //CONSTRUCTORS
@@ -89,6 +112,14 @@ public class Project {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public String getName() {
         return name;
     }
@@ -144,7 +175,6 @@ public class Project {
                 "id=" + id +
                 ", name='" + name + '\'' +
                 ", description='" + description + '\'' +
-                ", tasks=" + tasks +
                 '}';
     }
 
@@ -0,0 +1,98 @@
+package it.uniroma3.siw.taskmanager.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * ProjectCounters are the materialized Task counts of a Project.
+ * They live in their own table, one row per Project, so that the Project listings and views can show them
+ * without scanning the Tasks, and so that incrementing them never touches the Project row itself.
+ * They are kept up to date by the ProjectCountersService and periodically reconciled with the Tasks.
+ */
+@Entity
+@Table(name = "project_counters")
+public class ProjectCounters {
+
+    /**
+     * Identifier of the Project these counters refer to
+     */
+    @Id
+    @Column(name = "project_id")
+    private Long projectId;
+
+    /**
+     * Number of Tasks in the Project
+     */
+    @Column(nullable = false)
+    private long taskCount;
+
+    /**
+     * Number of completed Tasks in the Project
+     */
+    @Column(nullable = false)
+    private long completedTaskCount;
+
+    /**
+     * Number of Tasks in the Project that are assigned to a User
+     */
+    @Column(nullable = false)
+    private long assignedTaskCount;
+
+    public ProjectCounters() {
+    }
+
+    public ProjectCounters(Long projectId) {
+        this();
+        this.projectId = projectId;
+    }
+
+    // GETTERS AND SETTERS
+
+    public Long getProjectId() {
+        return projectId;
+    }
+
+    public void setProjectId(Long projectId) {
+        this.projectId = projectId;
+    }
+
+    public long getTaskCount() {
+        return taskCount;
+    }
+
+    public void setTaskCount(long taskCount) {
+        this.taskCount = taskCount;
+    }
+
+    public long getCompletedTaskCount() {
+        return completedTaskCount;
+    }
+
+    public void setCompletedTaskCount(long completedTaskCount) {
+        this.completedTaskCount = completedTaskCount;
+    }
+
+    public long getAssignedTaskCount() {
+        return assignedTaskCount;
+    }
+
+    public void setAssignedTaskCount(long assignedTaskCount) {
+        this.assignedTaskCount = assignedTaskCount;
+    }
+
+    public long getUnassignedTaskCount() {
+        return taskCount - assignedTaskCount;
+    }
+
+    @Override
+    public String toString() {
+        return "ProjectCounters{" +
+                "projectId=" + projectId +
+                ", taskCount=" + taskCount +
+                ", completedTaskCount=" + completedTaskCount +
+                ", assignedTaskCount=" + assignedTaskCount +
+                '}';
+    }
+}
@@ -0,0 +1,76 @@
+package it.uniroma3.siw.taskmanager.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * A RevokedUser is a User whose signed session tokens must be refused, because they have been deleted
+ * or have changed their password while tokens obtained with the old one may still be circulating.
+ * The tokens of the logins before the revocation are refused until they have all expired,
+ * and then the RevokedUser can be forgotten.
+ *
+ * @see it.uniroma3.siw.taskmanager.authentication.TokenRevocationList
+ */
+@Entity
+@Table(name = "revoked_user")
+public class RevokedUser {
+
+    /**
+     * Id of the User (ids are never reused)
+     */
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    /**
+     * Instant of the revocation: the tokens of the logins before it are refused
+     */
+    @Column(name = "not_before", nullable = false)
+    private LocalDateTime notBefore;
+
+    /**
+     * Instant after which no token of a login before the revocation can still be valid
+     */
+    @Column(name = "revoked_until", nullable = false)
+    private LocalDateTime revokedUntil;
+
+    //CONSTRUCTORS
+
+    public RevokedUser() {
+    }
+
+    public RevokedUser(Long userId, LocalDateTime notBefore, LocalDateTime revokedUntil) {
+        this.userId = userId;
+        this.notBefore = notBefore;
+        this.revokedUntil = revokedUntil;
+    }
+
+    // GETTERS AND SETTERS
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public LocalDateTime getNotBefore() {
+        return notBefore;
+    }
+
+    public void setNotBefore(LocalDateTime notBefore) {
+        this.notBefore = notBefore;
+    }
+
+    public LocalDateTime getRevokedUntil() {
+        return revokedUntil;
+    }
+
+    public void setRevokedUntil(LocalDateTime revokedUntil) {
+        this.revokedUntil = revokedUntil;
+    }
+}
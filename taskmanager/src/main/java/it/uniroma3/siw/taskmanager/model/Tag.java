@@ -1,12 +1,21 @@
 package it.uniroma3.siw.taskmanager.model;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "tag")
 public class Tag {
 	
 	
@@ -35,6 +44,13 @@ public class Tag {
     @Column(length = 1000)
     private String description;
     
+    /**
+     * Project this Tag belongs to; it is set when the Tag is created and never changes
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "project_id", updatable = false)
+    private Project project;
+    
     
     //CONSTRUCTORS
     
@@ -81,6 +97,14 @@ public class Tag {
 		this.description = description;
 	}
 
+	public Project getProject() {
+		return project;
+	}
+
+	public void setProject(Project project) {
+		this.project = project;
+	}
+
 	
 	//EQUALS AND HASHCODE
 	
@@ -13,15 +13,26 @@ import java.util.Objects;
  * The Task can be marked as "completed".
  */
 @Entity
+@NamedEntityGraph(name = Task.DETAIL_GRAPH, attributeNodes = @NamedAttributeNode("tags"))
 public class Task {
 
+    public static final String DETAIL_GRAPH = "Task.detail";
+
     /**
-     * Unique identifier for this Task
+     * Unique identifier for this Task.
+     * Ids are drawn from the sequence in blocks of 50, so that many new Tasks can be inserted in JDBC batches
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "task_seq")
+    @SequenceGenerator(name = "task_seq", sequenceName = "task_seq", allocationSize = 50)
     private Long id;
 
+    /**
+     * Version of this Task, checked on every update to detect concurrent changes
+     */
+    @Version
+    private Long version;
+
     /**
      * Name for this task
      */
@@ -46,16 +57,24 @@ public class Task {
     @Column(updatable = false, nullable = false)
     private LocalDateTime creationTimestamp;
     
+    /**
+     * Project this task belongs to; it is set when the task is created and never changes
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "project_id", updatable = false)
+    private Project project;
+
     /**
      * User assigned to this task
      */
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "assigned_user_id")
     private User assignedUser;
 
     /**
      * Timestamp for the last update of this Task into the DB
      */
-    @Column(nullable = false)
+    @Column(name = "last_update_timestamp", nullable = false)
     private LocalDateTime lastUpdateTimestamp;
     
     /**
@@ -64,24 +83,16 @@ public class Task {
     @ManyToMany
     private List<Tag> tags;
     
-    
-    /**
-     * Comments on this task
-     */
-    @ElementCollection
-    @CollectionTable
-    private List<String> comments;
-    
     //CONSTRUCTORS
 
     public Task() {
     	this.tags = new ArrayList<>();
-    	this.comments = new ArrayList<String>();
     }
 
     public Task(String name,
                 String description,
                 boolean completed) {
+        this();
         this.name = name;
         this.description = description;
         this.completed = completed;
@@ -117,6 +128,14 @@ public class Task {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public String getName() {
         return name;
     }
@@ -165,6 +184,14 @@ public class Task {
 		this.assignedUser = assignedUser;
 	}
 	
+	public Project getProject() {
+		return project;
+	}
+
+	public void setProject(Project project) {
+		this.project = project;
+	}
+
 	public List<Tag> getTags() {
 		return tags;
 	}
@@ -173,14 +200,6 @@ public class Task {
 		this.tags = tags;
 	}
 
-	public List<String> getComments() {
-		return comments;
-	}
-
-	public void setComments(List<String> comments) {
-		this.comments = comments;
-	}
-	
 	//EQUALS AND HASHCODE
 
 	@Override
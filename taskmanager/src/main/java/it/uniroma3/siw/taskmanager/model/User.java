@@ -1,5 +1,8 @@
 package it.uniroma3.siw.taskmanager.model;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -13,6 +16,8 @@ import java.util.Objects;
  * e.g. Projects, Tasks, ecc.
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "user")
 @Table(name = "users")
 public class User {
 
@@ -23,6 +28,12 @@ public class User {
     @GeneratedValue(strategy = GenerationType.AUTO)
     private Long id;
 
+    /**
+     * Version of this User, checked on every update to detect concurrent changes
+     */
+    @Version
+    private Long version;
+
     /**
      * The first name of this User
      */
@@ -107,6 +118,14 @@ public class User {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public String getFirstName() {
         return firstName;
     }
@@ -0,0 +1,88 @@
+package it.uniroma3.siw.taskmanager.model.view;
+
+import java.time.LocalDateTime;
+
+/**
+ * An AssignedTask is a read-only view of a Task, as shown in the inbox of the User it is assigned to.
+ * It carries the name of the Project of the Task, so that neither Task nor Project entities
+ * have to be loaded into the persistence context to render the inbox.
+ */
+public class AssignedTask {
+
+    /**
+     * Unique identifier of the Task
+     */
+    private final Long id;
+
+    /**
+     * Name of the Task
+     */
+    private final String name;
+
+    /**
+     * Whether the Task is completed or not
+     */
+    private final boolean completed;
+
+    /**
+     * Timestamp of the last update of the Task, the sort key of the inbox
+     */
+    private final LocalDateTime lastUpdateTimestamp;
+
+    /**
+     * Unique identifier of the Project of the Task
+     */
+    private final Long projectId;
+
+    /**
+     * Name of the Project of the Task
+     */
+    private final String projectName;
+
+    public AssignedTask(Long id, String name, boolean completed, LocalDateTime lastUpdateTimestamp,
+                        Long projectId, String projectName) {
+        this.id = id;
+        this.name = name;
+        this.completed = completed;
+        this.lastUpdateTimestamp = lastUpdateTimestamp;
+        this.projectId = projectId;
+        this.projectName = projectName;
+    }
+
+    // GETTERS
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public LocalDateTime getLastUpdateTimestamp() {
+        return lastUpdateTimestamp;
+    }
+
+    public Long getProjectId() {
+        return projectId;
+    }
+
+    public String getProjectName() {
+        return projectName;
+    }
+
+    @Override
+    public String toString() {
+        return "AssignedTask{" +
+                "id=" + id +
+                ", name='" + name + '\'' +
+                ", completed=" + completed +
+                ", lastUpdateTimestamp=" + lastUpdateTimestamp +
+                ", projectId=" + projectId +
+                '}';
+    }
+}
@@ -0,0 +1,67 @@
+package it.uniroma3.siw.taskmanager.model.view;
+
+import java.time.LocalDateTime;
+
+/**
+ * A CommentView is a read-only view of a Comment, as shown in the task view.
+ * It carries the name of the author, so that neither Comment nor User entities
+ * have to be loaded into the persistence context to render the comments.
+ */
+public class CommentView {
+
+    /**
+     * Unique identifier of the Comment
+     */
+    private final Long id;
+
+    /**
+     * Text of the Comment
+     */
+    private final String text;
+
+    /**
+     * Timestamp of the creation of the Comment, the sort key of the comments of a Task
+     */
+    private final LocalDateTime creationTimestamp;
+
+    /**
+     * Full name of the author of the Comment, or null if they have been deleted
+     */
+    private final String authorName;
+
+    public CommentView(Long id, String text, LocalDateTime creationTimestamp, String authorFirstName,
+                       String authorLastName) {
+        this.id = id;
+        this.text = text;
+        this.creationTimestamp = creationTimestamp;
+        this.authorName = authorFirstName == null ? null : authorFirstName + " " + authorLastName;
+    }
+
+    // GETTERS
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public LocalDateTime getCreationTimestamp() {
+        return creationTimestamp;
+    }
+
+    public String getAuthorName() {
+        return authorName;
+    }
+
+    @Override
+    public String toString() {
+        return "CommentView{" +
+                "id=" + id +
+                ", text='" + text + '\'' +
+                ", creationTimestamp=" + creationTimestamp +
+                ", authorName='" + authorName + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,73 @@
+package it.uniroma3.siw.taskmanager.model.view;
+
+/**
+ * A CredentialsSummary is a read-only view of Credentials and of their User, as shown in the list of all users.
+ * It is mapped straight from a JDBC row, so that neither Credentials nor User entities
+ * have to be loaded into the persistence context to render the list; it carries no password.
+ */
+public class CredentialsSummary {
+
+    /**
+     * Unique identifier of the Credentials
+     */
+    private final Long id;
+
+    /**
+     * Username of the Credentials
+     */
+    private final String userName;
+
+    /**
+     * Role of the Credentials
+     */
+    private final String role;
+
+    /**
+     * First name of the User of the Credentials
+     */
+    private final String firstName;
+
+    /**
+     * Last name of the User of the Credentials
+     */
+    private final String lastName;
+
+    public CredentialsSummary(Long id, String userName, String role, String firstName, String lastName) {
+        this.id = id;
+        this.userName = userName;
+        this.role = role;
+        this.firstName = firstName;
+        this.lastName = lastName;
+    }
+
+    // GETTERS
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    @Override
+    public String toString() {
+        return "CredentialsSummary{" +
+                "id=" + id +
+                ", userName='" + userName + '\'' +
+                ", role='" + role + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,119 @@
+package it.uniroma3.siw.taskmanager.model.view;
+
+import java.time.LocalDateTime;
+
+/**
+ * An ExportedTask is a read-only view of a Task, as written to an export file.
+ * It carries the name of the Project of the Task and the name of the User it is assigned to,
+ * and it is mapped straight from a JDBC row, so that exporting any number of Tasks
+ * loads no entity into the persistence context.
+ */
+public class ExportedTask {
+
+    /**
+     * Unique identifier of the Project of the Task
+     */
+    private final Long projectId;
+
+    /**
+     * Name of the Project of the Task
+     */
+    private final String projectName;
+
+    /**
+     * Unique identifier of the Task
+     */
+    private final Long id;
+
+    /**
+     * Name of the Task
+     */
+    private final String name;
+
+    /**
+     * Description of the Task
+     */
+    private final String description;
+
+    /**
+     * Whether the Task is completed or not
+     */
+    private final boolean completed;
+
+    /**
+     * Full name of the User the Task is assigned to, or null if it is not assigned
+     */
+    private final String assignedUserName;
+
+    /**
+     * Timestamp of the creation of the Task
+     */
+    private final LocalDateTime creationTimestamp;
+
+    /**
+     * Timestamp of the last update of the Task
+     */
+    private final LocalDateTime lastUpdateTimestamp;
+
+    public ExportedTask(Long projectId, String projectName, Long id, String name, String description, boolean completed,
+                        String assignedUserFirstName, String assignedUserLastName,
+                        LocalDateTime creationTimestamp, LocalDateTime lastUpdateTimestamp) {
+        this.projectId = projectId;
+        this.projectName = projectName;
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.completed = completed;
+        this.assignedUserName = assignedUserFirstName == null ? null : assignedUserFirstName + " " + assignedUserLastName;
+        this.creationTimestamp = creationTimestamp;
+        this.lastUpdateTimestamp = lastUpdateTimestamp;
+    }
+
+    // GETTERS
+
+    public Long getProjectId() {
+        return projectId;
+    }
+
+    public String getProjectName() {
+        return projectName;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public String getAssignedUserName() {
+        return assignedUserName;
+    }
+
+    public LocalDateTime getCreationTimestamp() {
+        return creationTimestamp;
+    }
+
+    public LocalDateTime getLastUpdateTimestamp() {
+        return lastUpdateTimestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "ExportedTask{" +
+                "projectId=" + projectId +
+                ", id=" + id +
+                ", name='" + name + '\'' +
+                ", completed=" + completed +
+                '}';
+    }
+}
@@ -0,0 +1,90 @@
+package it.uniroma3.siw.taskmanager.model.view;
+
+/**
+ * A ProjectSummary is a read-only view of a Project, as shown in the project listings.
+ * It only carries the data the listings display, so that no Project or Task entity
+ * has to be loaded into the persistence context to render them.
+ */
+public class ProjectSummary {
+
+    /**
+     * Unique identifier of the summarized Project
+     */
+    private final Long id;
+
+    /**
+     * Name of the summarized Project
+     */
+    private final String name;
+
+    /**
+     * Description of the summarized Project
+     */
+    private final String description;
+
+    /**
+     * Number of Tasks in the summarized Project
+     */
+    private final long taskCount;
+
+    /**
+     * Number of completed Tasks in the summarized Project
+     */
+    private final long completedTaskCount;
+
+    /**
+     * Number of Tasks in the summarized Project that are assigned to a User
+     */
+    private final long assignedTaskCount;
+
+    /**
+     * Counts are received as Numbers, and may be null, because they are read from
+     * the ProjectCounters through an outer join.
+     */
+    public ProjectSummary(Long id, String name, String description, Number taskCount, Number completedTaskCount,
+                          Number assignedTaskCount) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.taskCount = taskCount == null ? 0 : taskCount.longValue();
+        this.completedTaskCount = completedTaskCount == null ? 0 : completedTaskCount.longValue();
+        this.assignedTaskCount = assignedTaskCount == null ? 0 : assignedTaskCount.longValue();
+    }
+
+    // GETTERS
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public long getTaskCount() {
+        return taskCount;
+    }
+
+    public long getCompletedTaskCount() {
+        return completedTaskCount;
+    }
+
+    public long getAssignedTaskCount() {
+        return assignedTaskCount;
+    }
+
+    @Override
+    public String toString() {
+        return "ProjectSummary{" +
+                "id=" + id +
+                ", name='" + name + '\'' +
+                ", taskCount=" + taskCount +
+                ", completedTaskCount=" + completedTaskCount +
+                ", assignedTaskCount=" + assignedTaskCount +
+                '}';
+    }
+}
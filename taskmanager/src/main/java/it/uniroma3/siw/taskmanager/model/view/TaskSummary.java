@@ -0,0 +1,63 @@
+package it.uniroma3.siw.taskmanager.model.view;
+
+/**
+ * A TaskSummary is a read-only view of a Task, as shown in the task list of its Project.
+ * It is mapped straight from a JDBC row, so that listing the Tasks of a big Project
+ * loads no Task entity, nor any snapshot of it, into the persistence context.
+ */
+public class TaskSummary {
+
+    /**
+     * Unique identifier of the Task
+     */
+    private final Long id;
+
+    /**
+     * Name of the Task
+     */
+    private final String name;
+
+    /**
+     * Description of the Task
+     */
+    private final String description;
+
+    /**
+     * Whether the Task is completed or not
+     */
+    private final boolean completed;
+
+    public TaskSummary(Long id, String name, String description, boolean completed) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.completed = completed;
+    }
+
+    // GETTERS
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    @Override
+    public String toString() {
+        return "TaskSummary{" +
+                "id=" + id +
+                ", name='" + name + '\'' +
+                ", completed=" + completed +
+                '}';
+    }
+}
@@ -0,0 +1,62 @@
+package it.uniroma3.siw.taskmanager.repository;
+
+import it.uniroma3.siw.taskmanager.model.Comment;
+import it.uniroma3.siw.taskmanager.model.view.CommentView;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * This interface is a CrudRepository for repository operations on Comments.
+ *
+ * @see Comment
+ */
+public interface CommentRepository extends CrudRepository<Comment, Long> {
+
+    /**
+     * Retrieve a keyset page of the Comments of a Task, from the newest,
+     * i.e. the ones following the passed (creation, id) position in that order.
+     * @param taskId the id of the Task
+     * @param beforeTimestamp the creation timestamp of the last Comment of the previous page
+     * @param beforeId the id of the last Comment of the previous page
+     * @param pageable the page size to fetch (its page number is always 0)
+     * @return the List of the Comments of the Task
+     */
+    @Query("SELECT new it.uniroma3.siw.taskmanager.model.view.CommentView(c.id, c.text, c.creationTimestamp, " +
+            "a.firstName, a.lastName) " +
+            "FROM Comment c LEFT JOIN c.author a " +
+            "WHERE c.task.id = :taskId " +
+            "AND (c.creationTimestamp < :beforeTimestamp " +
+            "OR (c.creationTimestamp = :beforeTimestamp AND c.id < :beforeId)) " +
+            "ORDER BY c.creationTimestamp DESC, c.id DESC")
+    public List<CommentView> findByTaskId(@Param("taskId") Long taskId,
+                                          @Param("beforeTimestamp") LocalDateTime beforeTimestamp,
+                                          @Param("beforeId") Long beforeId, Pageable pageable);
+
+    /**
+     * Stream the text of every Comment, together with the id of its Task,
+     * fetching TaskViewsRepositoryImpl.FETCH_SIZE rows at a time
+     * @return a Stream of (task id, text) pairs
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "" + TaskViewsRepositoryImpl.FETCH_SIZE))
+    @Query("SELECT c.task.id, c.text FROM Comment c")
+    public Stream<Object[]> streamAllTexts();
+
+    /**
+     * Retrieve the Comments of a set of Tasks, grouped by Task and from the oldest, with the names of their authors
+     * @param taskIds the ids of the Tasks
+     * @return a List of (task id, comment id, text, creation timestamp, author first name, author last name) rows
+     */
+    @Query("SELECT c.task.id, c.id, c.text, c.creationTimestamp, a.firstName, a.lastName " +
+            "FROM Comment c LEFT JOIN c.author a WHERE c.task.id IN :taskIds " +
+            "ORDER BY c.task.id, c.creationTimestamp, c.id")
+    public List<Object[]> findByTaskIds(@Param("taskIds") Collection<Long> taskIds);
+}
@@ -6,13 +6,16 @@ import java.util.Optional;
 
 /**
  * This interface is a CrudRepository for repository operations on Credentials.
+ * The read of all the Credentials as a list is declared by CredentialsViewsRepository.
  *
  * @see Credentials
  */
-public interface CredentialsRepository extends CrudRepository<Credentials, Long> {
+public interface CredentialsRepository extends CrudRepository<Credentials, Long>, CredentialsViewsRepository {
 
     /**
-     * Retrieve Credentials by its username
+     * Retrieve Credentials by its username.
+     * It is not cached: the caches of Hibernate are kept by each node, and would keep accepting a changed password
+     * on the other nodes; the principals loaded from it are cached by CredentialsUserDetailsService instead.
      * @param username the username of the Credentials to retrieve
      * @return an Optional for the Credentials with the passed username
      */
@@ -0,0 +1,21 @@
+package it.uniroma3.siw.taskmanager.repository;
+
+import it.uniroma3.siw.taskmanager.model.view.CredentialsSummary;
+
+import java.util.List;
+
+/**
+ * This interface declares the reads of all the Credentials, that are written in plain SQL.
+ * They are implemented by CredentialsViewsRepositoryImpl, which maps every row straight into an immutable view:
+ * no Credentials or User entity is loaded into the persistence context, nor snapshotted for dirty checking.
+ *
+ * @see CredentialsRepository
+ */
+public interface CredentialsViewsRepository {
+
+    /**
+     * Retrieve all the Credentials with the names of their Users, by username
+     * @return the List of the summaries of the Credentials
+     */
+    public List<CredentialsSummary> findAllSummaries();
+}
@@ -0,0 +1,36 @@
+package it.uniroma3.siw.taskmanager.repository;
+
+import it.uniroma3.siw.taskmanager.model.view.CredentialsSummary;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * This class implements the reads of CredentialsViewsRepository with JDBC row mappers.
+ * The statements run on the connection of the current transaction, and they fetch FETCH_SIZE rows at a time.
+ *
+ * @see CredentialsViewsRepository
+ */
+public class CredentialsViewsRepositoryImpl implements CredentialsViewsRepository {
+
+    /**
+     * Number of rows fetched from the DB at a time
+     */
+    public static final int FETCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CredentialsViewsRepositoryImpl(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+    }
+
+    @Override
+    public List<CredentialsSummary> findAllSummaries() {
+        return this.jdbcTemplate.query("SELECT c.id, c.user_name, c.role, u.first_name, u.last_name " +
+                        "FROM credentials c LEFT JOIN users u ON u.id = c.user_id ORDER BY c.user_name",
+                (row, i) -> new CredentialsSummary(row.getLong("id"), row.getString("user_name"), row.getString("role"),
+                        row.getString("first_name"), row.getString("last_name")));
+    }
+}
@@ -0,0 +1,111 @@
+package it.uniroma3.siw.taskmanager.repository;
+
+import it.uniroma3.siw.taskmanager.model.ProjectCounters;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+/**
+ * This interface is a CrudRepository for repository operations on ProjectCounters.
+ * Counters are only changed through relative, set-based updates, so that concurrent changes never get lost.
+ *
+ * @see ProjectCounters
+ */
+public interface ProjectCountersRepository extends CrudRepository<ProjectCounters, Long> {
+
+    /**
+     * Add the passed deltas to the counters of a Project
+     * @param projectId the id of the Project
+     * @return the number of updated rows (0 if the Project has no counters yet)
+     */
+    @Modifying
+    @Query("UPDATE ProjectCounters c SET c.taskCount = c.taskCount + :tasks, " +
+            "c.completedTaskCount = c.completedTaskCount + :completed, " +
+            "c.assignedTaskCount = c.assignedTaskCount + :assigned " +
+            "WHERE c.projectId = :projectId")
+    public int adjust(@Param("projectId") Long projectId, @Param("tasks") long tasks,
+                      @Param("completed") long completed, @Param("assigned") long assigned);
+
+    /**
+     * Add the passed deltas to the counters of the Project a Task belongs to
+     * @param taskId the id of the Task
+     * @return the number of updated rows (0 if the Project has no counters yet)
+     */
+    @Modifying
+    @Query("UPDATE ProjectCounters c SET c.taskCount = c.taskCount + :tasks, " +
+            "c.completedTaskCount = c.completedTaskCount + :completed, " +
+            "c.assignedTaskCount = c.assignedTaskCount + :assigned " +
+            "WHERE c.projectId = (SELECT p.id FROM Project p JOIN p.tasks t WHERE t.id = :taskId)")
+    public int adjustForTask(@Param("taskId") Long taskId, @Param("tasks") long tasks,
+                             @Param("completed") long completed, @Param("assigned") long assigned);
+
+    /**
+     * Add the passed deltas to the counters of a Project, creating them from the deltas if they do not exist,
+     * just as if they had been all set to zero.
+     * Being a native statement, it makes Hibernate clear the whole second-level cache: it is only meant for
+     * the Projects the adjust method has found without counters.
+     * @param projectId the id of the Project
+     * @return the number of created or updated rows
+     */
+    @Modifying
+    @Query(value = "INSERT INTO project_counters (project_id, task_count, completed_task_count, assigned_task_count) " +
+            "VALUES (:projectId, :tasks, :completed, :assigned) " +
+            "ON CONFLICT (project_id) DO UPDATE SET task_count = project_counters.task_count + EXCLUDED.task_count, " +
+            "completed_task_count = project_counters.completed_task_count + EXCLUDED.completed_task_count, " +
+            "assigned_task_count = project_counters.assigned_task_count + EXCLUDED.assigned_task_count",
+            nativeQuery = true)
+    public int upsert(@Param("projectId") Long projectId, @Param("tasks") long tasks,
+                      @Param("completed") long completed, @Param("assigned") long assigned);
+
+    /**
+     * Add the passed deltas to the counters of the Project a Task belongs to, creating them from the deltas
+     * if they do not exist; like upsert, it is only meant for the Projects found without counters.
+     * @param taskId the id of the Task
+     * @return the number of created or updated rows (0 if the Task belongs to no Project)
+     */
+    @Modifying
+    @Query(value = "INSERT INTO project_counters (project_id, task_count, completed_task_count, assigned_task_count) " +
+            "SELECT t.project_id, :tasks, :completed, :assigned FROM task t " +
+            "WHERE t.id = :taskId AND t.project_id IS NOT NULL " +
+            "ON CONFLICT (project_id) DO UPDATE SET task_count = project_counters.task_count + EXCLUDED.task_count, " +
+            "completed_task_count = project_counters.completed_task_count + EXCLUDED.completed_task_count, " +
+            "assigned_task_count = project_counters.assigned_task_count + EXCLUDED.assigned_task_count",
+            nativeQuery = true)
+    public int upsertForTask(@Param("taskId") Long taskId, @Param("tasks") long tasks,
+                             @Param("completed") long completed, @Param("assigned") long assigned);
+
+    /**
+     * Delete the counters of a Project
+     * @param projectId the id of the Project
+     */
+    @Modifying
+    @Query("DELETE FROM ProjectCounters c WHERE c.projectId = :projectId")
+    public void deleteByProjectId(@Param("projectId") Long projectId);
+
+    /**
+     * Recompute the counters of every Project from its Tasks, creating the missing ones;
+     * only the rows whose values actually change are written
+     * @return the number of created or corrected rows
+     */
+    @Modifying
+    @Query(value = "INSERT INTO project_counters (project_id, task_count, completed_task_count, assigned_task_count) " +
+            "SELECT p.id, COUNT(t.id), COUNT(t.id) FILTER (WHERE t.completed), COUNT(t.assigned_user_id) " +
+            "FROM project p LEFT JOIN task t ON t.project_id = p.id GROUP BY p.id " +
+            "ON CONFLICT (project_id) DO UPDATE SET task_count = EXCLUDED.task_count, " +
+            "completed_task_count = EXCLUDED.completed_task_count, assigned_task_count = EXCLUDED.assigned_task_count " +
+            "WHERE (project_counters.task_count, project_counters.completed_task_count, project_counters.assigned_task_count) " +
+            "IS DISTINCT FROM (EXCLUDED.task_count, EXCLUDED.completed_task_count, EXCLUDED.assigned_task_count)",
+            nativeQuery = true)
+    public int recomputeAll();
+
+    /**
+     * Delete the counters left behind by Projects that no longer exist
+     * (e.g. the ones removed together with their owner)
+     * @return the number of deleted rows
+     */
+    @Modifying
+    @Query(value = "DELETE FROM project_counters c WHERE NOT EXISTS (SELECT 1 FROM project p WHERE p.id = c.project_id)",
+            nativeQuery = true)
+    public int deleteOrphans();
+}
@@ -1,9 +1,17 @@
 package it.uniroma3.siw.taskmanager.repository;
 import it.uniroma3.siw.taskmanager.model.Project;
-import it.uniroma3.siw.taskmanager.model.User;
+import it.uniroma3.siw.taskmanager.model.view.ProjectSummary;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * This interface is a CrudRepository for repository operations on Projects.
@@ -13,17 +21,100 @@ import java.util.List;
 public interface ProjectRepository extends CrudRepository<Project, Long> {
 
     /**
-     * Retrieve all Projects that are visible by the passed user
-     * @param member the User to retrieve the visible projects of
-     * @return the List of projects visible by the passed user
+     * Retrieve a Project together with its members, as needed to share it with one more User
+     * @param id the id of the Project to retrieve
+     * @return an Optional for the Project with the passed id
      */
-    public List<Project> findByMembers(User member);
+    @EntityGraph(Project.MEMBERS_GRAPH)
+    public Optional<Project> findWithMembersById(Long id);
 
     /**
-     * Retrieve all Projects that are owned by the passed user
-     * @param owner the User to retrieve the Projects of
-     * @return the List of projects owned by the passed
+     * Check whether a Project is owned by a User
+     * @param id the id of the Project
+     * @param ownerId the id of the User
+     * @return true if the Project exists and is owned by the User
      */
-    public List<Project> findByOwner(User owner);
-}
+    public boolean existsByIdAndOwnerId(Long id, Long ownerId);
+
+    /**
+     * Check whether a Project is shared with a User, looking up a single row of the members join table
+     * @param id the id of the Project
+     * @param memberId the id of the User
+     * @return true if the Project exists and is shared with the User
+     */
+    public boolean existsByIdAndMembersId(Long id, Long memberId);
+
+    /**
+     * Retrieve the ids of the Projects owned by a User
+     * @param ownerId the id of the User
+     * @return the List of the ids of the Projects, in no particular order
+     */
+    @Query("SELECT p.id FROM Project p WHERE p.owner.id = :ownerId")
+    public List<Long> findIdsByOwnerId(@Param("ownerId") Long ownerId);
+
+    /**
+     * Retrieve the ids of the Projects shared with a User, from the members join table
+     * @param memberId the id of the User
+     * @return the List of the ids of the Projects, in no particular order
+     */
+    @Query("SELECT p.id FROM Project p JOIN p.members m WHERE m.id = :memberId")
+    public List<Long> findIdsByMembersId(@Param("memberId") Long memberId);
+
+    /**
+     * Count the Projects shared with a User, from the members join table
+     * @param memberId the id of the User
+     * @return the number of Projects shared with the User
+     */
+    public long countByMembersId(Long memberId);
 
+    /**
+     * Stream the (project id, owner id) pairs of all Projects, fetching TaskViewsRepositoryImpl.FETCH_SIZE rows at a time.
+     * The stream must be consumed, and closed, within a transaction.
+     * @return a Stream of two-element arrays
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "" + TaskViewsRepositoryImpl.FETCH_SIZE))
+    @Query("SELECT p.id, p.owner.id FROM Project p")
+    public Stream<Object[]> streamAllOwnerships();
+
+    /**
+     * Stream the (project id, member id) pairs of the members join table,
+     * fetching TaskViewsRepositoryImpl.FETCH_SIZE rows at a time.
+     * The stream must be consumed, and closed, within a transaction.
+     * @return a Stream of two-element arrays
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "" + TaskViewsRepositoryImpl.FETCH_SIZE))
+    @Query("SELECT p.id, m.id FROM Project p JOIN p.members m")
+    public Stream<Object[]> streamAllMemberships();
+
+    /**
+     * Retrieve a keyset page of summaries of the Projects that are visible by the passed user,
+     * i.e. the ones following the passed id in ascending id order.
+     * Task counts are read from the ProjectCounters, so no Task is ever scanned.
+     * @param memberId the id of the User to retrieve the visible projects of
+     * @param afterId the id of the last Project of the previous page (0 for the first page)
+     * @param pageable the page size to fetch (its page number is always 0)
+     * @return the List of summaries of the projects visible by the passed user
+     */
+    @Query("SELECT new it.uniroma3.siw.taskmanager.model.view.ProjectSummary(p.id, p.name, p.description, " +
+            "c.taskCount, c.completedTaskCount, c.assignedTaskCount) " +
+            "FROM Project p JOIN p.members m LEFT JOIN ProjectCounters c ON c.projectId = p.id " +
+            "WHERE m.id = :memberId AND p.id > :afterId ORDER BY p.id")
+    public List<ProjectSummary> findSummariesByMember(@Param("memberId") Long memberId,
+                                                      @Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Retrieve a keyset page of summaries of the Projects that are owned by the passed user,
+     * i.e. the ones following the passed id in ascending id order.
+     * Task counts are read from the ProjectCounters, so no Task is ever scanned.
+     * @param ownerId the id of the User to retrieve the Projects of
+     * @param afterId the id of the last Project of the previous page (0 for the first page)
+     * @param pageable the page size to fetch (its page number is always 0)
+     * @return the List of summaries of the projects owned by the passed user
+     */
+    @Query("SELECT new it.uniroma3.siw.taskmanager.model.view.ProjectSummary(p.id, p.name, p.description, " +
+            "c.taskCount, c.completedTaskCount, c.assignedTaskCount) " +
+            "FROM Project p LEFT JOIN ProjectCounters c ON c.projectId = p.id " +
+            "WHERE p.owner.id = :ownerId AND p.id > :afterId ORDER BY p.id")
+    public List<ProjectSummary> findSummariesByOwner(@Param("ownerId") Long ownerId,
+                                                     @Param("afterId") Long afterId, Pageable pageable);
+}
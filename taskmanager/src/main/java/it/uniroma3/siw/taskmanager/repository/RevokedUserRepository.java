@@ -0,0 +1,35 @@
+package it.uniroma3.siw.taskmanager.repository;
+
+import it.uniroma3.siw.taskmanager.model.RevokedUser;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * This interface is a CrudRepository for repository operations on RevokedUsers.
+ *
+ * @see RevokedUser
+ */
+public interface RevokedUserRepository extends CrudRepository<RevokedUser, Long> {
+
+    /**
+     * Retrieve the Users whose tokens are still revoked at the passed instant
+     * @param now the instant
+     * @return the List of the revoked Users
+     */
+    @Query("SELECT r FROM RevokedUser r WHERE r.revokedUntil > :now")
+    public List<RevokedUser> findRevokedAt(@Param("now") LocalDateTime now);
+
+    /**
+     * Forget the revoked Users whose tokens have all expired at the passed instant
+     * @param now the instant
+     * @return the number of RevokedUsers deleted
+     */
+    @Modifying
+    @Query("DELETE FROM RevokedUser r WHERE r.revokedUntil <= :now")
+    public int deleteExpiredAt(@Param("now") LocalDateTime now);
+}
@@ -1,9 +1,44 @@
 package it.uniroma3.siw.taskmanager.repository;
 
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
 import it.uniroma3.siw.taskmanager.model.Tag;
 
 public interface TagRepository extends CrudRepository<Tag, Long> {
 
+	/**
+	 * Retrieve the Tags of a Project.
+	 * The result is kept in the query cache until the tag or the project tables are written.
+	 * @param projectId the id of the Project to retrieve the Tags of
+	 * @return the List of Tags of the Project
+	 */
+	@QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"))
+	@Query("SELECT t FROM Project p JOIN p.tags t WHERE p.id = :projectId")
+	public List<Tag> findByProjectId(@Param("projectId") Long projectId);
+
+	/**
+	 * Stream the id and the name of every Tag, together with the id of the Project it belongs to,
+	 * fetching TaskViewsRepositoryImpl.FETCH_SIZE rows at a time
+	 * @return a Stream of (tag id, name, project id) triples
+	 */
+	@QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "" + TaskViewsRepositoryImpl.FETCH_SIZE))
+	@Query("SELECT t.id, t.name, p.id FROM Project p JOIN p.tags t")
+	public Stream<Object[]> streamAllNames();
+
+	/**
+	 * Stream every assignment of a Tag to a Task, fetching TaskViewsRepositoryImpl.FETCH_SIZE rows at a time
+	 * @return a Stream of (task id, tag id) pairs
+	 */
+	@QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "" + TaskViewsRepositoryImpl.FETCH_SIZE))
+	@Query("SELECT t.id, g.id FROM Task t JOIN t.tags g")
+	public Stream<Object[]> streamAllAssignments();
+
 }
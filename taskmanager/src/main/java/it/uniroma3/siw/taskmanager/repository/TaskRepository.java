@@ -1,13 +1,203 @@
 package it.uniroma3.siw.taskmanager.repository;
 import it.uniroma3.siw.taskmanager.model.Task;
+import it.uniroma3.siw.taskmanager.model.view.AssignedTask;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * This interface is a CrudRepository for repository operations on Tasks.
+ * The bulk operations on the Tag assignments are declared by TaskTagsRepository,
+ * and the reads of large numbers of Tasks by TaskViewsRepository.
  *
  * @see Task
  */
-public interface TaskRepository extends CrudRepository<Task, Long> {
+public interface TaskRepository extends CrudRepository<Task, Long>, TaskTagsRepository, TaskViewsRepository {
 
-}
+    /**
+     * Retrieve a Task together with its Tags, as needed by the task detail view
+     * @param id the id of the Task to retrieve
+     * @return an Optional for the Task with the passed id
+     */
+    @EntityGraph(Task.DETAIL_GRAPH)
+    public Optional<Task> findDetailById(Long id);
+
+    /**
+     * Retrieve the id of the Project a Task belongs to
+     * @param id the id of the Task
+     * @return an Optional for the id of the Project, empty if the Task does not exist
+     */
+    @Query("SELECT t.project.id FROM Task t WHERE t.id = :id")
+    public Optional<Long> findProjectIdById(@Param("id") Long id);
+
+    /**
+     * Stream the id of every Task together with the id of the Project it belongs to,
+     * fetching TaskViewsRepositoryImpl.FETCH_SIZE rows at a time
+     * @return a Stream of (task id, project id) pairs
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "" + TaskViewsRepositoryImpl.FETCH_SIZE))
+    @Query("SELECT t.id, p.id FROM Project p JOIN p.tasks t")
+    public Stream<Object[]> streamAllProjectIds();
+
+    /**
+     * Stream the id, the name and the description of every Task,
+     * fetching TaskViewsRepositoryImpl.FETCH_SIZE rows at a time
+     * @return a Stream of (task id, name, description) triples
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "" + TaskViewsRepositoryImpl.FETCH_SIZE))
+    @Query("SELECT t.id, t.name, t.description FROM Task t")
+    public Stream<Object[]> streamAllTexts();
+
+    /**
+     * Retrieve the names of the Tags of a set of Tasks
+     * @param taskIds the ids of the Tasks
+     * @return a List of (task id, tag name) pairs, sorted by Task
+     */
+    @Query("SELECT t.id, g.name FROM Task t JOIN t.tags g WHERE t.id IN :taskIds ORDER BY t.id, g.name")
+    public List<Object[]> findTagNames(@Param("taskIds") Collection<Long> taskIds);
+
+    /**
+     * Retrieve a keyset page of the Tasks assigned to a User, from the most recently updated,
+     * i.e. the ones following the passed (last update, id) position in that order.
+     * The seek runs on the (assigned user, last update, id) index.
+     * @param userId the id of the User the Tasks are assigned to
+     * @param beforeTimestamp the last update of the last Task of the previous page
+     * @param beforeId the id of the last Task of the previous page
+     * @param pageable the page size to fetch (its page number is always 0)
+     * @return the List of the assigned Tasks
+     */
+    @Query("SELECT new it.uniroma3.siw.taskmanager.model.view.AssignedTask(t.id, t.name, t.completed, " +
+            "t.lastUpdateTimestamp, p.id, p.name) " +
+            "FROM Project p JOIN p.tasks t " +
+            "WHERE t.assignedUser.id = :userId " +
+            "AND (t.lastUpdateTimestamp < :beforeTimestamp " +
+            "OR (t.lastUpdateTimestamp = :beforeTimestamp AND t.id < :beforeId)) " +
+            "ORDER BY t.lastUpdateTimestamp DESC, t.id DESC")
+    public List<AssignedTask> findAssigned(@Param("userId") Long userId,
+                                           @Param("beforeTimestamp") LocalDateTime beforeTimestamp,
+                                           @Param("beforeId") Long beforeId, Pageable pageable);
+
+    /**
+     * Retrieve a keyset page of the Tasks assigned to a User with the passed completed flag, from the most recently updated,
+     * i.e. the ones following the passed (last update, id) position in that order.
+     * The seek runs on the (assigned user, completed, last update, id) index.
+     * @param userId the id of the User the Tasks are assigned to
+     * @param completed the completed flag of the Tasks
+     * @param beforeTimestamp the last update of the last Task of the previous page
+     * @param beforeId the id of the last Task of the previous page
+     * @param pageable the page size to fetch (its page number is always 0)
+     * @return the List of the assigned Tasks
+     */
+    @Query("SELECT new it.uniroma3.siw.taskmanager.model.view.AssignedTask(t.id, t.name, t.completed, " +
+            "t.lastUpdateTimestamp, p.id, p.name) " +
+            "FROM Project p JOIN p.tasks t " +
+            "WHERE t.assignedUser.id = :userId AND t.completed = :completed " +
+            "AND (t.lastUpdateTimestamp < :beforeTimestamp " +
+            "OR (t.lastUpdateTimestamp = :beforeTimestamp AND t.id < :beforeId)) " +
+            "ORDER BY t.lastUpdateTimestamp DESC, t.id DESC")
+    public List<AssignedTask> findAssignedByCompleted(@Param("userId") Long userId,
+                                                      @Param("completed") boolean completed,
+                                                      @Param("beforeTimestamp") LocalDateTime beforeTimestamp,
+                                                      @Param("beforeId") Long beforeId, Pageable pageable);
 
+    /**
+     * Retrieve a keyset page of the Tasks of a Project assigned to a User, from the most recently updated,
+     * i.e. the ones following the passed (last update, id) position in that order.
+     * @param userId the id of the User the Tasks are assigned to
+     * @param projectId the id of the Project of the Tasks
+     * @param completed the accepted values of the completed flag
+     * @param beforeTimestamp the last update of the last Task of the previous page
+     * @param beforeId the id of the last Task of the previous page
+     * @param pageable the page size to fetch (its page number is always 0)
+     * @return the List of the assigned Tasks
+     */
+    @Query("SELECT new it.uniroma3.siw.taskmanager.model.view.AssignedTask(t.id, t.name, t.completed, " +
+            "t.lastUpdateTimestamp, p.id, p.name) " +
+            "FROM Project p JOIN p.tasks t " +
+            "WHERE t.assignedUser.id = :userId AND p.id = :projectId AND t.completed IN :completed " +
+            "AND (t.lastUpdateTimestamp < :beforeTimestamp " +
+            "OR (t.lastUpdateTimestamp = :beforeTimestamp AND t.id < :beforeId)) " +
+            "ORDER BY t.lastUpdateTimestamp DESC, t.id DESC")
+    public List<AssignedTask> findAssignedInProject(@Param("userId") Long userId,
+                                                    @Param("projectId") Long projectId,
+                                                    @Param("completed") Collection<Boolean> completed,
+                                                    @Param("beforeTimestamp") LocalDateTime beforeTimestamp,
+                                                    @Param("beforeId") Long beforeId, Pageable pageable);
+
+    /**
+     * Retrieve which of the passed Task ids belong to a Project
+     * @param projectId the id of the Project
+     * @param taskIds the ids of the Tasks
+     * @return the List of the ids of the passed Tasks that belong to the Project
+     */
+    @Query("SELECT t.id FROM Task t WHERE t.project.id = :projectId AND t.id IN :taskIds")
+    public List<Long> findIdsInProject(@Param("projectId") Long projectId, @Param("taskIds") Collection<Long> taskIds);
+
+    /**
+     * Count the passed Tasks, the completed ones and the assigned ones
+     * @param taskIds the ids of the Tasks
+     * @return a single (tasks, completed tasks, assigned tasks) triple
+     */
+    @Query("SELECT COUNT(t), COALESCE(SUM(CASE WHEN t.completed = true THEN 1 ELSE 0 END), 0), COUNT(u) " +
+            "FROM Task t LEFT JOIN t.assignedUser u WHERE t.id IN :taskIds")
+    public List<Object[]> countStates(@Param("taskIds") Collection<Long> taskIds);
+
+    /**
+     * Set as completed the passed Tasks that are not completed yet
+     * @param taskIds the ids of the Tasks
+     * @param now the timestamp of the update
+     * @return the number of Tasks that have been completed
+     */
+    @Modifying
+    @Query("UPDATE Task t SET t.completed = true, t.lastUpdateTimestamp = :now, t.version = t.version + 1 " +
+            "WHERE t.id IN :taskIds AND t.completed = false")
+    public int completeAll(@Param("taskIds") Collection<Long> taskIds, @Param("now") LocalDateTime now);
+
+    /**
+     * Assign to a User the passed Tasks that are not assigned to anyone yet
+     * @param taskIds the ids of the Tasks
+     * @param userId the id of the User
+     * @param now the timestamp of the update
+     * @return the number of Tasks that have been assigned
+     */
+    @Modifying
+    @Query("UPDATE Task t SET t.assignedUser = (SELECT u FROM User u WHERE u.id = :userId), " +
+            "t.lastUpdateTimestamp = :now, t.version = t.version + 1 " +
+            "WHERE t.id IN :taskIds AND t.assignedUser IS NULL")
+    public int assignAllUnassigned(@Param("taskIds") Collection<Long> taskIds, @Param("userId") Long userId,
+                                   @Param("now") LocalDateTime now);
+
+    /**
+     * Assign to a User the passed Tasks that are assigned to someone else
+     * @param taskIds the ids of the Tasks
+     * @param userId the id of the User
+     * @param now the timestamp of the update
+     * @return the number of Tasks that have been reassigned
+     */
+    @Modifying
+    @Query("UPDATE Task t SET t.assignedUser = (SELECT u FROM User u WHERE u.id = :userId), " +
+            "t.lastUpdateTimestamp = :now, t.version = t.version + 1 " +
+            "WHERE t.id IN :taskIds AND t.assignedUser.id <> :userId")
+    public int reassignAll(@Param("taskIds") Collection<Long> taskIds, @Param("userId") Long userId,
+                           @Param("now") LocalDateTime now);
+
+    /**
+     * Delete the passed Tasks; their comments are deleted by the DB together with them
+     * @param taskIds the ids of the Tasks
+     * @return the number of deleted Tasks
+     */
+    @Modifying
+    @Query("DELETE FROM Task t WHERE t.id IN :taskIds")
+    public int deleteAllByIds(@Param("taskIds") Collection<Long> taskIds);
+}
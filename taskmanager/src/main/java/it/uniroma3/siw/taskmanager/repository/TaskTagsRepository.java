@@ -0,0 +1,38 @@
+package it.uniroma3.siw.taskmanager.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * This interface declares the bulk operations on the Tags assigned to Tasks, that are written in native SQL.
+ * They are implemented by TaskTagsRepositoryImpl, so that each of them can declare the tables it writes:
+ * a native update that does not would make Hibernate evict every region of the second-level cache.
+ *
+ * @see TaskRepository
+ */
+public interface TaskTagsRepository {
+
+    /**
+     * Record an update of the passed Tasks that do not have a Tag yet, as they are about to get it
+     * @param taskIds the ids of the Tasks
+     * @param tagId the id of the Tag
+     * @param now the timestamp of the update
+     * @return the number of updated Tasks
+     */
+    public int touchAllUntagged(Collection<Long> taskIds, Long tagId, LocalDateTime now);
+
+    /**
+     * Assign a Tag to the passed Tasks that do not have it yet
+     * @param taskIds the ids of the Tasks
+     * @param tagId the id of the Tag
+     * @return the number of Tasks the Tag has been assigned to
+     */
+    public int tagAll(Collection<Long> taskIds, Long tagId);
+
+    /**
+     * Remove all the Tags of the passed Tasks
+     * @param taskIds the ids of the Tasks
+     * @return the number of removed Tag assignments
+     */
+    public int untagAll(Collection<Long> taskIds);
+}
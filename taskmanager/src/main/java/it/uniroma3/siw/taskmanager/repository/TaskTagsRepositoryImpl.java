@@ -0,0 +1,61 @@
+package it.uniroma3.siw.taskmanager.repository;
+
+import org.hibernate.query.NativeQuery;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * This class implements the native bulk operations of TaskTagsRepository.
+ * Each statement is synchronized with the tables it writes, so that Hibernate only invalidates
+ * the cached queries on those tables instead of the whole second-level cache.
+ *
+ * @see TaskTagsRepository
+ */
+public class TaskTagsRepositoryImpl implements TaskTagsRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public int touchAllUntagged(Collection<Long> taskIds, Long tagId, LocalDateTime now) {
+        return this.nativeUpdate("UPDATE task SET last_update_timestamp = :now, version = version + 1 " +
+                "WHERE id IN (:taskIds) " +
+                "AND NOT EXISTS (SELECT 1 FROM task_tags tt WHERE tt.task_id = task.id AND tt.tags_id = :tagId)", "task")
+                .setParameter("taskIds", taskIds)
+                .setParameter("tagId", tagId)
+                .setParameter("now", now)
+                .executeUpdate();
+    }
+
+    @Override
+    public int tagAll(Collection<Long> taskIds, Long tagId) {
+        return this.nativeUpdate("INSERT INTO task_tags (task_id, tags_id) SELECT t.id, :tagId FROM task t " +
+                "WHERE t.id IN (:taskIds) " +
+                "AND NOT EXISTS (SELECT 1 FROM task_tags tt WHERE tt.task_id = t.id AND tt.tags_id = :tagId)", "task_tags")
+                .setParameter("taskIds", taskIds)
+                .setParameter("tagId", tagId)
+                .executeUpdate();
+    }
+
+    @Override
+    public int untagAll(Collection<Long> taskIds) {
+        return this.nativeUpdate("DELETE FROM task_tags WHERE task_id IN (:taskIds)", "task_tags")
+                .setParameter("taskIds", taskIds)
+                .executeUpdate();
+    }
+
+    /**
+     * This method creates a native update statement that only invalidates the cached data of the passed table.
+     * @param sql the statement
+     * @param table the table written by the statement
+     * @return the NativeQuery, to be bound and executed
+     */
+    private NativeQuery<?> nativeUpdate(String sql, String table) {
+        return this.entityManager.createNativeQuery(sql)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(table);
+    }
+}
@@ -0,0 +1,33 @@
+package it.uniroma3.siw.taskmanager.repository;
+
+import it.uniroma3.siw.taskmanager.model.view.ExportedTask;
+import it.uniroma3.siw.taskmanager.model.view.TaskSummary;
+
+import java.util.List;
+
+/**
+ * This interface declares the reads of large numbers of Tasks, that are written in plain SQL.
+ * They are implemented by TaskViewsRepositoryImpl, which maps every row straight into an immutable view:
+ * no Task entity is loaded into the persistence context, nor snapshotted for dirty checking.
+ *
+ * @see TaskRepository
+ */
+public interface TaskViewsRepository {
+
+    /**
+     * Retrieve the Tasks of a Project, by id
+     * @param projectId the id of the Project
+     * @return the List of the summaries of the Tasks
+     */
+    public List<TaskSummary> findSummariesByProjectId(Long projectId);
+
+    /**
+     * Retrieve a keyset page of the Tasks of a Project, together with the names of their Project and assigned User,
+     * i.e. the ones following the passed id in ascending id order
+     * @param projectId the id of the Project
+     * @param afterId the id of the last Task of the previous page (0 for the first page)
+     * @param limit the maximum number of Tasks to retrieve
+     * @return the List of the Tasks, by id
+     */
+    public List<ExportedTask> findExportPage(Long projectId, Long afterId, int limit);
+}
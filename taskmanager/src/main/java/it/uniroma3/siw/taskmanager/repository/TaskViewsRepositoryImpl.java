@@ -0,0 +1,57 @@
+package it.uniroma3.siw.taskmanager.repository;
+
+import it.uniroma3.siw.taskmanager.model.view.ExportedTask;
+import it.uniroma3.siw.taskmanager.model.view.TaskSummary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class implements the reads of TaskViewsRepository with JDBC row mappers.
+ * The statements run on the connection of the current transaction, so they read from a replica
+ * within read-only transactions, and they fetch FETCH_SIZE rows at a time.
+ *
+ * @see TaskViewsRepository
+ */
+public class TaskViewsRepositoryImpl implements TaskViewsRepository {
+
+    /**
+     * Number of rows fetched from the DB at a time
+     */
+    public static final int FETCH_SIZE = 500;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public TaskViewsRepositoryImpl(DataSource dataSource) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    @Override
+    public List<TaskSummary> findSummariesByProjectId(Long projectId) {
+        return this.jdbcTemplate.query("SELECT t.id, t.name, t.description, t.completed FROM task t " +
+                        "WHERE t.project_id = :projectId ORDER BY t.id",
+                Map.of("projectId", projectId),
+                (row, i) -> new TaskSummary(row.getLong("id"), row.getString("name"), row.getString("description"),
+                        row.getBoolean("completed")));
+    }
+
+    @Override
+    public List<ExportedTask> findExportPage(Long projectId, Long afterId, int limit) {
+        return this.jdbcTemplate.query("SELECT p.id AS project_id, p.name AS project_name, t.id, t.name, t.description, " +
+                        "t.completed, u.first_name, u.last_name, t.creation_timestamp, t.last_update_timestamp " +
+                        "FROM task t JOIN project p ON p.id = t.project_id LEFT JOIN users u ON u.id = t.assigned_user_id " +
+                        "WHERE t.project_id = :projectId AND t.id > :afterId ORDER BY t.id LIMIT :limit",
+                Map.of("projectId", projectId, "afterId", afterId, "limit", limit),
+                (row, i) -> new ExportedTask(row.getLong("project_id"), row.getString("project_name"), row.getLong("id"),
+                        row.getString("name"), row.getString("description"), row.getBoolean("completed"),
+                        row.getString("first_name"), row.getString("last_name"),
+                        row.getObject("creation_timestamp", LocalDateTime.class),
+                        row.getObject("last_update_timestamp", LocalDateTime.class)));
+    }
+}
@@ -1,8 +1,10 @@
 package it.uniroma3.siw.taskmanager.repository;
 import it.uniroma3.siw.taskmanager.model.Project;
 import it.uniroma3.siw.taskmanager.model.User;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 
+import javax.persistence.QueryHint;
 import java.util.List;
 
 /**
@@ -13,10 +15,12 @@ import java.util.List;
 public interface UserRepository extends CrudRepository<User, Long> {
 
     /**
-     * Retrieve all Users that have visibility over the passed project
+     * Retrieve all Users that have visibility over the passed project.
+     * The result is kept in the query cache until the users or the members tables are written.
      * @param project The Project to find the members of
      * @return the List of Users that have visibility over the passed Project
      */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"))
     public List<User> findByVisibleProjects(Project project);
 }
 
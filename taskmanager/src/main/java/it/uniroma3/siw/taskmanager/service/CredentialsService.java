@@ -1,14 +1,22 @@
 package it.uniroma3.siw.taskmanager.service;
+import it.uniroma3.siw.taskmanager.authentication.CredentialsUserDetailsService;
+import it.uniroma3.siw.taskmanager.authentication.TokenRevocationList;
+import it.uniroma3.siw.taskmanager.index.ProjectVisibilityIndex;
 import it.uniroma3.siw.taskmanager.model.Credentials;
+import it.uniroma3.siw.taskmanager.model.User;
+import it.uniroma3.siw.taskmanager.model.view.CredentialsSummary;
 import it.uniroma3.siw.taskmanager.repository.CredentialsRepository;
+import it.uniroma3.siw.taskmanager.repository.ProjectRepository;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 /**
@@ -24,12 +32,32 @@ public class CredentialsService {
     @Autowired
     protected PasswordEncoder passwordEncoder;
 
+    @Autowired
+    protected ProjectVisibilityIndex projectVisibilityIndex;
+
+    @Autowired
+    protected ProjectAccessService projectAccessService;
+
+    @Autowired
+    protected ProjectRepository projectRepository;
+
+    @Autowired
+    protected TaskSearchService taskSearchService;
+    @Autowired
+    protected CredentialsUserDetailsService userDetailsService;
+
+    /**
+     * The tokenRevocationList only exists in stateless mode
+     */
+    @Autowired
+    protected ObjectProvider<TokenRevocationList> tokenRevocationList;
+
     /**
      * This method retrieves an Credentials from the DB based on its ID.
      * @param id the id of the Credentials to retrieve from the DB
      * @return the retrieved Credentials, or null if no Credentials with the passed ID could be found in the DB
      */
-    @Transactional
+    @Transactional(readOnly = true)
     public Credentials getCredentials(long id) {
         Optional<Credentials> result = this.credentialsRepository.findById(id);
         return result.orElse(null);
@@ -40,7 +68,7 @@ public class CredentialsService {
      * @param username the username of the Credentials to retrieve from the DB
      * @return the retrieved Credentials, or null if no Credentials with the passed username could be found in the DB
      */
-    @Transactional
+    @Transactional(readOnly = true)
     public Credentials getCredentials(String username) {
         Optional<Credentials> result = this.credentialsRepository.findByUserName(username);
         return result.orElse(null);
@@ -58,28 +86,76 @@ public class CredentialsService {
     public Credentials saveCredentials(Credentials credentials) {
         credentials.setRole(Credentials.DEFAULT_ROLE);
         credentials.setPassword(this.passwordEncoder.encode(credentials.getPassword()));
+        this.userDetailsService.evict(credentials.getUserName());
         return this.credentialsRepository.save(credentials);
     }
 
     /**
-     * This method retrieves all Credentials from the DB.
-     * @return a List with all the retrieved Credentials
+     * This method updates the profile of a User in the DB: their first and last name, their username and their password.
+     * The edit is based on the version of the User shown in the edit form: if the User has been changed since then,
+     * the edit is rejected rather than overwriting the concurrent change, and it is not retried.
+     * In stateless mode, a change of the password revokes the signed session tokens of the earlier logins of the User.
+     * @param credentialsId the id of the Credentials of the User
+     * @param userVersion the version of the User the edit is based on
+     * @param userName the new username
+     * @param encodedPassword the new password, already hashed by the PasswordEncoder, or null to keep the current one:
+     *                        it is hashed by the caller so that no DB connection is held while the hash waits for a thread
+     * @param firstName the new first name of the User
+     * @param lastName the new last name of the User
+     * @return the updated Credentials, or null if no Credentials with the passed ID could be found in the DB
+     * @throws ObjectOptimisticLockingFailureException if the User has been changed since the passed version
      */
     @Transactional
-    public List<Credentials> getAllCredentials() {
-        List<Credentials> result = new ArrayList<>();
-        Iterable<Credentials> iterable = this.credentialsRepository.findAll();
-        for(Credentials credentials : iterable)
-            result.add(credentials);
-        return result;
+    public Credentials updateProfile(long credentialsId, Long userVersion, String userName, String encodedPassword,
+                                     String firstName, String lastName) {
+        Credentials credentials = this.credentialsRepository.findById(credentialsId).orElse(null);
+        if (credentials == null)
+            return null;
+        User user = credentials.getUser();
+        if (!Objects.equals(user.getVersion(), userVersion))
+            throw new ObjectOptimisticLockingFailureException(User.class, user.getId());
+        user.setFirstName(firstName);
+        user.setLastName(lastName);
+        this.userDetailsService.evict(credentials.getUserName());
+        this.userDetailsService.evict(userName);
+        credentials.setUserName(userName);
+        if (encodedPassword != null) {
+            credentials.setPassword(encodedPassword);
+            this.tokenRevocationList.ifAvailable(list -> list.revoke(user.getId()));
+        }
+        return this.credentialsRepository.save(credentials);
+    }
+
+    /**
+     * This method retrieves all Credentials from the DB, by username.
+     * They are read as CredentialsSummary views, with the names of their Users and without their passwords,
+     * so that no Credentials or User entity is loaded to list them.
+     * @return a List with the summaries of all the retrieved Credentials
+     */
+    @Transactional(readOnly = true)
+    public List<CredentialsSummary> getAllCredentials() {
+        return this.credentialsRepository.findAllSummaries();
     }
     
     /**
      * This method deletes the Credentials, exixting in the DB, related to the given username.
+     * The Projects owned by their User are deleted with it, so their Tasks are removed from the search indexes.
+     * In stateless mode, the signed session tokens already issued to their User are revoked.
      */
     @Transactional
     public void deleteCredentials(String username) {
     	Optional<Credentials> credential = this.credentialsRepository.findByUserName(username);
+    	List<Long> ownedProjectIds = credential.map(Credentials::getUser)
+    			.map(user -> this.projectRepository.findIdsByOwnerId(user.getId()))
+    			.orElse(List.of());
     	this.credentialsRepository.delete(credential.orElse(null));
+    	this.userDetailsService.evict(username);
+    	ownedProjectIds.forEach(this.taskSearchService::projectDeleted);
+    	if (credential.isPresent() && credential.get().getUser() != null) {
+    		long userId = credential.get().getUser().getId();
+    		this.projectVisibilityIndex.userDeleted(userId);
+    		this.projectAccessService.invalidateUser(userId);
+    		this.tokenRevocationList.ifAvailable(list -> list.revoke(userId));
+    	}
     }
 }
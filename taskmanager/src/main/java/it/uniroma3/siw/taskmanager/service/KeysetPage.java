@@ -0,0 +1,112 @@
+package it.uniroma3.siw.taskmanager.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A KeysetPage is a single page of a seek-based (keyset) listing.
+ * Instead of an offset, the position of the next page is carried by an opaque cursor token
+ * that encodes the sort key(s) of the last element of this page.
+ *
+ * @param <T> the type of the elements in the page
+ */
+public class KeysetPage<T> {
+
+    private static final String KEY_SEPARATOR = ":";
+
+    /**
+     * The elements of this page
+     */
+    private final List<T> content;
+
+    /**
+     * The cursor to retrieve the following page, or null if this is the last page
+     */
+    private final String nextCursor;
+
+    public KeysetPage(List<T> content, String nextCursor) {
+        this.content = Collections.unmodifiableList(content);
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * This method builds a page from a result list fetched with one extra element (pageSize + 1):
+     * the extra element is only used to know whether a following page exists, and it is dropped.
+     * @param fetched the fetched elements, at most pageSize + 1
+     * @param pageSize the size of the page
+     * @param lastKeys the sort keys of the last element that is kept in the page
+     * @return the page
+     */
+    public static <T> KeysetPage<T> of(List<T> fetched, int pageSize, Function<T, Object[]> lastKeys) {
+        if (fetched.size() <= pageSize)
+            return new KeysetPage<>(fetched, null);
+        List<T> content = fetched.subList(0, pageSize);
+        return new KeysetPage<>(content, encodeCursor(lastKeys.apply(content.get(pageSize - 1))));
+    }
+
+    /**
+     * This method encodes the passed sort keys into an opaque, URL-safe cursor token.
+     * @param keys the sort keys of the last element of a page
+     * @return the cursor token
+     */
+    public static String encodeCursor(Object... keys) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0)
+                builder.append(KEY_SEPARATOR);
+            builder.append(keys[i]);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * This method decodes a cursor token into the sort keys it carries.
+     * @param cursor the cursor token
+     * @param expectedKeys the number of sort keys the cursor must contain
+     * @return the decoded sort keys, or null if the cursor is absent or malformed
+     */
+    public static String[] decodeCursor(String cursor, int expectedKeys) {
+        if (cursor == null || cursor.isEmpty())
+            return null;
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] keys = decoded.split(KEY_SEPARATOR, expectedKeys);
+            return keys.length == expectedKeys ? keys : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * This method decodes a cursor token carrying a single numeric id.
+     * @param cursor the cursor token
+     * @return the decoded id, or null if the cursor is absent or malformed
+     */
+    public static Long decodeIdCursor(String cursor) {
+        String[] keys = decodeCursor(cursor, 1);
+        if (keys == null)
+            return null;
+        try {
+            return Long.valueOf(keys[0]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // GETTERS
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return this.nextCursor != null;
+    }
+}
@@ -0,0 +1,212 @@
+package it.uniroma3.siw.taskmanager.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import it.uniroma3.siw.taskmanager.index.AfterCommit;
+import it.uniroma3.siw.taskmanager.index.ProjectTaskIndex;
+import it.uniroma3.siw.taskmanager.index.ProjectVisibilityIndex;
+import it.uniroma3.siw.taskmanager.repository.ProjectRepository;
+import it.uniroma3.siw.taskmanager.repository.TaskRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ProjectAccessService decides which Role a User has on a Project.
+ * Roles are resolved in memory by the ProjectVisibilityIndex, without any DB round-trip.
+ * A Role the index does not know of (e.g. on a Project just shared by another node) is looked up
+ * with existence queries on the owner column and on the members join table, and then added to the index.
+ * While the index is cold, every Role is resolved with those queries instead, and kept in a bounded in-memory cache
+ * that the ProjectService invalidates whenever the ownership or the members of a Project change;
+ * the listings of the visible Projects are read from the DB too.
+ */
+@Service
+public class ProjectAccessService {
+
+    /**
+     * The Role a User can have on a Project
+     */
+    public enum Role {
+        OWNER, MEMBER, NONE
+    }
+
+    /**
+     * Maximum number of (user, project) pairs kept in the cache
+     */
+    private static final long MAX_CACHED_ROLES = 100_000;
+
+    /**
+     * Upper bound to the life of a cached Role, in case a change is not notified to this service,
+     * e.g. because it was made by another node
+     */
+    private static final long CACHED_ROLE_TTL_SECONDS = 30;
+
+    @Autowired
+    protected ProjectVisibilityIndex projectVisibilityIndex;
+
+    @Autowired
+    protected ProjectRepository projectRepository;
+
+    @Autowired
+    protected ProjectTaskIndex projectTaskIndex;
+
+    @Autowired
+    protected TaskRepository taskRepository;
+
+    private final Cache<AccessKey, Role> roles = Caffeine.newBuilder()
+            .maximumSize(MAX_CACHED_ROLES)
+            .expireAfterWrite(CACHED_ROLE_TTL_SECONDS, TimeUnit.SECONDS)
+            .build();
+
+    /**
+     * This method retrieves the Role a User has on a Project.
+     * @param userId the id of the User
+     * @param projectId the id of the Project
+     * @return the Role of the User on the Project, NONE if the Project does not exist
+     */
+    public Role getRole(Long userId, Long projectId) {
+        if (!this.projectVisibilityIndex.isWarm())
+            return this.roles.get(new AccessKey(userId, projectId), this::loadRole);
+        if (this.projectVisibilityIndex.isOwner(userId, projectId))
+            return Role.OWNER;
+        if (this.projectVisibilityIndex.isMember(userId, projectId))
+            return Role.MEMBER;
+        Role role = this.loadRole(new AccessKey(userId, projectId));
+        if (role == Role.OWNER)
+            this.projectVisibilityIndex.projectSaved(projectId, userId);
+        else if (role == Role.MEMBER)
+            this.projectVisibilityIndex.memberAdded(projectId, userId);
+        return role;
+    }
+
+    /**
+     * This method checks whether a User is the owner of a Project or a member it is shared with.
+     * @param userId the id of the User
+     * @param projectId the id of the Project
+     * @return true if the User has visibility over the Project
+     */
+    public boolean canView(long userId, Long projectId) {
+        return this.getRole(userId, projectId) != Role.NONE;
+    }
+
+    /**
+     * This method checks whether a User can see the Project a Task belongs to.
+     * The Project of a Task is looked up on the DB if the ProjectTaskIndex does not know of the Task,
+     * e.g. while it is cold or if the Task was just created by another node.
+     * @param userId the id of the User
+     * @param taskId the id of the Task
+     * @return true if the Task exists and the User has visibility over its Project
+     */
+    public boolean canViewTask(long userId, Long taskId) {
+        Long projectId = this.projectTaskIndex.projectOf(taskId);
+        if (projectId == null)
+            projectId = this.taskRepository.findProjectIdById(taskId).orElse(null);
+        return projectId != null && this.canView(userId, projectId);
+    }
+
+    /**
+     * This method checks whether a User is the owner of a Project.
+     * @param userId the id of the User
+     * @param projectId the id of the Project
+     * @return true if the User owns the Project
+     */
+    public boolean isOwner(long userId, Long projectId) {
+        return this.getRole(userId, projectId) == Role.OWNER;
+    }
+
+    /**
+     * This method retrieves the ids of all the Projects a User owns or is a member of.
+     * @param userId the id of the User
+     * @return the List of the ids of the visible Projects, sorted
+     */
+    public List<Long> visibleProjectIds(long userId) {
+        if (!this.projectVisibilityIndex.isWarm()) {
+            SortedSet<Long> ids = new TreeSet<>(this.projectRepository.findIdsByOwnerId(userId));
+            ids.addAll(this.projectRepository.findIdsByMembersId(userId));
+            return new ArrayList<>(ids);
+        }
+        List<Long> ids = new ArrayList<>();
+        this.projectVisibilityIndex.visibleProjects(userId).forEach(ids::add);
+        return ids;
+    }
+
+    /**
+     * This method counts the Projects shared with a User.
+     * @param userId the id of the User
+     * @return the number of Projects shared with the User
+     */
+    public long countProjectsSharedWith(long userId) {
+        if (!this.projectVisibilityIndex.isWarm())
+            return this.projectRepository.countByMembersId(userId);
+        return this.projectVisibilityIndex.countSharedWith(userId);
+    }
+
+    /**
+     * This method forgets the cached Role of a User on a Project.
+     * If a transaction is active, the Role is forgotten only once it commits.
+     * @param userId the id of the User
+     * @param projectId the id of the Project
+     */
+    public void invalidate(Long userId, Long projectId) {
+        AfterCommit.run(() -> this.roles.invalidate(new AccessKey(userId, projectId)));
+    }
+
+    /**
+     * This method forgets the cached Roles of all Users on a Project.
+     * If a transaction is active, the Roles are forgotten only once it commits.
+     * @param projectId the id of the Project
+     */
+    public void invalidateProject(Long projectId) {
+        AfterCommit.run(() -> this.roles.asMap().keySet().removeIf(key -> key.projectId == projectId));
+    }
+
+    /**
+     * This method forgets the cached Roles of a User on all Projects.
+     * If a transaction is active, the Roles are forgotten only once it commits.
+     * @param userId the id of the User
+     */
+    public void invalidateUser(Long userId) {
+        AfterCommit.run(() -> this.roles.asMap().keySet().removeIf(key -> key.userId == userId));
+    }
+
+    private Role loadRole(AccessKey key) {
+        if (this.projectRepository.existsByIdAndOwnerId(key.projectId, key.userId))
+            return Role.OWNER;
+        if (this.projectRepository.existsByIdAndMembersId(key.projectId, key.userId))
+            return Role.MEMBER;
+        return Role.NONE;
+    }
+
+    /**
+     * Cache key for the Role of a User on a Project
+     */
+    private static final class AccessKey {
+
+        private final long userId;
+        private final long projectId;
+
+        private AccessKey(long userId, long projectId) {
+            this.userId = userId;
+            this.projectId = projectId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof AccessKey)) return false;
+            AccessKey key = (AccessKey) o;
+            return userId == key.userId && projectId == key.projectId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, projectId);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package it.uniroma3.siw.taskmanager.service;
+
+import it.uniroma3.siw.taskmanager.model.ProjectCounters;
+import it.uniroma3.siw.taskmanager.model.Task;
+import it.uniroma3.siw.taskmanager.repository.ProjectCountersRepository;
+import it.uniroma3.siw.taskmanager.repository.TaskRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+
+/**
+ * The ProjectCountersService handles the materialized Task counters of the Projects.
+ * The other services call it, within their own transactions, whenever a Task is added, changed or deleted;
+ * a scheduled job then periodically recomputes all the counters, fixing any drift
+ * (e.g. after Projects are removed together with their owner).
+ * A change of a Project without counters creates them, so that it is never lost.
+ */
+@Service
+public class ProjectCountersService {
+
+    @Autowired
+    protected ProjectCountersRepository projectCountersRepository;
+
+    @Autowired
+    protected TaskRepository taskRepository;
+
+    /**
+     * This method retrieves the counters of a Project from the DB.
+     * @param projectId the id of the Project
+     * @return the counters of the Project, all set to zero if it has none yet
+     */
+    @Transactional(readOnly = true)
+    public ProjectCounters getCounters(long projectId) {
+        return this.projectCountersRepository.findById(projectId).orElse(new ProjectCounters(projectId));
+    }
+
+    /**
+     * This method creates the counters of a new Project.
+     * @param projectId the id of the new Project
+     */
+    @Transactional
+    public void projectCreated(long projectId) {
+        this.projectCountersRepository.save(new ProjectCounters(projectId));
+    }
+
+    /**
+     * This method deletes the counters of a deleted Project.
+     * @param projectId the id of the deleted Project
+     */
+    @Transactional
+    public void projectDeleted(long projectId) {
+        this.projectCountersRepository.deleteByProjectId(projectId);
+    }
+
+    /**
+     * This method counts a Task that has just been added to a Project.
+     * @param projectId the id of the Project
+     * @param task the added Task
+     */
+    @Transactional
+    public void taskAdded(long projectId, Task task) {
+        this.adjust(projectId, 1, task.isCompleted() ? 1 : 0,
+                task.getAssignedUser() != null ? 1 : 0);
+    }
+
+    /**
+     * This method updates the counters of the Project of a Task whose state has changed.
+     * @param taskId the id of the changed Task
+     * @param wasCompleted whether the Task was completed before the change
+     * @param wasAssigned whether the Task was assigned before the change
+     * @param task the changed Task
+     */
+    @Transactional
+    public void taskChanged(long taskId, boolean wasCompleted, boolean wasAssigned, Task task) {
+        int completed = delta(wasCompleted, task.isCompleted());
+        int assigned = delta(wasAssigned, task.getAssignedUser() != null);
+        if (completed != 0 || assigned != 0)
+            this.adjustForTask(taskId, 0, completed, assigned);
+    }
+
+    /**
+     * This method uncounts a Task that is about to be deleted; it must be called before the Task is deleted.
+     * @param task the Task to delete
+     */
+    @Transactional
+    public void taskDeleted(Task task) {
+        this.adjustForTask(task.getId(), -1, task.isCompleted() ? -1 : 0,
+                task.getAssignedUser() != null ? -1 : 0);
+    }
+
+    /**
+     * This method counts a set of new Tasks of a Project that have been inserted all at once.
+     * @param projectId the id of the Project
+     * @param tasks the number of new Tasks
+     * @param completed the number of new Tasks that are completed already
+     */
+    @Transactional
+    public void tasksAdded(long projectId, int tasks, int completed) {
+        if (tasks != 0)
+            this.adjust(projectId, tasks, completed, 0);
+    }
+
+    /**
+     * This method counts the changes of a set of Tasks of a Project that have been updated all at once.
+     * @param projectId the id of the Project
+     * @param completed the number of Tasks that have been completed
+     * @param assigned the number of Tasks that have been assigned and were not before
+     */
+    @Transactional
+    public void tasksChanged(long projectId, int completed, int assigned) {
+        if (completed != 0 || assigned != 0)
+            this.adjust(projectId, 0, completed, assigned);
+    }
+
+    /**
+     * This method uncounts a set of Tasks of a Project that are about to be deleted;
+     * it must be called before the Tasks are deleted.
+     * @param projectId the id of the Project
+     * @param taskIds the ids of the Tasks to delete
+     */
+    @Transactional
+    public void tasksDeleted(long projectId, Collection<Long> taskIds) {
+        Object[] states = this.taskRepository.countStates(taskIds).get(0);
+        this.adjust(projectId, -((Number) states[0]).longValue(),
+                -((Number) states[1]).longValue(), -((Number) states[2]).longValue());
+    }
+
+    /**
+     * This method recomputes the counters of all the Projects from their Tasks.
+     * It runs periodically, according to the "taskmanager.counters.reconcile-cron" property.
+     * @return the number of counters that have been created, corrected or deleted
+     */
+    @Scheduled(cron = "${taskmanager.counters.reconcile-cron}")
+    @Transactional
+    public int reconcile() {
+        return this.projectCountersRepository.recomputeAll() + this.projectCountersRepository.deleteOrphans();
+    }
+
+    /**
+     * Add the passed deltas to the counters of a Project; counters that do not exist are created,
+     * as if they had been all set to zero, rather than losing the change.
+     */
+    private void adjust(long projectId, long tasks, long completed, long assigned) {
+        if (this.projectCountersRepository.adjust(projectId, tasks, completed, assigned) == 0)
+            this.projectCountersRepository.upsert(projectId, tasks, completed, assigned);
+    }
+
+    /**
+     * Add the passed deltas to the counters of the Project a Task belongs to, creating them if they do not exist.
+     */
+    private void adjustForTask(long taskId, long tasks, long completed, long assigned) {
+        if (this.projectCountersRepository.adjustForTask(taskId, tasks, completed, assigned) == 0)
+            this.projectCountersRepository.upsertForTask(taskId, tasks, completed, assigned);
+    }
+
+    private static int delta(boolean before, boolean after) {
+        return before == after ? 0 : (after ? 1 : -1);
+    }
+}
@@ -1,13 +1,23 @@
 package it.uniroma3.siw.taskmanager.service;
 
+import it.uniroma3.siw.taskmanager.configuration.OptimisticLockRetryConfiguration;
+import it.uniroma3.siw.taskmanager.index.ProjectVisibilityIndex;
 import it.uniroma3.siw.taskmanager.model.Project;
 import it.uniroma3.siw.taskmanager.model.User;
+import it.uniroma3.siw.taskmanager.model.view.ProjectSummary;
 import it.uniroma3.siw.taskmanager.repository.ProjectRepository;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 /**
@@ -17,20 +27,68 @@ import java.util.Optional;
 @Service
 public class ProjectService {
 
+    /**
+     * Number of Projects shown in a single page of the project listings
+     */
+    public static final int PROJECTS_PAGE_SIZE = 20;
+
     @Autowired
     protected ProjectRepository projectRepository;
 
+    @Autowired
+    protected ProjectVisibilityIndex projectVisibilityIndex;
+
+    @Autowired
+    protected ProjectAccessService projectAccessService;
+
+    @Autowired
+    protected TaskSearchService taskSearchService;
+
+    @Autowired
+    protected ProjectCountersService projectCountersService;
+
+    @PersistenceContext
+    protected EntityManager entityManager;
+
     /**
      * This method retrieves a Project from the DB based on its ID.
      * @param id the id of the Project to retrieve from the DB
      * @return the retrieved Project, or null if no Project with the passed ID could be found in the DB
      */
-    @Transactional
+    @Transactional(readOnly = true)
     public Project getProject(long id) {
         Optional<Project> result = this.projectRepository.findById(id);
         return result.orElse(null);
     }
 
+    /**
+     * This method retrieves a Project from the DB based on its ID, together with its Tags.
+     * The Project, the ids of its Tags and the Tags themselves are all read from the second-level cache when present.
+     * @param id the id of the Project to retrieve from the DB
+     * @return the retrieved Project, or null if no Project with the passed ID could be found in the DB
+     */
+    @Transactional(readOnly = true)
+    public Project getProjectWithTags(long id) {
+        Project project = this.projectRepository.findById(id).orElse(null);
+        if (project != null)
+            Hibernate.initialize(project.getTags());
+        return project;
+    }
+
+    /**
+     * This method retrieves a Project from the DB based on its ID, together with its members.
+     * The Project, the ids of its members and the members themselves are all read from the second-level cache when present.
+     * @param id the id of the Project to retrieve from the DB
+     * @return the retrieved Project, or null if no Project with the passed ID could be found in the DB
+     */
+    @Transactional(readOnly = true)
+    public Project getProjectWithMembers(long id) {
+        Project project = this.projectRepository.findById(id).orElse(null);
+        if (project != null)
+            Hibernate.initialize(project.getMembers());
+        return project;
+    }
+
     /**
      * This method saves a Project in the DB.
      * @param project the Project to save into the DB
@@ -38,7 +96,28 @@ public class ProjectService {
      */
     @Transactional
     public Project saveProject(Project project) {
-        return this.projectRepository.save(project);
+        boolean created = project.getId() == null;
+        Project saved = this.projectRepository.save(project);
+        if (created)
+            this.projectCountersService.projectCreated(saved.getId());
+        if (saved.getOwner() != null)
+            this.projectVisibilityIndex.projectSaved(saved.getId(), saved.getOwner().getId());
+        // a Role may have been cached for the id before the Project existed, or before its owner changed
+        this.projectAccessService.invalidateProject(saved.getId());
+        return saved;
+    }
+
+    /**
+     * This method saves a new Project in the DB.
+     * The owner is only referenced by id: neither the owner nor their other Projects are loaded.
+     * @param ownerId the id of the User owning the Project, that must exist
+     * @param project the new Project to save into the DB
+     * @return the saved Project
+     */
+    @Transactional
+    public Project createProject(long ownerId, Project project) {
+        project.setOwner(this.entityManager.getReference(User.class, ownerId));
+        return this.saveProject(project);
     }
 
     /**
@@ -47,37 +126,89 @@ public class ProjectService {
      */
     @Transactional
     public void deleteProject(Project project) {
+        this.projectCountersService.projectDeleted(project.getId());
         this.projectRepository.delete(project);
+        this.projectVisibilityIndex.projectDeleted(project.getId());
+        this.projectAccessService.invalidateProject(project.getId());
+        this.taskSearchService.projectDeleted(project.getId());
     }
 
     /**
-     * This method saves a Project among the ones shared with a specific User.
-     * @param project the Project to share with the User
-     * @param user the User with to share the Project to
-     * @return the shared Project
+     * This method updates the name and the description of a Project in the DB, as edited by its owner.
+     * The edit is based on the version of the Project the owner has seen: if the Project has been changed since then,
+     * the edit is rejected rather than overwriting the concurrent change, and it is not retried.
+     * @param projectId the id of the Project to update
+     * @param version the version of the Project the edit is based on
+     * @param name the new name of the Project
+     * @param description the new description of the Project
+     * @return the updated Project, or null if no Project with the passed ID could be found in the DB
+     * @throws ObjectOptimisticLockingFailureException if the Project has been changed since the passed version
      */
     @Transactional
-    public Project shareProjectWithUser(Project project, User user) {
-        project.addMember(user);
+    public Project updateProject(long projectId, Long version, String name, String description) {
+        Project project = this.projectRepository.findById(projectId).orElse(null);
+        if (project == null)
+            return null;
+        if (!Objects.equals(project.getVersion(), version))
+            throw new ObjectOptimisticLockingFailureException(Project.class, projectId);
+        project.setName(name);
+        project.setDescription(description);
         return this.projectRepository.save(project);
     }
-    
+
     /**
-     * This method retrieves all the Projects from the DB owned by the given User.
-     * @return a List with all the retrieved Credentials
+     * This method saves a Project among the ones shared with a specific User, unless it is shared already.
+     * It is retried if a concurrent update of the Project wins the race, that may have shared it with the same User.
+     * @param projectId the id of the Project to share with the User
+     * @param userId the id of the User to share the Project with, that must exist
+     * @return the shared Project, or null if no Project with the passed ID could be found in the DB
      */
+    @Retryable(interceptor = OptimisticLockRetryConfiguration.INTERCEPTOR)
     @Transactional
-    public List<Project> retrieveProjectsOwnedBy(User user) {
-    	return this.projectRepository.findByOwner(user);
+    public Project shareProjectWithUser(long projectId, long userId) {
+        Project project = this.projectRepository.findWithMembersById(projectId).orElse(null);
+        if (project == null || project.getMembers().stream().anyMatch(member -> member.getId() == userId))
+            return project;
+        project.addMember(this.entityManager.getReference(User.class, userId));
+        Project saved = this.projectRepository.save(project);
+        this.projectVisibilityIndex.memberAdded(projectId, userId);
+        this.projectAccessService.invalidate(userId, projectId);
+        return saved;
     }
     
     /**
-     * This method retrieves all Projects from the DB shared with the given User.
-     * @return a List with all the retrieved Credentials
+     * This method retrieves a page of summaries of the Projects from the DB owned by the given User.
+     * Projects are sorted by id, and the page starts right after the Project the passed cursor points to.
+     * @param userId the id of the owner of the Projects
+     * @param cursor the cursor of the page to retrieve, or null to retrieve the first page
+     * @return a KeysetPage with the retrieved ProjectSummaries
      */
-    @Transactional
-    public List<Project> retrieveProjectsSharedWith(User user) {
-    	return this.projectRepository.findByMembers(user);
-    } 
-    
+    @Transactional(readOnly = true)
+    public KeysetPage<ProjectSummary> retrieveProjectsOwnedBy(long userId, String cursor) {
+        List<ProjectSummary> projects = this.projectRepository.findSummariesByOwner(userId,
+                afterId(cursor), PageRequest.of(0, PROJECTS_PAGE_SIZE + 1));
+        return KeysetPage.of(projects, PROJECTS_PAGE_SIZE, project -> new Object[] { project.getId() });
+    }
+
+    /**
+     * This method retrieves a page of summaries of the Projects from the DB shared with the given User.
+     * Projects are sorted by id, and the page starts right after the Project the passed cursor points to.
+     * @param userId the id of the User the Projects are shared with
+     * @param cursor the cursor of the page to retrieve, or null to retrieve the first page
+     * @return a KeysetPage with the retrieved ProjectSummaries
+     */
+    @Transactional(readOnly = true)
+    public KeysetPage<ProjectSummary> retrieveProjectsSharedWith(long userId, String cursor) {
+        List<ProjectSummary> projects = this.projectRepository.findSummariesByMember(userId,
+                afterId(cursor), PageRequest.of(0, PROJECTS_PAGE_SIZE + 1));
+        return KeysetPage.of(projects, PROJECTS_PAGE_SIZE, project -> new Object[] { project.getId() });
+    }
+
+    /**
+     * Decode the id a listing page must start after; a missing or malformed cursor means the first page.
+     */
+    private long afterId(String cursor) {
+        Long afterId = KeysetPage.decodeIdCursor(cursor);
+        return afterId == null ? 0L : afterId;
+    }
 }
@@ -1,11 +1,17 @@
 package it.uniroma3.siw.taskmanager.service;
 
+import java.util.List;
 import java.util.Optional;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import it.uniroma3.siw.taskmanager.index.TaskTagIndex;
+import it.uniroma3.siw.taskmanager.model.Project;
 import it.uniroma3.siw.taskmanager.model.Tag;
 import it.uniroma3.siw.taskmanager.repository.TagRepository;
 
@@ -15,15 +21,46 @@ public class TagService {
 	@Autowired
 	TagRepository tagRepository;
 	
+	@PersistenceContext
+	EntityManager entityManager;
+	
+	@Autowired
+	TaskTagIndex taskTagIndex;
+	
 	@Transactional
 	public Tag saveTag(Tag tag) {
 		return this.tagRepository.save(tag);
 	}
 	
+	/**
+	 * This method saves a new Tag of a Project in the DB.
+	 * The Project is only referenced by id: neither it nor its other Tags are loaded.
+	 * @param projectId the id of the Project to add the Tag to, that must exist
+	 * @param tag the new Tag to save into the DB
+	 * @return the saved Tag
+	 */
 	@Transactional
+	public Tag createTag(long projectId, Tag tag) {
+		tag.setProject(this.entityManager.getReference(Project.class, projectId));
+		Tag saved = this.tagRepository.save(tag);
+		this.taskTagIndex.tagCreated(saved.getId(), saved.getName(), projectId);
+		return saved;
+	}
+	
+	@Transactional(readOnly = true)
 	public Tag getTag(Long id) {
 		Optional<Tag> tag = this.tagRepository.findById(id);
 		return tag.orElse(null);
 	}
 
+	/**
+	 * This method retrieves the Tags of a Project from the DB.
+	 * @param projectId the id of the Project to retrieve the Tags of
+	 * @return a List with the retrieved Tags
+	 */
+	@Transactional(readOnly = true)
+	public List<Tag> getProjectTags(Long projectId) {
+		return this.tagRepository.findByProjectId(projectId);
+	}
+
 }
@@ -0,0 +1,115 @@
+package it.uniroma3.siw.taskmanager.service;
+
+import it.uniroma3.siw.taskmanager.model.view.ExportedTask;
+import it.uniroma3.siw.taskmanager.model.view.CommentView;
+import it.uniroma3.siw.taskmanager.repository.CommentRepository;
+import it.uniroma3.siw.taskmanager.repository.TaskRepository;
+import it.uniroma3.siw.taskmanager.repository.TaskViewsRepositoryImpl;
+import it.uniroma3.siw.taskmanager.service.exports.ExportFormat;
+import it.uniroma3.siw.taskmanager.service.exports.TaskExportWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * The TaskExportService exports the Tasks of a set of Projects, with their Tags and Comments, to a file.
+ * The Tasks are read from the DB as ExportedTask views and written BATCH_SIZE at a time: each batch is a keyset page
+ * of the Tasks of a Project, read with its Tags and Comments (one query each) in its own short read-only transaction,
+ * and then sent to the client and forgotten.
+ * No DB connection is held while a batch is sent, so slow downloads do not drain the connection pool,
+ * and no entity is loaded into the persistence context, so memory use does not depend on the number of exported Tasks.
+ */
+@Service
+public class TaskExportService {
+
+    /**
+     * Number of Tasks read and written together
+     */
+    public static final int BATCH_SIZE = TaskViewsRepositoryImpl.FETCH_SIZE;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    protected TaskRepository taskRepository;
+
+    @Autowired
+    protected CommentRepository commentRepository;
+
+    public TaskExportService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * This method writes the Tasks of a set of Projects to a stream, sorted by Project and id.
+     * Each batch is read in its own transaction, so the export is not a snapshot: every Task is written as it was
+     * when its batch was read, so a Task changed while the export runs may be written before or after the change.
+     * @param projectIds the ids of the Projects to export
+     * @param format the format of the export
+     * @param output the stream to write the export to; it is flushed after every batch, and left open
+     * @throws IOException if the stream cannot be written
+     */
+    public void exportTasks(Collection<Long> projectIds, ExportFormat format, OutputStream output) throws IOException {
+        try (TaskExportWriter writer = format.open(output)) {
+            // the client gets the beginning of the file before the first batch is read
+            writer.flush();
+            for (Long projectId : new TreeSet<>(projectIds)) {
+                Batch batch;
+                long afterId = 0;
+                do {
+                    long lastId = afterId;
+                    batch = this.transactionTemplate.execute(status -> this.readBatch(projectId, lastId));
+                    if (batch.tasks.isEmpty())
+                        break;
+                    for (ExportedTask task : batch.tasks)
+                        writer.write(task, batch.tags.getOrDefault(task.getId(), List.of()),
+                                batch.comments.getOrDefault(task.getId(), List.of()));
+                    writer.flush();
+                    afterId = batch.tasks.get(batch.tasks.size() - 1).getId();
+                } while (batch.tasks.size() == BATCH_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Read the batch of the Tasks of a Project following the passed id, with their Tags and Comments.
+     */
+    private Batch readBatch(Long projectId, long afterId) {
+        Batch batch = new Batch(this.taskRepository.findExportPage(projectId, afterId, BATCH_SIZE));
+        if (batch.tasks.isEmpty())
+            return batch;
+        List<Long> ids = batch.tasks.stream().map(ExportedTask::getId).collect(Collectors.toList());
+        for (Object[] row : this.taskRepository.findTagNames(ids))
+            batch.tags.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add((String) row[1]);
+        for (Object[] row : this.commentRepository.findByTaskIds(ids))
+            batch.comments.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add(new CommentView((Long) row[1],
+                    (String) row[2], (LocalDateTime) row[3], (String) row[4], (String) row[5]));
+        return batch;
+    }
+
+    /**
+     * A batch of Tasks, with the names of the Tags and the Comments of each one
+     */
+    private static final class Batch {
+
+        private final List<ExportedTask> tasks;
+        private final Map<Long, List<String>> tags = new HashMap<>();
+        private final Map<Long, List<CommentView>> comments = new HashMap<>();
+
+        private Batch(List<ExportedTask> tasks) {
+            this.tasks = tasks;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package it.uniroma3.siw.taskmanager.service;
+
+import it.uniroma3.siw.taskmanager.model.Project;
+import it.uniroma3.siw.taskmanager.model.Task;
+import it.uniroma3.siw.taskmanager.service.imports.ImportProgress;
+import it.uniroma3.siw.taskmanager.service.imports.InvalidRecordException;
+import it.uniroma3.siw.taskmanager.service.imports.TaskRecord;
+import it.uniroma3.siw.taskmanager.service.imports.TaskRecordReader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The TaskImportService imports Tasks into a Project from a file, e.g. when migrating from another tool.
+ * The file is read as a stream and its Tasks are committed in chunks of CHUNK_SIZE, each in its own transaction:
+ * memory use does not depend on the size of the file, and the Tasks of a chunk reach the DB in JDBC batches.
+ * If the import stops half way, the chunks committed so far are kept.
+ */
+@Service
+public class TaskImportService {
+
+    /**
+     * Number of Tasks committed together; a multiple of the JDBC batch size
+     */
+    public static final int CHUNK_SIZE = 500;
+
+    /**
+     * Imports that are running, by the id of their Project
+     */
+    private final Map<Long, ImportProgress> running = new ConcurrentHashMap<>();
+
+    private final TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    protected EntityManager entityManager;
+
+    @Autowired
+    protected ProjectCountersService projectCountersService;
+
+    @Autowired
+    protected TaskSearchService taskSearchService;
+
+    public TaskImportService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * This method retrieves the progress of the import running on a Project.
+     * @param projectId the id of the Project
+     * @return the ImportProgress of the running import, or null if there is none
+     */
+    public ImportProgress getRunningImport(long projectId) {
+        return this.running.get(projectId);
+    }
+
+    /**
+     * This method imports into a Project all the Tasks read from a file, and closes the file.
+     * Invalid records are skipped and reported; an I/O failure stops the import and is reported too.
+     * Only one import at a time can run on the same Project.
+     * @param projectId the id of the Project, that must exist
+     * @param reader the reader of the records of the file
+     * @return the ImportProgress reporting the outcome of the import,
+     *         or null if another import is already running on the Project
+     */
+    public ImportProgress importTasks(long projectId, TaskRecordReader reader) {
+        ImportProgress progress = new ImportProgress();
+        if (this.running.putIfAbsent(projectId, progress) != null)
+            return null;
+        try (reader) {
+            boolean more = true;
+            while (more)
+                more = this.transactionTemplate.execute(status -> this.importChunk(projectId, reader, progress));
+        } catch (IOException | UncheckedIOException e) {
+            progress.failed(e.getMessage());
+        } finally {
+            this.running.remove(projectId);
+        }
+        return progress;
+    }
+
+    /**
+     * Insert the next CHUNK_SIZE valid Tasks of a file; return whether the file has more records.
+     */
+    private boolean importChunk(long projectId, TaskRecordReader reader, ImportProgress progress) {
+        Project project = this.entityManager.getReference(Project.class, projectId);
+        int tasks = 0;
+        int completed = 0;
+        boolean more = true;
+        while (tasks < CHUNK_SIZE) {
+            TaskRecord record;
+            try {
+                record = reader.next();
+            } catch (InvalidRecordException e) {
+                progress.rejected(e.getMessage());
+                continue;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (record == null) {
+                more = false;
+                break;
+            }
+            String error = validate(record);
+            if (error != null) {
+                progress.rejected("line " + record.getLine() + ": " + error);
+                continue;
+            }
+            Task task = new Task(record.getName().trim(), record.getDescription(), record.isCompleted());
+            task.setProject(project);
+            this.entityManager.persist(task);
+            this.taskSearchService.taskAdded(task, projectId);
+            tasks++;
+            if (task.isCompleted())
+                completed++;
+        }
+        this.projectCountersService.tasksAdded(projectId, tasks, completed);
+        // the inserted Tasks are not needed any more: keep the persistence context as small as a single chunk
+        this.entityManager.flush();
+        this.entityManager.clear();
+        progress.imported(tasks);
+        return more;
+    }
+
+    /**
+     * Check a record against the constraints of a Task; return what is wrong with it, or null.
+     */
+    private static String validate(TaskRecord record) {
+        if (record.getName() == null || record.getName().isBlank())
+            return "the name is missing";
+        if (record.getName().trim().length() > 100)
+            return "the name is longer than 100 characters";
+        if (record.getDescription() != null && record.getDescription().length() > 255)
+            return "the description is longer than 255 characters";
+        return null;
+    }
+}
@@ -0,0 +1,231 @@
+package it.uniroma3.siw.taskmanager.service;
+
+import it.uniroma3.siw.taskmanager.index.ProjectTaskIndex;
+import it.uniroma3.siw.taskmanager.index.ProjectVisibilityIndex;
+import it.uniroma3.siw.taskmanager.index.TaskTagIndex;
+import it.uniroma3.siw.taskmanager.index.TaskTextIndex;
+import it.uniroma3.siw.taskmanager.model.Tag;
+import it.uniroma3.siw.taskmanager.model.Task;
+import it.uniroma3.siw.taskmanager.repository.TaskRepository;
+import org.hibernate.Hibernate;
+import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The TaskSearchService handles full-text search of Tasks and their filtering by Tags.
+ * Queries are answered by the in-memory TaskTextIndex and TaskTagIndex and filtered by the Projects the User can see,
+ * so the DB is only hit to load the (few) Tasks that are shown.
+ * The other services notify this one of every change to the indexed Tasks.
+ */
+@Service
+public class TaskSearchService {
+
+    /**
+     * Maximum number of Tasks returned by a search; the most recent Tasks come first
+     */
+    public static final int MAX_RESULTS = 50;
+
+    @Autowired
+    protected TaskTextIndex taskTextIndex;
+
+    @Autowired
+    protected TaskTagIndex taskTagIndex;
+
+    @Autowired
+    protected ProjectTaskIndex projectTaskIndex;
+
+    @Autowired
+    protected ProjectVisibilityIndex projectVisibilityIndex;
+
+    @Autowired
+    protected TaskRepository taskRepository;
+
+    /**
+     * This method searches the Tasks, among the ones the passed User can see, containing all the terms of a query
+     * in their name, description or comments.
+     * @param userId the id of the User performing the search
+     * @param query the query text
+     * @return a List with at most MAX_RESULTS matching Tasks, sorted from the most recent
+     */
+    @Transactional(readOnly = true)
+    public List<Task> search(long userId, String query) {
+        Roaring64NavigableMap matches = this.taskTextIndex.search(query);
+        if (matches.isEmpty())
+            return new ArrayList<>();
+        matches.and(this.visibleTasks(userId));
+        return this.loadMostRecent(matches);
+    }
+
+    /**
+     * This method retrieves the Tasks of a Project that have all the passed Tags and none of the excluded ones.
+     * The caller must have already checked that the User can see the Project.
+     * @param projectId the id of the Project
+     * @param withTags the ids of the Tags the Tasks must have
+     * @param withoutTags the ids of the Tags the Tasks must not have
+     * @return a List with at most MAX_RESULTS matching Tasks, sorted from the most recent
+     */
+    @Transactional(readOnly = true)
+    public List<Task> findTaggedInProject(long projectId, Collection<Long> withTags, Collection<Long> withoutTags) {
+        Roaring64NavigableMap matches = this.taskTagIndex.filter(this.projectTaskIndex.tasksOf(projectId),
+                tagSets(withTags, Roaring64NavigableMap::bitmapOf), tagSets(withoutTags, Roaring64NavigableMap::bitmapOf));
+        return this.loadMostRecent(matches);
+    }
+
+    /**
+     * This method retrieves the Tasks, among the ones the passed User can see, that have a Tag with each
+     * of the passed names and no Tag with any of the excluded names. Tag names are compared ignoring case,
+     * so the same filter applies to the Tags of all the Projects.
+     * @param userId the id of the User performing the search
+     * @param withTags the names of the Tags the Tasks must have
+     * @param withoutTags the names of the Tags the Tasks must not have
+     * @return a List with at most MAX_RESULTS matching Tasks, sorted from the most recent
+     */
+    @Transactional(readOnly = true)
+    public List<Task> findTagged(long userId, Collection<String> withTags, Collection<String> withoutTags) {
+        Roaring64NavigableMap matches = this.taskTagIndex.filter(this.visibleTasks(userId),
+                tagSets(withTags, this.taskTagIndex::tagsNamed), tagSets(withoutTags, this.taskTagIndex::tagsNamed));
+        return this.loadMostRecent(matches);
+    }
+
+    /**
+     * This method checks whether the indexes answering the searches hold all the Tasks and Projects in the DB.
+     * Until they do, e.g. because the DB could not be read at startup, search results may miss some Tasks.
+     * @return true if the search results are complete
+     */
+    public boolean isComplete() {
+        return this.taskTextIndex.isWarm() && this.taskTagIndex.isWarm() && this.projectTaskIndex.isWarm()
+                && this.projectVisibilityIndex.isWarm();
+    }
+
+    /**
+     * This method indexes a Task that has just been added to a Project.
+     * @param task the added Task
+     * @param projectId the id of the Project of the Task
+     */
+    public void taskAdded(Task task, long projectId) {
+        this.projectTaskIndex.taskAdded(task.getId(), projectId);
+        this.taskSaved(task);
+    }
+
+    /**
+     * This method indexes again the name and the description of an updated Task, and its Tags if they are loaded.
+     * @param task the updated Task
+     */
+    public void taskSaved(Task task) {
+        this.taskTextIndex.taskSaved(task.getId(), task.getName(), task.getDescription());
+        if (Hibernate.isInitialized(task.getTags()))
+            this.taskTagIndex.tagsSet(task.getId(), task.getTags().stream().mapToLong(Tag::getId).toArray());
+    }
+
+    /**
+     * This method indexes a Tag that has just been assigned to a Task.
+     * @param taskId the id of the Task
+     * @param tagId the id of the assigned Tag
+     */
+    public void tagAssigned(long taskId, long tagId) {
+        this.taskTagIndex.tagAssigned(taskId, tagId);
+    }
+
+    /**
+     * This method indexes a Tag that has just been assigned to a set of Tasks.
+     * @param taskIds the ids of the Tasks
+     * @param tagId the id of the assigned Tag
+     */
+    public void tagAssigned(Collection<Long> taskIds, long tagId) {
+        this.taskTagIndex.tagAssigned(toBitmap(taskIds), tagId);
+    }
+
+    /**
+     * This method indexes a comment that has just been added to a Task.
+     * @param taskId the id of the commented Task
+     * @param comment the added comment
+     */
+    public void commentAdded(long taskId, String comment) {
+        this.taskTextIndex.commentAdded(taskId, comment);
+    }
+
+    /**
+     * This method removes a deleted Task from the index.
+     * @param taskId the id of the deleted Task
+     */
+    public void taskDeleted(long taskId) {
+        this.taskTextIndex.taskRemoved(taskId);
+        this.taskTagIndex.taskRemoved(taskId);
+        this.projectTaskIndex.taskRemoved(taskId);
+    }
+
+    /**
+     * This method removes a set of deleted Tasks from the index.
+     * @param taskIds the ids of the deleted Tasks
+     */
+    public void tasksDeleted(Collection<Long> taskIds) {
+        Roaring64NavigableMap tasks = toBitmap(taskIds);
+        this.taskTextIndex.tasksRemoved(tasks);
+        this.taskTagIndex.tasksRemoved(tasks);
+        this.projectTaskIndex.tasksRemoved(tasks);
+    }
+
+    /**
+     * This method removes from the index all the Tasks of a deleted Project.
+     * @param projectId the id of the deleted Project
+     */
+    public void projectDeleted(long projectId) {
+        Roaring64NavigableMap tasks = this.projectTaskIndex.tasksOf(projectId);
+        this.taskTextIndex.tasksRemoved(tasks);
+        this.taskTagIndex.projectRemoved(projectId, tasks);
+        this.projectTaskIndex.projectRemoved(projectId);
+    }
+
+    /**
+     * @return a new bitmap with the ids of the Tasks of all the Projects the User can see
+     */
+    private Roaring64NavigableMap visibleTasks(long userId) {
+        return this.projectTaskIndex.tasksOf(this.projectVisibilityIndex.visibleProjects(userId));
+    }
+
+    /**
+     * Load from the DB the MAX_RESULTS Tasks with the highest ids among the passed ones, from the most recent.
+     */
+    private List<Task> loadMostRecent(Roaring64NavigableMap taskIds) {
+        List<Long> ids = new ArrayList<>();
+        LongIterator iterator = taskIds.getReverseLongIterator();
+        while (iterator.hasNext() && ids.size() < MAX_RESULTS)
+            ids.add(iterator.next());
+
+        List<Task> tasks = new ArrayList<>();
+        if (ids.isEmpty())
+            return tasks;
+        this.taskRepository.findAllById(ids).forEach(tasks::add);
+        tasks.sort(Comparator.comparing(Task::getId).reversed());
+        return tasks;
+    }
+
+    /**
+     * Turn a collection of ids into a bitmap.
+     */
+    private static Roaring64NavigableMap toBitmap(Collection<Long> ids) {
+        Roaring64NavigableMap bitmap = new Roaring64NavigableMap();
+        ids.forEach(bitmap::addLong);
+        return bitmap;
+    }
+
+    /**
+     * Turn each Tag of a filter into the set of Tag ids it stands for.
+     */
+    private static <T> List<Roaring64NavigableMap> tagSets(Collection<T> tags, Function<T, Roaring64NavigableMap> toTagIds) {
+        List<Roaring64NavigableMap> sets = new ArrayList<>();
+        if (tags != null)
+            for (T tag : tags)
+                sets.add(toTagIds.apply(tag));
+        return sets;
+    }
+}
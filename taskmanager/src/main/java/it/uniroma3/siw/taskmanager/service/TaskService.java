@@ -1,11 +1,30 @@
 package it.uniroma3.siw.taskmanager.service;
 
+import it.uniroma3.siw.taskmanager.configuration.OptimisticLockRetryConfiguration;
+import it.uniroma3.siw.taskmanager.model.Comment;
+import it.uniroma3.siw.taskmanager.model.Project;
+import it.uniroma3.siw.taskmanager.model.Tag;
 import it.uniroma3.siw.taskmanager.model.Task;
+import it.uniroma3.siw.taskmanager.model.User;
+import it.uniroma3.siw.taskmanager.model.view.AssignedTask;
+import it.uniroma3.siw.taskmanager.model.view.CommentView;
+import it.uniroma3.siw.taskmanager.model.view.TaskSummary;
+import it.uniroma3.siw.taskmanager.repository.CommentRepository;
 import it.uniroma3.siw.taskmanager.repository.TaskRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 /**
@@ -14,48 +33,362 @@ import java.util.Optional;
 @Service
 public class TaskService {
 
+    /**
+     * Number of Tasks shown in a single page of the assigned tasks inbox
+     */
+    public static final int INBOX_PAGE_SIZE = 20;
+
+    /**
+     * Number of Comments shown in a single page of the task view
+     */
+    public static final int COMMENTS_PAGE_SIZE = 20;
+
+    /**
+     * Timestamp before the first page of the listings sorted from the newest: later than any real one
+     */
+    private static final LocalDateTime NEWEST_FIRST_START = LocalDateTime.of(9999, 12, 31, 0, 0);
+
     @Autowired
     protected TaskRepository taskRepository;
 
+    @Autowired
+    protected CommentRepository commentRepository;
+
+    @PersistenceContext
+    protected EntityManager entityManager;
+
+    @Autowired
+    protected TaskSearchService taskSearchService;
+
+    @Autowired
+    protected ProjectCountersService projectCountersService;
+
     /**
      * This method retrieves a Task from the DB based on its ID.
      * @param id the id of the Task to retrieve from the DB
      * @return the retrieved Task, or null if no Task with the passed ID could be found in the DB
      */
-    @Transactional
+    @Transactional(readOnly = true)
     public Task getTask(long id) {
         Optional<Task> result = this.taskRepository.findById(id);
         return result.orElse(null);
     }
 
     /**
-     * This method saves a Task in the DB.
-     * @param task the Task to save into the DB
+     * This method retrieves the Tasks of a Project from the DB, by id.
+     * They are read as TaskSummary views, so that no Task entity is loaded for the project view, however big the Project.
+     * @param projectId the id of the Project
+     * @return the List of the summaries of the Tasks of the Project
+     */
+    @Transactional(readOnly = true)
+    public List<TaskSummary> getProjectTasks(long projectId) {
+        return this.taskRepository.findSummariesByProjectId(projectId);
+    }
+
+    /**
+     * This method retrieves a Task from the DB based on its ID, together with its Tags.
+     * @param id the id of the Task to retrieve from the DB
+     * @return the retrieved Task, or null if no Task with the passed ID could be found in the DB
+     */
+    @Transactional(readOnly = true)
+    public Task getTaskDetail(long id) {
+        Optional<Task> result = this.taskRepository.findDetailById(id);
+        return result.orElse(null);
+    }
+
+    /**
+     * This method retrieves a page of the Comments of a Task from the DB, from the newest.
+     * The page starts right after the Comment the passed cursor points to.
+     * @param taskId the id of the Task to retrieve the comments of
+     * @param cursor the cursor of the page to retrieve, or null to retrieve the first page
+     * @return a KeysetPage with the retrieved CommentViews
+     */
+    @Transactional(readOnly = true)
+    public KeysetPage<CommentView> getComments(long taskId, String cursor) {
+        SeekPosition before = SeekPosition.decode(cursor);
+        List<CommentView> comments = this.commentRepository.findByTaskId(taskId, before.timestamp, before.id,
+                PageRequest.of(0, COMMENTS_PAGE_SIZE + 1));
+        return KeysetPage.of(comments, COMMENTS_PAGE_SIZE, comment -> SeekPosition.keys(comment.getId(), comment.getCreationTimestamp()));
+    }
+
+    /**
+     * This method adds a Comment to a Task in the DB.
+     * Task and author are only referenced by id, so the Comment is stored with a single INSERT.
+     * @param taskId the id of the Task to comment, that must exist
+     * @param authorId the id of the User writing the Comment
+     * @param text the text of the Comment
+     * @return the saved Comment
+     */
+    @Transactional
+    public Comment addComment(long taskId, long authorId, String text) {
+        Comment comment = new Comment(this.entityManager.getReference(Task.class, taskId),
+                this.entityManager.getReference(User.class, authorId), text);
+        Comment saved = this.commentRepository.save(comment);
+        this.taskSearchService.commentAdded(taskId, text);
+        return saved;
+    }
+
+    /**
+     * This method retrieves a page of the Tasks assigned to a User, from the most recently updated.
+     * The page starts right after the Task the passed cursor points to.
+     * @param userId the id of the User the Tasks are assigned to
+     * @param completed if not null, only the Tasks with this completed flag are retrieved
+     * @param projectId if not null, only the Tasks of the Project with this id are retrieved
+     * @param cursor the cursor of the page to retrieve, or null to retrieve the first page
+     * @return a KeysetPage with the retrieved AssignedTasks
+     */
+    @Transactional(readOnly = true)
+    public KeysetPage<AssignedTask> retrieveTasksAssignedTo(long userId, Boolean completed, Long projectId,
+                                                            String cursor) {
+        SeekPosition before = SeekPosition.decode(cursor);
+        PageRequest page = PageRequest.of(0, INBOX_PAGE_SIZE + 1);
+        List<AssignedTask> tasks;
+        if (projectId != null) {
+            Collection<Boolean> flags = completed == null ? List.of(false, true) : List.of(completed);
+            tasks = this.taskRepository.findAssignedInProject(userId, projectId, flags, before.timestamp, before.id, page);
+        } else if (completed != null)
+            tasks = this.taskRepository.findAssignedByCompleted(userId, completed, before.timestamp, before.id, page);
+        else
+            // no predicate on the completed flag at all, so that the seek runs on the index without it
+            tasks = this.taskRepository.findAssigned(userId, before.timestamp, before.id, page);
+        return KeysetPage.of(tasks, INBOX_PAGE_SIZE, task -> SeekPosition.keys(task.getId(), task.getLastUpdateTimestamp()));
+    }
+
+    /**
+     * This method updates the fields of a Task in the DB, as edited by a User.
+     * The edit is based on the version of the Task the User has seen: if the Task has been changed since then,
+     * the edit is rejected rather than overwriting the concurrent change, and it is not retried.
+     * @param taskId the id of the Task to update
+     * @param version the version of the Task the edit is based on
+     * @param name the new name of the Task
+     * @param description the new description of the Task
+     * @param completed the new completed flag of the Task
+     * @return the updated Task, or null if no Task with the passed ID could be found in the DB
+     * @throws ObjectOptimisticLockingFailureException if the Task has been changed since the passed version
+     */
+    @Transactional
+    public Task updateTask(long taskId, Long version, String name, String description, boolean completed) {
+        Task task = this.taskRepository.findById(taskId).orElse(null);
+        if (task == null)
+            return null;
+        if (!Objects.equals(task.getVersion(), version))
+            throw new ObjectOptimisticLockingFailureException(Task.class, taskId);
+        boolean wasCompleted = task.isCompleted();
+        task.setName(name);
+        task.setDescription(description);
+        task.setCompleted(completed);
+        Task saved = this.taskRepository.save(task);
+        this.projectCountersService.taskChanged(taskId, wasCompleted, saved.getAssignedUser() != null, saved);
+        this.taskSearchService.taskSaved(saved);
+        return saved;
+    }
+
+    /**
+     * This method saves a new Task of a Project in the DB.
+     * The Project is only referenced by id: neither it nor its other Tasks are loaded,
+     * so the cost does not depend on the size of the Project.
+     * @param projectId the id of the Project to add the Task to, that must exist
+     * @param task the new Task to save into the DB
      * @return the saved Task
      */
     @Transactional
-    public Task saveTask(Task task) {
-        return this.taskRepository.save(task);
+    public Task createTask(long projectId, Task task) {
+        task.setProject(this.entityManager.getReference(Project.class, projectId));
+        Task saved = this.taskRepository.save(task);
+        this.projectCountersService.taskAdded(projectId, saved);
+        this.taskSearchService.taskAdded(saved, projectId);
+        return saved;
+    }
+
+    /**
+     * This method assigns a Task to a User in the DB.
+     * It is retried if a concurrent update of the Task wins the race: assigning twice has the same effect.
+     * @param taskId the id of the Task to assign
+     * @param userId the id of the User to assign the Task to, that must exist
+     * @return the assigned Task, or null if no Task with the passed ID could be found in the DB
+     */
+    @Retryable(interceptor = OptimisticLockRetryConfiguration.INTERCEPTOR)
+    @Transactional
+    public Task assignTask(long taskId, long userId) {
+        Task task = this.taskRepository.findById(taskId).orElse(null);
+        if (task == null)
+            return null;
+        boolean wasAssigned = task.getAssignedUser() != null;
+        // the Task owns the association: User.tasksToDo is its inverse side and needs no update
+        task.setAssignedUser(this.entityManager.getReference(User.class, userId));
+        Task saved = this.taskRepository.save(task);
+        this.projectCountersService.taskChanged(taskId, saved.isCompleted(), wasAssigned, saved);
+        return saved;
+    }
+
+    /**
+     * This method assigns a Tag to a Task in the DB, unless it is assigned already.
+     * It is retried if a concurrent update of the Task wins the race, that may have assigned the same Tag.
+     * @param taskId the id of the Task to assign the Tag to
+     * @param tagId the id of the Tag to assign, that must exist
+     * @return the Task, or null if no Task with the passed ID could be found in the DB
+     */
+    @Retryable(interceptor = OptimisticLockRetryConfiguration.INTERCEPTOR)
+    @Transactional
+    public Task addTag(long taskId, long tagId) {
+        Task task = this.taskRepository.findDetailById(taskId).orElse(null);
+        if (task == null || task.getTags().stream().anyMatch(tag -> tag.getId() == tagId))
+            return task;
+        task.getTags().add(this.entityManager.getReference(Tag.class, tagId));
+        Task saved = this.taskRepository.save(task);
+        this.taskSearchService.tagAssigned(taskId, tagId);
+        return saved;
     }
 
     /**
      * This method sets a Task in the DB as completed.
-     * @param task the Task to set as completed
-     * @return the task, after it has been set as completed and flushed in to the DB
+     * It is retried if a concurrent update of the Task wins the race: completing twice has the same effect.
+     * @param taskId the id of the Task to set as completed
+     * @return the task, after it has been set as completed, or null if no Task with the passed ID could be found in the DB
      */
+    @Retryable(interceptor = OptimisticLockRetryConfiguration.INTERCEPTOR)
     @Transactional
-    public Task setCompleted(Task task) {
+    public Task setCompleted(long taskId) {
+        Task task = this.taskRepository.findById(taskId).orElse(null);
+        if (task == null || task.isCompleted())
+            return task;
         task.setCompleted(true);
-        return this.taskRepository.save(task);
+        Task saved = this.taskRepository.save(task);
+        this.projectCountersService.taskChanged(taskId, false, saved.getAssignedUser() != null, saved);
+        return saved;
     }
 
-
     /**
      * This method deletes a Task from the DB.
      * @param task the Task to delete from the DB
      */
     @Transactional
     public void deleteTask(Task task) {
-        this.taskRepository.delete(task);
+        Task current = this.taskRepository.findById(task.getId()).orElse(null);
+        if (current == null)
+            return;
+        this.projectCountersService.taskDeleted(current);
+        this.taskRepository.delete(current);
+        this.taskSearchService.taskDeleted(current.getId());
+    }
+
+    /**
+     * This method sets as completed a set of Tasks of a Project, with a single update.
+     * @param projectId the id of the Project
+     * @param taskIds the ids of the Tasks; the ones that do not belong to the Project are ignored
+     * @return the number of Tasks that have been completed
+     */
+    @Transactional
+    public int completeTasks(long projectId, Collection<Long> taskIds) {
+        List<Long> ids = this.idsInProject(projectId, taskIds);
+        if (ids.isEmpty())
+            return 0;
+        int completed = this.taskRepository.completeAll(ids, LocalDateTime.now());
+        this.projectCountersService.tasksChanged(projectId, completed, 0);
+        return completed;
+    }
+
+    /**
+     * This method assigns a set of Tasks of a Project to a User, with two updates:
+     * one for the unassigned Tasks, one for the Tasks assigned to someone else.
+     * @param projectId the id of the Project
+     * @param taskIds the ids of the Tasks; the ones that do not belong to the Project are ignored
+     * @param userId the id of the User to assign the Tasks to, that must exist
+     * @return the number of Tasks that have been assigned to the User
+     */
+    @Transactional
+    public int assignTasks(long projectId, Collection<Long> taskIds, long userId) {
+        List<Long> ids = this.idsInProject(projectId, taskIds);
+        if (ids.isEmpty())
+            return 0;
+        LocalDateTime now = LocalDateTime.now();
+        int assigned = this.taskRepository.assignAllUnassigned(ids, userId, now);
+        int reassigned = this.taskRepository.reassignAll(ids, userId, now);
+        this.projectCountersService.tasksChanged(projectId, 0, assigned);
+        return assigned + reassigned;
+    }
+
+    /**
+     * This method assigns a Tag of a Project to a set of its Tasks, with a single insert of the missing assignments.
+     * @param projectId the id of the Project
+     * @param taskIds the ids of the Tasks; the ones that do not belong to the Project are ignored
+     * @param tagId the id of the Tag to assign
+     * @return the number of Tasks the Tag has been assigned to, 0 if the Tag does not belong to the Project
+     */
+    @Transactional
+    public int tagTasks(long projectId, Collection<Long> taskIds, long tagId) {
+        Tag tag = this.entityManager.find(Tag.class, tagId);
+        if (tag == null || tag.getProject().getId() != projectId)
+            return 0;
+        List<Long> ids = this.idsInProject(projectId, taskIds);
+        if (ids.isEmpty())
+            return 0;
+        this.taskRepository.touchAllUntagged(ids, tagId, LocalDateTime.now());
+        int tagged = this.taskRepository.tagAll(ids, tagId);
+        this.taskSearchService.tagAssigned(ids, tagId);
+        return tagged;
+    }
+
+    /**
+     * This method deletes a set of Tasks of a Project from the DB, with a handful of set-based statements.
+     * @param projectId the id of the Project
+     * @param taskIds the ids of the Tasks; the ones that do not belong to the Project are ignored
+     * @return the number of deleted Tasks
+     */
+    @Transactional
+    public int deleteTasks(long projectId, Collection<Long> taskIds) {
+        List<Long> ids = this.idsInProject(projectId, taskIds);
+        if (ids.isEmpty())
+            return 0;
+        this.projectCountersService.tasksDeleted(projectId, ids);
+        this.taskRepository.untagAll(ids);
+        int deleted = this.taskRepository.deleteAllByIds(ids);
+        this.taskSearchService.tasksDeleted(ids);
+        return deleted;
+    }
+
+    /**
+     * Retrieve which of the passed Task ids belong to a Project.
+     */
+    private List<Long> idsInProject(long projectId, Collection<Long> taskIds) {
+        if (taskIds == null || taskIds.isEmpty())
+            return List.of();
+        return this.taskRepository.findIdsInProject(projectId, taskIds);
+    }
+
+    /**
+     * A position in a listing sorted by (timestamp, id) from the newest, as carried by a cursor.
+     */
+    private static final class SeekPosition {
+
+        private final LocalDateTime timestamp;
+        private final long id;
+
+        private SeekPosition(LocalDateTime timestamp, long id) {
+            this.timestamp = timestamp;
+            this.id = id;
+        }
+
+        /**
+         * The id comes first in the cursor keys: the ISO timestamp contains the cursor key separator.
+         */
+        private static Object[] keys(Long id, LocalDateTime timestamp) {
+            return new Object[] { id, timestamp };
+        }
+
+        /**
+         * Decode the position a page must start after; a missing or malformed cursor means the first page.
+         */
+        private static SeekPosition decode(String cursor) {
+            String[] keys = KeysetPage.decodeCursor(cursor, 2);
+            if (keys != null) {
+                try {
+                    return new SeekPosition(LocalDateTime.parse(keys[1]), Long.parseLong(keys[0]));
+                } catch (NumberFormatException | DateTimeParseException e) {
+                    // fall back to the first page
+                }
+            }
+            return new SeekPosition(NEWEST_FIRST_START, Long.MAX_VALUE);
+        }
     }
 }
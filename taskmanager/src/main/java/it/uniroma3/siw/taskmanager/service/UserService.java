@@ -25,7 +25,7 @@ public class UserService {
      * @param id the id of the User to retrieve from the DB
      * @return the retrieved User, or null if no User with the passed ID could be found in the DB
      */
-    @Transactional
+    @Transactional(readOnly = true)
     public User getUser(long id) {
         Optional<User> result = this.userRepository.findById(id);
         return result.orElse(null);
@@ -47,7 +47,7 @@ public class UserService {
      * This method retrieves all Users from the DB.
      * @return a List with all the retrieved Users
      */
-    @Transactional
+    @Transactional(readOnly = true)
     public List<User> getAllUsers() {
         List<User> result = new ArrayList<>();
         Iterable<User> iterable = this.userRepository.findAll();
@@ -60,7 +60,7 @@ public class UserService {
      * This method retrieves all Users that have visibility over the passed project.
      * @return a List with all the retrieved Users
      */
-    @Transactional
+    @Transactional(readOnly = true)
     public List<User> getMembers(Project project) {
     	return this.userRepository.findByVisibleProjects(project);
     }
@@ -0,0 +1,73 @@
+package it.uniroma3.siw.taskmanager.service.exports;
+
+import it.uniroma3.siw.taskmanager.model.view.CommentView;
+import it.uniroma3.siw.taskmanager.model.view.ExportedTask;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * A TaskExportWriter for comma separated values (RFC 4180).
+ * The Tags of a Task are joined by ';' in a single field, and so are its Comments by line breaks,
+ * each one as "timestamp author: text".
+ */
+class CsvTaskExportWriter implements TaskExportWriter {
+
+    private static final String HEADER = "project_id,project_name,task_id,name,description,completed,assigned_to," +
+            "creation_timestamp,last_update_timestamp,tags,comments\r\n";
+
+    private final Writer writer;
+
+    CsvTaskExportWriter(OutputStream output) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        this.writer.write(HEADER);
+    }
+
+    @Override
+    public void write(ExportedTask task, List<String> tags, List<CommentView> comments) throws IOException {
+        StringJoiner row = new StringJoiner(",", "", "\r\n");
+        row.add(String.valueOf(task.getProjectId()));
+        row.add(quote(task.getProjectName()));
+        row.add(String.valueOf(task.getId()));
+        row.add(quote(task.getName()));
+        row.add(quote(task.getDescription()));
+        row.add(String.valueOf(task.isCompleted()));
+        row.add(quote(task.getAssignedUserName()));
+        row.add(String.valueOf(task.getCreationTimestamp()));
+        row.add(String.valueOf(task.getLastUpdateTimestamp()));
+        row.add(quote(String.join(";", tags)));
+        StringJoiner text = new StringJoiner("\n");
+        for (CommentView comment : comments)
+            text.add(comment.getCreationTimestamp() + " "
+                    + (comment.getAuthorName() == null ? "deleted user" : comment.getAuthorName()) + ": " + comment.getText());
+        row.add(quote(text.toString()));
+        this.writer.write(row.toString());
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.writer.flush();
+    }
+
+    /**
+     * Quote a field if it contains a separator, a quote or a line break; null becomes an empty field.
+     */
+    private static String quote(String value) {
+        if (value == null)
+            return "";
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+            return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,60 @@
+package it.uniroma3.siw.taskmanager.service.exports;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * The formats Tasks can be exported to; both of them are written in UTF-8.
+ */
+public enum ExportFormat {
+
+    /**
+     * Comma separated values, one row per Task after a header row
+     */
+    CSV("text/csv", "csv"),
+
+    /**
+     * Newline delimited JSON, one object per Task
+     */
+    NDJSON("application/x-ndjson", "ndjson");
+
+    private final String contentType;
+    private final String extension;
+
+    ExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Open a writer of Tasks in this format.
+     * @param output the stream to write the file to
+     * @return a TaskExportWriter streaming the file
+     * @throws IOException if the beginning of the file cannot be written
+     */
+    public TaskExportWriter open(OutputStream output) throws IOException {
+        return this == CSV ? new CsvTaskExportWriter(output) : new NdjsonTaskExportWriter(output);
+    }
+
+    /**
+     * Find a format by its name, regardless of the case.
+     * @param name the name of the format, e.g. "csv"
+     * @return the format with the passed name, or null if there is none
+     */
+    public static ExportFormat of(String name) {
+        try {
+            return name == null ? null : valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package it.uniroma3.siw.taskmanager.service.exports;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import it.uniroma3.siw.taskmanager.model.view.CommentView;
+import it.uniroma3.siw.taskmanager.model.view.ExportedTask;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A TaskExportWriter for newline delimited JSON: every Task is an object on a line of its own,
+ * embedding its Project, the names of its Tags and its Comments.
+ */
+class NdjsonTaskExportWriter implements TaskExportWriter {
+
+    private static final JsonFactory FACTORY = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private final JsonGenerator generator;
+
+    NdjsonTaskExportWriter(OutputStream output) throws IOException {
+        this.generator = FACTORY.createGenerator(output, JsonEncoding.UTF8);
+        this.generator.setRootValueSeparator(null);
+    }
+
+    @Override
+    public void write(ExportedTask task, List<String> tags, List<CommentView> comments) throws IOException {
+        JsonGenerator json = this.generator;
+        json.writeStartObject();
+        json.writeObjectFieldStart("project");
+        json.writeNumberField("id", task.getProjectId());
+        json.writeStringField("name", task.getProjectName());
+        json.writeEndObject();
+        json.writeNumberField("id", task.getId());
+        json.writeStringField("name", task.getName());
+        json.writeStringField("description", task.getDescription());
+        json.writeBooleanField("completed", task.isCompleted());
+        json.writeStringField("assignedTo", task.getAssignedUserName());
+        json.writeStringField("creationTimestamp", timestamp(task.getCreationTimestamp()));
+        json.writeStringField("lastUpdateTimestamp", timestamp(task.getLastUpdateTimestamp()));
+        json.writeArrayFieldStart("tags");
+        for (String tag : tags)
+            json.writeString(tag);
+        json.writeEndArray();
+        json.writeArrayFieldStart("comments");
+        for (CommentView comment : comments) {
+            json.writeStartObject();
+            json.writeStringField("author", comment.getAuthorName());
+            json.writeStringField("creationTimestamp", timestamp(comment.getCreationTimestamp()));
+            json.writeStringField("text", comment.getText());
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.generator.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.generator.close();
+    }
+
+    private static String timestamp(LocalDateTime timestamp) {
+        return timestamp == null ? null : timestamp.toString();
+    }
+}
@@ -0,0 +1,25 @@
+package it.uniroma3.siw.taskmanager.service.exports;
+
+import it.uniroma3.siw.taskmanager.model.view.CommentView;
+import it.uniroma3.siw.taskmanager.model.view.ExportedTask;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A TaskExportWriter writes Tasks to an export file one at a time, as the file is streamed to its reader.
+ * Closing the writer flushes it, but leaves the underlying stream open.
+ */
+public interface TaskExportWriter extends Flushable, Closeable {
+
+    /**
+     * Write a Task with its Project, its Tags and its Comments.
+     * @param task the Task, with the names of its Project and of its assigned User
+     * @param tags the names of the Tags of the Task
+     * @param comments the Comments of the Task, from the oldest
+     * @throws IOException if the file cannot be written
+     */
+    void write(ExportedTask task, List<String> tags, List<CommentView> comments) throws IOException;
+}
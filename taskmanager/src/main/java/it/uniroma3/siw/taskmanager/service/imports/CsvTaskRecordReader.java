@@ -0,0 +1,164 @@
+package it.uniroma3.siw.taskmanager.service.imports;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A TaskRecordReader for comma separated values (RFC 4180): fields may be quoted with '"',
+ * and quoted fields may contain commas, doubled quotes and line breaks.
+ * The first row is a header naming the columns; columns other than "name", "description" and "completed"
+ * are ignored.
+ */
+class CsvTaskRecordReader implements TaskRecordReader {
+
+    /**
+     * Longest field kept in memory: a record with a longer field is rejected
+     */
+    static final int MAX_FIELD_LENGTH = 10_000;
+
+    private final BufferedReader reader;
+
+    /**
+     * Line the next character belongs to
+     */
+    private long line = 1;
+
+    private int nameColumn = -1;
+    private int descriptionColumn = -1;
+    private int completedColumn = -1;
+
+    CsvTaskRecordReader(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public TaskRecord next() throws IOException {
+        if (this.nameColumn < 0)
+            this.readHeader();
+        List<String> fields;
+        long start;
+        do {
+            start = this.line;
+            fields = this.readRow();
+            if (fields == null)
+                return null;
+        } while (fields.size() == 1 && fields.get(0).isEmpty());      // blank lines are skipped
+
+        if (fields.size() <= this.nameColumn)
+            throw new InvalidRecordException(start, "the row has no name");
+        return new TaskRecord(start, fields.get(this.nameColumn), field(fields, this.descriptionColumn),
+                parseCompleted(start, field(fields, this.completedColumn)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+
+    private void readHeader() throws IOException {
+        List<String> header = this.readRow();
+        if (header == null)
+            throw new IOException("the file is empty");
+        for (int i = 0; i < header.size(); i++) {
+            String column = header.get(i).trim().toLowerCase(Locale.ROOT);
+            if (column.equals("name"))
+                this.nameColumn = i;
+            else if (column.equals("description"))
+                this.descriptionColumn = i;
+            else if (column.equals("completed"))
+                this.completedColumn = i;
+        }
+        if (this.nameColumn < 0)
+            throw new IOException("line 1: the header row has no \"name\" column");
+    }
+
+    /**
+     * Read the fields of the next row, or return null at the end of the file.
+     */
+    private List<String> readRow() throws IOException {
+        int c = this.reader.read();
+        if (c < 0)
+            return null;
+        long start = this.line;
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean tooLong = false;
+        while (true) {
+            if (c < 0) {
+                if (quoted)
+                    throw new InvalidRecordException(start, "a quoted field is not closed");
+                break;
+            }
+            if (quoted) {
+                if (c == '"') {
+                    this.reader.mark(1);
+                    int following = this.reader.read();
+                    if (following == '"')
+                        tooLong |= append(field, '"');
+                    else {
+                        quoted = false;
+                        this.reader.reset();
+                    }
+                } else {
+                    if (c == '\n')
+                        this.line++;
+                    tooLong |= append(field, (char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                this.line++;
+                break;
+            } else if (c != '\r') {
+                tooLong |= append(field, (char) c);
+            }
+            c = this.reader.read();
+        }
+        fields.add(field.toString());
+        if (tooLong)
+            throw new InvalidRecordException(start, "a field is longer than " + MAX_FIELD_LENGTH + " characters");
+        return fields;
+    }
+
+    /**
+     * Append a character to a field, unless it is full already; return whether the field overflowed.
+     */
+    private static boolean append(StringBuilder field, char c) {
+        if (field.length() >= MAX_FIELD_LENGTH)
+            return true;
+        field.append(c);
+        return false;
+    }
+
+    private static String field(List<String> fields, int column) {
+        return column >= 0 && column < fields.size() ? fields.get(column) : null;
+    }
+
+    /**
+     * Parse a completed flag: true, false, yes, no, 1, 0, or empty for false.
+     */
+    static boolean parseCompleted(long line, String value) {
+        if (value == null)
+            return false;
+        switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "":
+            case "false":
+            case "no":
+            case "0":
+                return false;
+            case "true":
+            case "yes":
+            case "1":
+                return true;
+            default:
+                throw new InvalidRecordException(line, "\"" + value + "\" is not a valid completed flag");
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package it.uniroma3.siw.taskmanager.service.imports;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * The formats Tasks can be imported from.
+ */
+public enum ImportFormat {
+
+    /**
+     * Comma separated values, with a header row naming the columns: "name", "description" and "completed"
+     */
+    CSV,
+
+    /**
+     * Newline delimited JSON: one object per line, with the fields "name", "description" and "completed"
+     */
+    NDJSON;
+
+    /**
+     * Open a reader of the records of a file in this format; the file is expected to be UTF-8.
+     * @param input the content of the file
+     * @return a TaskRecordReader streaming the file
+     */
+    public TaskRecordReader open(InputStream input) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        return this == CSV ? new CsvTaskRecordReader(reader) : new NdjsonTaskRecordReader(reader);
+    }
+
+    /**
+     * Guess the format of an uploaded file from its name and its content type.
+     * @param fileName the name of the file, possibly null
+     * @param contentType the content type of the file, possibly null
+     * @return the format of the file, or null if it is not a supported one
+     */
+    public static ImportFormat of(String fileName, String contentType) {
+        String name = fileName == null ? "" : fileName.toLowerCase(Locale.ROOT);
+        String type = contentType == null ? "" : contentType.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv") || type.startsWith("text/csv"))
+            return CSV;
+        if (name.endsWith(".ndjson") || name.endsWith(".jsonl") || type.startsWith("application/x-ndjson"))
+            return NDJSON;
+        return null;
+    }
+}
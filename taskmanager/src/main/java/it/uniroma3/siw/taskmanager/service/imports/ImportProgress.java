@@ -0,0 +1,85 @@
+package it.uniroma3.siw.taskmanager.service.imports;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The ImportProgress tracks an import of Tasks into a Project while it runs, and reports its outcome once it is over.
+ * It is updated by the thread running the import and can be read by any other one.
+ */
+public class ImportProgress {
+
+    /**
+     * Most rejected records described one by one; the others are only counted
+     */
+    public static final int MAX_REPORTED_ERRORS = 20;
+
+    private final LocalDateTime startTimestamp = LocalDateTime.now();
+
+    private volatile long imported;
+
+    private volatile long rejected;
+
+    private volatile String failure;
+
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Count a chunk of Tasks that has been committed.
+     */
+    public void imported(int tasks) {
+        this.imported += tasks;
+    }
+
+    /**
+     * Count a record that has been rejected, describing why.
+     */
+    public void rejected(String error) {
+        this.rejected++;
+        if (this.errors.size() < MAX_REPORTED_ERRORS)
+            this.errors.add(error);
+    }
+
+    /**
+     * Record why the import stopped before the end of the file.
+     */
+    public void failed(String failure) {
+        this.failure = failure;
+    }
+
+    public LocalDateTime getStartTimestamp() {
+        return startTimestamp;
+    }
+
+    /**
+     * @return the number of Tasks committed so far
+     */
+    public long getImported() {
+        return imported;
+    }
+
+    /**
+     * @return the number of records rejected so far
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return why the import stopped before the end of the file, or null
+     */
+    public String getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return the descriptions of the first rejected records
+     */
+    public List<String> getErrors() {
+        synchronized (this.errors) {
+            return new ArrayList<>(this.errors);
+        }
+    }
+}
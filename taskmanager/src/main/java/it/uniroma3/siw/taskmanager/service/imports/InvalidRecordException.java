@@ -0,0 +1,22 @@
+package it.uniroma3.siw.taskmanager.service.imports;
+
+/**
+ * Thrown when a record of an import file cannot be read.
+ * The reader that throws it is left positioned on the following record, so the import can go on.
+ */
+public class InvalidRecordException extends RuntimeException {
+
+    private final long line;
+
+    public InvalidRecordException(long line, String message) {
+        super("line " + line + ": " + message);
+        this.line = line;
+    }
+
+    /**
+     * @return the line of the import file the invalid record starts at
+     */
+    public long getLine() {
+        return line;
+    }
+}
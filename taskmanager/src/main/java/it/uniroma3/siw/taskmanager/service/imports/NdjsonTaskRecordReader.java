@@ -0,0 +1,93 @@
+package it.uniroma3.siw.taskmanager.service.imports;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * A TaskRecordReader for newline delimited JSON: every non blank line is an object with a "name"
+ * and optionally a "description" and a boolean "completed"; other fields are ignored.
+ */
+class NdjsonTaskRecordReader implements TaskRecordReader {
+
+    /**
+     * Longest line kept in memory: a record with a longer line is rejected
+     */
+    static final int MAX_LINE_LENGTH = CsvTaskRecordReader.MAX_FIELD_LENGTH;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final BufferedReader reader;
+
+    /**
+     * Line that has been read last
+     */
+    private long line = 0;
+
+    NdjsonTaskRecordReader(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public TaskRecord next() throws IOException {
+        String text;
+        do {
+            text = this.readLine();
+            if (text == null)
+                return null;
+        } while (text.isBlank());
+
+        JsonNode object;
+        try {
+            object = MAPPER.readTree(text);
+        } catch (JsonProcessingException e) {
+            throw new InvalidRecordException(this.line, "the line is not valid JSON");
+        }
+        if (!object.isObject())
+            throw new InvalidRecordException(this.line, "the line is not a JSON object");
+        JsonNode name = object.get("name");
+        JsonNode description = object.get("description");
+        JsonNode completed = object.get("completed");
+        if (name == null || !name.isTextual())
+            throw new InvalidRecordException(this.line, "the object has no textual \"name\"");
+        if (completed != null && !completed.isNull() && !completed.isBoolean())
+            throw new InvalidRecordException(this.line, "\"completed\" is not a boolean");
+        return new TaskRecord(this.line, name.textValue(),
+                description == null || description.isNull() ? null : description.asText(),
+                completed != null && completed.booleanValue());
+    }
+
+    /**
+     * Read the next line, without its terminator, or return null at the end of the file.
+     * Only the first MAX_LINE_LENGTH characters are kept in memory: a longer line is skipped up to its end and rejected.
+     */
+    private String readLine() throws IOException {
+        int c = this.reader.read();
+        if (c < 0)
+            return null;
+        this.line++;
+        StringBuilder text = new StringBuilder();
+        boolean tooLong = false;
+        while (c >= 0 && c != '\n') {
+            if (text.length() < MAX_LINE_LENGTH)
+                text.append((char) c);
+            else
+                tooLong = true;
+            c = this.reader.read();
+        }
+        if (tooLong)
+            throw new InvalidRecordException(this.line, "the line is longer than " + MAX_LINE_LENGTH + " characters");
+        int length = text.length();
+        if (length > 0 && text.charAt(length - 1) == '\r')
+            text.setLength(length - 1);
+        return text.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+}
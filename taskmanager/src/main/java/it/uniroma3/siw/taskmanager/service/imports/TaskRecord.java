@@ -0,0 +1,38 @@
+package it.uniroma3.siw.taskmanager.service.imports;
+
+/**
+ * A TaskRecord is a Task as read from an import file, before it is validated.
+ */
+public class TaskRecord {
+
+    private final long line;
+    private final String name;
+    private final String description;
+    private final boolean completed;
+
+    public TaskRecord(long line, String name, String description, boolean completed) {
+        this.line = line;
+        this.name = name;
+        this.description = description;
+        this.completed = completed;
+    }
+
+    /**
+     * @return the line of the import file the record starts at
+     */
+    public long getLine() {
+        return line;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+}
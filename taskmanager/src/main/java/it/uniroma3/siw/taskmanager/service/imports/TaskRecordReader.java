@@ -0,0 +1,19 @@
+package it.uniroma3.siw.taskmanager.service.imports;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A TaskRecordReader reads the Tasks of an import file one at a time, as the file is streamed,
+ * so that only the record being read is held in memory.
+ */
+public interface TaskRecordReader extends Closeable {
+
+    /**
+     * Read the next record of the file.
+     * @return the next TaskRecord, or null at the end of the file
+     * @throws InvalidRecordException if the next record is malformed; it is skipped
+     * @throws IOException if the file cannot be read any further
+     */
+    TaskRecord next() throws IOException;
+}
@@ -0,0 +1,7 @@
+-- a user's tokens are also revoked when they change their password: only the tokens of the logins before not_before
+-- are refused, and the user is forgotten at revoked_until, when every one of them has expired.
+-- The users revoked so far have been deleted, so all their tokens are refused until revoked_until
+
+alter table revoked_user add column not_before timestamp;
+update revoked_user set not_before = revoked_until;
+alter table revoked_user alter column not_before set not null;
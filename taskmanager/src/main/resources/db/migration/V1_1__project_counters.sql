@@ -0,0 +1,15 @@
+-- Materialized task counts of every project, kept up to date by the ProjectCountersService:
+-- created here for the schemas baselined at version 1, and filled from the existing tasks
+
+create table project_counters (
+    project_id           int8 not null,
+    task_count           int8 not null,
+    completed_task_count int8 not null,
+    assigned_task_count  int8 not null,
+    primary key (project_id)
+);
+
+insert into project_counters (project_id, task_count, completed_task_count, assigned_task_count)
+select p.id, count(t.id), count(t.id) filter (where t.completed), count(t.assigned_user_id)
+from project p left join task t on t.project_id = p.id
+group by p.id;
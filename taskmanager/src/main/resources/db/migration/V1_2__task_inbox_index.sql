@@ -0,0 +1,3 @@
+-- Inbox of the tasks assigned to a user: seek on the last update within the (completed) tasks of the user
+
+create index task_assigned_user_inbox_idx on task (assigned_user_id, completed, last_update_timestamp);
@@ -0,0 +1,78 @@
+-- Baseline schema: the tables Hibernate used to generate from the entities with "ddl-auto = create"
+
+create sequence hibernate_sequence start 1 increment 1;
+
+create table users (
+    id                    int8         not null,
+    first_name            varchar(100) not null,
+    last_name             varchar(100) not null,
+    creation_timestamp    timestamp    not null,
+    last_update_timestamp timestamp    not null,
+    primary key (id)
+);
+
+create table credentials (
+    id                    int8         not null,
+    user_name             varchar(100) not null,
+    password              varchar(100) not null,
+    role                  varchar(10)  not null,
+    creation_timestamp    timestamp    not null,
+    last_update_timestamp timestamp    not null,
+    user_id               int8,
+    primary key (id),
+    constraint credentials_user_name_key unique (user_name),
+    constraint credentials_user_fk foreign key (user_id) references users
+);
+
+create table project (
+    id          int8         not null,
+    name        varchar(100) not null,
+    description varchar(255),
+    owner_id    int8,
+    primary key (id),
+    constraint project_owner_fk foreign key (owner_id) references users
+);
+
+create table project_members (
+    visible_projects_id int8 not null,
+    members_id          int8 not null,
+    constraint project_members_project_fk foreign key (visible_projects_id) references project,
+    constraint project_members_user_fk foreign key (members_id) references users
+);
+
+create table tag (
+    id          int8         not null,
+    name        varchar(100) not null,
+    color       varchar(100) not null,
+    description varchar(1000),
+    project_id  int8,
+    primary key (id),
+    constraint tag_project_fk foreign key (project_id) references project
+);
+
+create table task (
+    id                    int8         not null,
+    name                  varchar(100) not null,
+    description           varchar(255),
+    completed             boolean      not null,
+    creation_timestamp    timestamp    not null,
+    last_update_timestamp timestamp    not null,
+    assigned_user_id      int8,
+    project_id            int8,
+    primary key (id),
+    constraint task_assigned_user_fk foreign key (assigned_user_id) references users,
+    constraint task_project_fk foreign key (project_id) references project
+);
+
+create table task_tags (
+    task_id int8 not null,
+    tags_id int8 not null,
+    constraint task_tags_task_fk foreign key (task_id) references task,
+    constraint task_tags_tag_fk foreign key (tags_id) references tag
+);
+
+create table task_comments (
+    task_id  int8 not null,
+    comments varchar(255),
+    constraint task_comments_task_fk foreign key (task_id) references task
+);
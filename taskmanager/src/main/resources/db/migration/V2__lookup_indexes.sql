@@ -0,0 +1,27 @@
+-- Indexes backing the foreign keys and the lookups of the repositories: Postgres does not create them by itself
+
+-- credentials of a user (user deletion)
+create index credentials_user_idx on credentials (user_id);
+
+-- owned project listing: seek on the id within the projects of an owner
+create index project_owner_idx on project (owner_id, id);
+
+-- shared project listing and visibility checks from the user side, member lists from the project side
+create index project_members_user_idx on project_members (members_id, visible_projects_id);
+create index project_members_project_idx on project_members (visible_projects_id, members_id);
+
+-- tasks and tags of a project (project view, counters reconciliation, project deletion)
+create index task_project_idx on task (project_id);
+create index tag_project_idx on tag (project_id);
+
+-- tags of a task, and tasks of a tag (tag deletion)
+create index task_tags_task_idx on task_tags (task_id);
+create index task_tags_tag_idx on task_tags (tags_id);
+
+-- comments of a task
+create index task_comments_task_idx on task_comments (task_id);
+
+-- the counters go away together with their project, whoever deletes it
+delete from project_counters c where not exists (select 1 from project p where p.id = c.project_id);
+alter table project_counters
+    add constraint project_counters_project_fk foreign key (project_id) references project on delete cascade;
@@ -0,0 +1,29 @@
+-- Comments become rows of their own, with an author and a creation timestamp, instead of an element collection
+
+create table comment (
+    id                 int8          not null,
+    task_id            int8          not null,
+    author_id          int8,
+    text               varchar(1000) not null,
+    creation_timestamp timestamp     not null,
+    primary key (id),
+    constraint comment_task_fk foreign key (task_id) references task on delete cascade,
+    constraint comment_author_fk foreign key (author_id) references users on delete set null
+);
+
+create index comment_task_created_idx on comment (task_id, creation_timestamp, id);
+create index comment_author_idx on comment (author_id);
+
+-- the old comments have neither an author nor a timestamp: they get the creation of their task plus one microsecond
+-- per position in the list they were loaded in, i.e. their physical order in task_comments (the only order they had),
+-- so that the (creation, id) order of the comments of a task keeps it whatever ids they get
+insert into comment (id, task_id, author_id, text, creation_timestamp)
+select nextval('hibernate_sequence'), old.task_id, null, old.comments,
+       old.task_creation_timestamp + (old.position - 1) * interval '1 microsecond'
+from (select c.task_id, c.comments, t.creation_timestamp as task_creation_timestamp,
+             row_number() over (partition by c.task_id order by c.ctid) as position
+      from task_comments c join task t on t.id = c.task_id
+      where c.comments is not null) old
+order by old.task_id, old.position;
+
+drop table task_comments;
@@ -0,0 +1,5 @@
+-- Optimistic locking: every update of a task, a project or a user checks and increments its version
+
+alter table task add column version int8 not null default 0;
+alter table project add column version int8 not null default 0;
+alter table users add column version int8 not null default 0;
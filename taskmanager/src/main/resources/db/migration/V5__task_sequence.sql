@@ -0,0 +1,6 @@
+-- Tasks get their ids from a sequence of their own, that Hibernate reads once every 50 inserts (pooled optimizer)
+
+create sequence task_seq increment by 50;
+
+-- the pooled optimizer hands out the 50 values up to the one it reads: the first read must leave the existing ids behind
+select setval('task_seq', coalesce((select max(id) from task), 0) + 50, false);
@@ -0,0 +1,8 @@
+-- Users deleted while signed session tokens may still be circulating for them: their tokens are refused
+-- until revoked_until, when every token issued to them before the deletion has expired
+
+create table revoked_user (
+    user_id       int8      not null,
+    revoked_until timestamp not null,
+    primary key (user_id)
+);
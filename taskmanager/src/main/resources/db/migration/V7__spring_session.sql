@@ -0,0 +1,25 @@
+-- The HTTP sessions are stored in the DB by Spring Session JDBC, so that they survive restarts and are shared by all the nodes:
+-- one row per session, and one row per attribute, holding its value as serialized by SessionAttributeSerializer
+
+create table spring_session (
+    primary_id            char(36)     not null,
+    session_id            char(36)     not null,
+    creation_time         int8         not null,
+    last_access_time      int8         not null,
+    max_inactive_interval int4         not null,
+    expiry_time           int8         not null,
+    principal_name        varchar(100),
+    constraint spring_session_pk primary key (primary_id)
+);
+
+create unique index spring_session_ix1 on spring_session (session_id);
+create index spring_session_ix2 on spring_session (expiry_time);
+create index spring_session_ix3 on spring_session (principal_name);
+
+create table spring_session_attributes (
+    session_primary_id char(36)     not null,
+    attribute_name     varchar(200) not null,
+    attribute_bytes    bytea        not null,
+    constraint spring_session_attributes_pk primary key (session_primary_id, attribute_name),
+    constraint spring_session_attributes_fk foreign key (session_primary_id) references spring_session (primary_id) on delete cascade
+);
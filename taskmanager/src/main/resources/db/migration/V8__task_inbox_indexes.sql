@@ -0,0 +1,7 @@
+-- Inbox of the tasks assigned to a user: both indexes end with the id, the tie-breaker of the keyset order,
+-- and the unfiltered inbox gets one without the completed flag, so that it seeks without scanning both flags
+
+drop index task_assigned_user_inbox_idx;
+create index task_assigned_user_inbox_idx on task (assigned_user_id, completed, last_update_timestamp, id);
+
+create index task_assigned_user_recent_idx on task (assigned_user_id, last_update_timestamp, id);
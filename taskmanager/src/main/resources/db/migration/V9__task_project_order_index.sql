@@ -0,0 +1,4 @@
+-- exports read the tasks of a project in keyset pages by id: seek on the id within the tasks of a project,
+-- which also serves the lookups of the tasks of a project that the former index was used for
+create index task_project_order_idx on task (project_id, id);
+drop index task_project_idx;
@@ -0,0 +1,130 @@
+package it.uniroma3.siw.taskmanager.authentication;
+
+import it.uniroma3.siw.taskmanager.authentication.SessionTokenCodec.SessionToken;
+import it.uniroma3.siw.taskmanager.repository.RevokedUserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Outside of a transaction the revocations of the TokenRevocationList are applied immediately,
+ * so the SessionTokenCodec can be tested without a DB; the revocations are saved to a mocked RevokedUserRepository.
+ */
+class SessionTokenCodecTest {
+
+    private static final String SECRET = Base64.getEncoder().encodeToString(new byte[32]);
+    private static final String OTHER_SECRET = Base64.getEncoder().encodeToString(new byte[]{
+            1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32});
+
+    private static final Duration TTL = Duration.ofHours(8);
+    private static final Duration MAX_LIFETIME = Duration.ofDays(7);
+
+    private static final UserPrincipal ALICE = new UserPrincipal(3, 4, "alice", null, "Alice", "Lee", "DEFAULT");
+    private static final UserPrincipal BOB = new UserPrincipal(5, 6, "bob", null, "Bob", "Lee", "ADMIN");
+
+    private TokenRevocationList revocationList;
+
+    private SessionTokenCodec codec;
+
+    @BeforeEach
+    void setUp() {
+        this.revocationList = new TokenRevocationList(MAX_LIFETIME);
+        this.revocationList.revokedUserRepository = mock(RevokedUserRepository.class);
+        this.codec = new SessionTokenCodec(SECRET, TTL, MAX_LIFETIME, this.revocationList);
+    }
+
+    @Test
+    void issuedTokenIsVerifiedByAnyCodecSharingTheKey() {
+        Instant authenticatedAt = Instant.now().minus(1, ChronoUnit.HOURS);
+        Instant lastWrite = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        SessionToken issued = this.codec.issue(ALICE, authenticatedAt, lastWrite);
+
+        SessionToken verified = new SessionTokenCodec(SECRET, TTL, MAX_LIFETIME, this.revocationList).verify(issued.getValue());
+
+        assertNotNull(verified);
+        UserPrincipal principal = verified.getPrincipal();
+        assertEquals(ALICE.getCredentialsId(), principal.getCredentialsId());
+        assertEquals(ALICE.getUserId(), principal.getUserId());
+        assertEquals(ALICE.getUsername(), principal.getUsername());
+        assertEquals(ALICE.getFirstName(), principal.getFirstName());
+        assertEquals(ALICE.getLastName(), principal.getLastName());
+        assertEquals(ALICE.getRole(), principal.getRole());
+        assertEquals(authenticatedAt.truncatedTo(ChronoUnit.MILLIS), verified.getAuthenticatedAt());
+        assertEquals(issued.getIssuedAt().getEpochSecond(), verified.getIssuedAt().getEpochSecond());
+        assertEquals(issued.getExpiresAt().getEpochSecond(), verified.getExpiresAt().getEpochSecond());
+        assertEquals(lastWrite, verified.getLastWrite());
+        assertNull(this.codec.verify(this.codec.issue(ALICE).getValue()).getLastWrite());
+    }
+
+    @Test
+    void tamperedTokenIsRefused() {
+        String value = this.codec.issue(ALICE).getValue();
+        int dot = value.indexOf('.');
+        String signature = value.substring(dot + 1);
+        String tamperedSignature = (signature.charAt(0) == 'A' ? 'B' : 'A') + signature.substring(1);
+        String other = this.codec.issue(BOB).getValue();
+        String otherPayload = other.substring(0, other.indexOf('.'));
+
+        assertNull(this.codec.verify(value.substring(0, dot + 1) + tamperedSignature));
+        assertNull(this.codec.verify(otherPayload + value.substring(dot)));
+        assertNull(new SessionTokenCodec(OTHER_SECRET, TTL, MAX_LIFETIME, this.revocationList).verify(value));
+        assertNull(this.codec.verify(value.substring(0, dot)));
+        assertNull(this.codec.verify("not base64!." + signature));
+    }
+
+    @Test
+    void tokenOfAnotherFormatIsRefused() throws Exception {
+        String value = this.codec.issue(ALICE).getValue();
+        byte[] payload = Base64.getUrlDecoder().decode(value.substring(0, value.indexOf('.')));
+        payload[0]--;
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(Base64.getDecoder().decode(SECRET), "HmacSHA256"));
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+
+        assertNull(this.codec.verify(encoder.encodeToString(payload) + "." + encoder.encodeToString(mac.doFinal(payload))));
+    }
+
+    @Test
+    void expiredTokenIsRefused() {
+        SessionTokenCodec expiringCodec = new SessionTokenCodec(SECRET, Duration.ZERO, MAX_LIFETIME, this.revocationList);
+
+        assertNull(expiringCodec.verify(expiringCodec.issue(ALICE).getValue()));
+    }
+
+    @Test
+    void renewalsStopAtTheMaximumLifetimeAfterTheLogin() {
+        Instant authenticatedAt = Instant.now().minus(MAX_LIFETIME).plus(1, ChronoUnit.HOURS);
+        SessionToken lastRenewal = this.codec.issue(ALICE, authenticatedAt, null);
+
+        assertFalse(lastRenewal.getExpiresAt().isAfter(authenticatedAt.plus(MAX_LIFETIME)));
+        assertNotNull(this.codec.verify(lastRenewal.getValue()));
+        assertFalse(this.codec.isDueForRenewal(lastRenewal));
+        assertNull(this.codec.verify(this.codec.issue(ALICE, authenticatedAt.minus(2, ChronoUnit.HOURS), null).getValue()));
+    }
+
+    @Test
+    void revocationRefusesTheTokensOfEarlierLoginsOnly() {
+        SessionToken earlierLogin = this.codec.issue(ALICE, Instant.now().minus(1, ChronoUnit.MINUTES), null);
+        SessionToken otherUser = this.codec.issue(BOB, Instant.now().minus(1, ChronoUnit.MINUTES), null);
+
+        this.revocationList.revoke(ALICE.getUserId());
+
+        assertNull(this.codec.verify(earlierLogin.getValue()));
+        assertNotNull(this.codec.verify(otherUser.getValue()));
+        assertNotNull(this.codec.verify(this.codec.issue(ALICE).getValue()));
+        assertTrue(this.revocationList.isRevoked(ALICE.getUserId(), earlierLogin.getAuthenticatedAt()));
+    }
+}
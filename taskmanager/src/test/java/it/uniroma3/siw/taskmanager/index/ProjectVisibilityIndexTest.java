@@ -0,0 +1,123 @@
+package it.uniroma3.siw.taskmanager.index;
+
+import it.uniroma3.siw.taskmanager.repository.ProjectRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Outside of a transaction the updates of the ProjectVisibilityIndex are applied immediately,
+ * so it can be tested without a DB; its rebuilds read a mocked ProjectRepository.
+ */
+class ProjectVisibilityIndexTest {
+
+    private static final long OWNER = 1;
+    private static final long MEMBER = 2;
+
+    private ProjectVisibilityIndex index;
+
+    @BeforeEach
+    void setUp() {
+        this.index = new ProjectVisibilityIndex();
+        this.index.projectRepository = mock(ProjectRepository.class);
+        this.index.transactionManager = mock(PlatformTransactionManager.class);
+    }
+
+    @Test
+    void userDeletedForgetsEveryOwnedProject() {
+        for (long projectId = 10; projectId < 20; projectId++) {
+            this.index.projectSaved(projectId, OWNER);
+            this.index.memberAdded(projectId, MEMBER);
+        }
+        this.index.projectSaved(20, MEMBER);
+
+        this.index.userDeleted(OWNER);
+
+        assertTrue(this.index.visibleProjects(OWNER).isEmpty());
+        for (long projectId = 10; projectId < 20; projectId++) {
+            assertFalse(this.index.isOwner(OWNER, projectId));
+            assertFalse(this.index.isMember(MEMBER, projectId));
+        }
+        assertEquals(0, this.index.countSharedWith(MEMBER));
+        assertTrue(this.index.isOwner(MEMBER, 20));
+        assertEquals(1, this.index.visibleProjects(MEMBER).getLongCardinality());
+    }
+
+    @Test
+    void userDeletedLeavesProjectsSharedWithOthers() {
+        this.index.projectSaved(10, OWNER);
+        this.index.projectSaved(11, OWNER);
+        this.index.memberAdded(10, MEMBER);
+        this.index.memberAdded(11, MEMBER);
+
+        this.index.userDeleted(MEMBER);
+
+        assertEquals(0, this.index.countSharedWith(MEMBER));
+        assertFalse(this.index.isMember(MEMBER, 10));
+        assertFalse(this.index.isMember(MEMBER, 11));
+        assertEquals(2, this.index.visibleProjects(OWNER).getLongCardinality());
+    }
+
+    @Test
+    void rebuildTakesInTheChangesOfOtherNodes() {
+        this.index.projectSaved(10, OWNER);
+        this.index.projectSaved(11, OWNER);
+        when(this.index.projectRepository.streamAllOwnerships())
+                .thenReturn(Stream.<Object[]>of(new Object[]{10L, OWNER}, new Object[]{12L, MEMBER}));
+        when(this.index.projectRepository.streamAllMemberships())
+                .thenReturn(Stream.<Object[]>of(new Object[]{12L, OWNER}));
+
+        this.index.rebuild();
+
+        assertTrue(this.index.isWarm());
+        assertTrue(this.index.isOwner(OWNER, 10));
+        assertFalse(this.index.isOwner(OWNER, 11));
+        assertTrue(this.index.isOwner(MEMBER, 12));
+        assertTrue(this.index.isMember(OWNER, 12));
+        assertEquals(1, this.index.countSharedWith(OWNER));
+    }
+
+    @Test
+    void rebuildKeepsTheUpdatesMadeWhileReading() {
+        when(this.index.projectRepository.streamAllOwnerships()).thenAnswer(invocation -> {
+            // committed after the DB was read
+            this.index.projectSaved(11, OWNER);
+            this.index.memberAdded(11, MEMBER);
+            return Stream.<Object[]>of(new Object[]{10L, OWNER});
+        });
+        when(this.index.projectRepository.streamAllMemberships()).thenReturn(Stream.empty());
+
+        this.index.rebuild();
+
+        assertTrue(this.index.isOwner(OWNER, 10));
+        assertTrue(this.index.isOwner(OWNER, 11));
+        assertTrue(this.index.isMember(MEMBER, 11));
+    }
+
+    @Test
+    void failedRebuildKeepsTheCurrentContent() {
+        when(this.index.projectRepository.streamAllOwnerships()).thenReturn(Stream.<Object[]>of(new Object[]{10L, OWNER}));
+        when(this.index.projectRepository.streamAllMemberships()).thenReturn(Stream.empty());
+        this.index.rebuild();
+        when(this.index.projectRepository.streamAllOwnerships())
+                .thenThrow(new DataAccessResourceFailureException("DB down"));
+
+        assertThrows(DataAccessResourceFailureException.class, this.index::rebuild);
+        this.index.refresh();
+        this.index.projectSaved(11, OWNER);
+
+        assertTrue(this.index.isWarm());
+        assertTrue(this.index.isOwner(OWNER, 10));
+        assertTrue(this.index.isOwner(OWNER, 11));
+    }
+}